@@ -0,0 +1,128 @@
+package ru.practicum.mainservice.event.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import ru.practicum.mainservice.event.model.Event;
+import ru.practicum.statsclient.StatsClient;
+import ru.practicum.statsclient.StatsClientException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Incremental cache of the non-unique view counts of published events. Every event keeps the views counted up
+ * to its watermark, so a lookup only asks the stats server for the hits between the watermark and
+ * {@code now - stats-server.views.watermark-lag} and adds them. Events sharing a watermark are queried
+ * together, which in the steady state means one query over a few seconds of data. The hits after the watermark
+ * are queried again for every lookup and added to the response without being cached, so a view reported just
+ * before the lookup, such as the one of the current request, is already counted.
+ * <p>
+ * The lag leaves time for hits reported asynchronously to arrive; hits that come later still, e.g. replayed
+ * from the client spool, are picked up by recounting every event from its publication once per
+ * {@code stats-server.views.recount-interval}. While the stats server is unavailable the cached counts are
+ * returned as they are.
+ */
+@Component
+@Slf4j
+public class EventViewCache {
+    private static final String EVENT_URI_PREFIX = "/events/";
+
+    private final StatsClient statsClient;
+    private final Duration watermarkLag;
+    private final Duration recountInterval;
+    private final int maxSize;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    public EventViewCache(StatsClient statsClient,
+                          @Value("${stats-server.views.watermark-lag:2s}") Duration watermarkLag,
+                          @Value("${stats-server.views.recount-interval:1h}") Duration recountInterval,
+                          @Value("${stats-server.views.cache-size:100000}") int maxSize) {
+        this.statsClient = statsClient;
+        this.watermarkLag = watermarkLag;
+        this.recountInterval = recountInterval;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the views of the published {@code events} by event id.
+     */
+    public Map<Long, Long> getViews(Set<Event> events) {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        LocalDateTime watermark = now.minus(watermarkLag);
+        Map<Long, Long> views = new HashMap<>();
+
+        Map<LocalDateTime, List<Long>> deltas = new HashMap<>();
+        Map<Long, Entry> known = new HashMap<>();
+        List<Event> recounts = new ArrayList<>();
+        for (Event event : events) {
+            Entry entry = entries.get(event.getId());
+            if (entry == null || entry.countedAt().plus(recountInterval).isBefore(now)) {
+                recounts.add(event);
+            } else {
+                known.put(event.getId(), entry);
+                deltas.computeIfAbsent(entry.watermark(), key -> new ArrayList<>()).add(event.getId());
+            }
+        }
+
+        try {
+            deltas.forEach((from, ids) -> {
+                Map<Long, Long> delta = from.isBefore(watermark)
+                        ? statsClient.queryHitsByIds(from.plusSeconds(1), watermark, EVENT_URI_PREFIX, ids, null)
+                        : Map.of();
+                ids.forEach(id -> {
+                    Entry entry = known.get(id);
+                    Entry advanced = from.isBefore(watermark)
+                            ? new Entry(entry.views() + delta.getOrDefault(id, 0L), watermark, entry.countedAt())
+                            : entry;
+                    views.put(id, advanced.views());
+                    entries.merge(id, advanced, (current, next) ->
+                            next.watermark().isAfter(current.watermark()) ? next : current);
+                });
+            });
+
+            Optional<LocalDateTime> from = recounts.stream()
+                    .map(Event::getPublishedOn)
+                    .min(LocalDateTime::compareTo);
+            if (from.isPresent()) {
+                List<Long> ids = recounts.stream().map(Event::getId).toList();
+                Map<Long, Long> counted = from.get().isAfter(watermark)
+                        ? Map.of()
+                        : statsClient.queryHitsByIds(from.get(), watermark, EVENT_URI_PREFIX, ids, null);
+                ids.forEach(id -> {
+                    Entry entry = new Entry(counted.getOrDefault(id, 0L), watermark, now);
+                    views.put(id, entry.views());
+                    entries.put(id, entry);
+                });
+            }
+
+            if (!views.isEmpty() && watermark.isBefore(now)) {
+                statsClient.queryHitsByIds(watermark.plusSeconds(1), now, EVENT_URI_PREFIX, List.copyOf(views.keySet()),
+                        null).forEach((id, hits) -> views.merge(id, hits, Long::sum));
+            }
+        } catch (StatsClientException | ResourceAccessException e) {
+            log.warn("Stats server is unavailable, returning cached views: {}", e.getMessage());
+            known.forEach((id, entry) -> views.putIfAbsent(id, entry.views()));
+            recounts.forEach(event -> Optional.ofNullable(entries.get(event.getId()))
+                    .ifPresent(entry -> views.putIfAbsent(event.getId(), entry.views())));
+        }
+
+        evict();
+        return views;
+    }
+
+    private void evict() {
+        Iterator<Long> ids = entries.keySet().iterator();
+        while (entries.size() > maxSize && ids.hasNext()) {
+            ids.next();
+            ids.remove();
+        }
+    }
+
+    private record Entry(long views, LocalDateTime watermark, LocalDateTime countedAt) {
+    }
+}
@@ -1,20 +1,19 @@
 package ru.practicum.mainservice.event.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.mainservice.MainCommonUtils;
 import ru.practicum.mainservice.event.model.Event;
 import ru.practicum.mainservice.event.repository.RequestRepository;
+import ru.practicum.statsclient.HitReporter;
 import ru.practicum.statsclient.StatsClient;
+import ru.practicum.statscommon.model.UniqueMode;
 import ru.practicum.statscommon.model.ViewStats;
 
-import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -25,8 +24,9 @@ import java.util.stream.Collectors;
 @Slf4j
 public class StatsServiceImpl implements StatsService {
     private final StatsClient statsClient;
+    private final Optional<HitReporter> hitReporter;
     private final RequestRepository requestRepository;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final EventViewCache eventViewCache;
 
     @Value(value = "${app.name}")
     private String appName;
@@ -35,8 +35,13 @@ public class StatsServiceImpl implements StatsService {
     public void addHit(HttpServletRequest request) {
         log.info("Отправлен запрос на регистрацию запроса на сервер статистики с параметрами запроса = {}", request);
 
-        statsClient.addHit(appName, request.getRequestURI(), request.getRemoteAddr(),
-                LocalDateTime.parse(LocalDateTime.now().format(MainCommonUtils.DT_FORMATTER), MainCommonUtils.DT_FORMATTER));
+        LocalDateTime timestamp = LocalDateTime.parse(LocalDateTime.now().format(MainCommonUtils.DT_FORMATTER),
+                MainCommonUtils.DT_FORMATTER);
+        if (hitReporter.isPresent()) {
+            hitReporter.get().report(appName, request.getRequestURI(), request.getRemoteAddr(), timestamp);
+        } else {
+            statsClient.addHit(appName, request.getRequestURI(), request.getRemoteAddr(), timestamp);
+        }
     }
 
     @Override
@@ -44,13 +49,7 @@ public class StatsServiceImpl implements StatsService {
         log.info("Отправил запрос на получение статистики на сервер статистики с параметрами " +
                 "start = {}, end = {}, uris = {}, unique = {}", start, end, uris, unique);
 
-        ResponseEntity<Object> response = statsClient.getStats(start, end, uris, unique);
-
-        try {
-            return Arrays.asList(mapper.readValue(mapper.writeValueAsString(response.getBody()), ViewStats[].class));
-        } catch (IOException exception) {
-            throw new ClassCastException(exception.getMessage());
-        }
+        return statsClient.queryStats(start, end, uris, unique == null ? null : UniqueMode.from(unique));
     }
 
     @Override
@@ -58,36 +57,13 @@ public class StatsServiceImpl implements StatsService {
         log.info("Был отправлен запрос на получение статистики неуникальных посещений в виде Map<eventId, count> " +
                 "для списка событий. ");
 
-        Map<Long, Long> views = new HashMap<>();
-
         Set<Event> publishedEvents = getPublished(events);
 
-        if (events.isEmpty()) {
-            return views;
-        }
-
-        Optional<LocalDateTime> minPublishedOn = publishedEvents.stream()
-                .map(Event::getPublishedOn)
-                .filter(Objects::nonNull)
-                .min(LocalDateTime::compareTo);
-
-        if (minPublishedOn.isPresent()) {
-            LocalDateTime start = minPublishedOn.get();
-            LocalDateTime end = LocalDateTime.now();
-            List<String> uris = publishedEvents.stream()
-                    .map(Event::getId)
-                    .map(id -> ("/events/" + id))
-                    .collect(Collectors.toList());
-
-            List<ViewStats> stats = getStats(start, end, uris, null);
-            stats.forEach(stat -> {
-                Long eventId = Long.parseLong(stat.getUri()
-                        .split("/", 0)[2]);
-                views.put(eventId, views.getOrDefault(eventId, 0L) + stat.getHits());
-            });
+        if (publishedEvents.isEmpty()) {
+            return new HashMap<>();
         }
 
-        return views;
+        return eventViewCache.getViews(publishedEvents);
     }
 
     @Override
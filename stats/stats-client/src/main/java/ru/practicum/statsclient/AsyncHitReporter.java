@@ -0,0 +1,283 @@
+package ru.practicum.statsclient;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import ru.practicum.statscommon.StatsCommonUtils;
+import ru.practicum.statscommon.model.EndpointHit;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reports hits in the background. {@link #report} only puts the hit into a bounded lock-free buffer and
+ * returns; a sender thread drains the buffer every {@code stats-server.async.flush-interval-ms}, or as soon as a
+ * full batch is waiting, and posts batches of up to {@code stats-server.async.batch-size} hits to
+ * {@value StatsCommonUtils#HITS_ENDPOINT} with the non-blocking JDK {@link HttpClient}.
+ * <p>
+ * At most {@code stats-server.async.max-in-flight} batches are sent at a time. A batch that fails with an I/O
+ * error, a 429 or a 5xx response is retried with exponential backoff and keeps its slot meanwhile, so an
+ * unavailable server fills the buffer instead of the heap; hits that find the buffer full, and batches out of
+ * retries, are dropped and counted. When the {@link HitSpool} is enabled they are spooled instead, and while the
+ * {@link StatsCircuitBreaker} is open the buffer is drained straight into the spool. The spool is only written by
+ * the sender thread: hits that find the buffer full wait for it in an overflow buffer of the same capacity and are
+ * dropped only if that one is full too.
+ */
+@Service
+@ConditionalOnProperty(name = "stats-server.hit-reporting", havingValue = "async")
+@Slf4j
+public class AsyncHitReporter implements HitReporter, SmartLifecycle {
+    private static final long SHUTDOWN_POLL_MS = 50;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient;
+    private final URI hitsUri;
+    private final HitBuffer<EndpointHit> buffer;
+    private final HitBuffer<EndpointHit> overflow;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final int maxRetries;
+    private final long retryBackoffMs;
+    private final Duration requestTimeout;
+    private final long shutdownTimeoutMs;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final Counter sentHits;
+    private final Counter retriedHits;
+    private final Counter droppedHits;
+    private final StatsCircuitBreaker circuitBreaker;
+    private final HitSpool spool;
+
+    private volatile boolean running;
+    private ScheduledExecutorService sender;
+
+    public AsyncHitReporter(@Value("${stats-server.url}") String serverUrl,
+                            @Value("${stats-server.async.buffer-capacity:100000}") int bufferCapacity,
+                            @Value("${stats-server.async.batch-size:500}") int batchSize,
+                            @Value("${stats-server.async.flush-interval-ms:200}") long flushIntervalMs,
+                            @Value("${stats-server.async.max-in-flight:4}") int maxInFlight,
+                            @Value("${stats-server.async.max-retries:5}") int maxRetries,
+                            @Value("${stats-server.async.retry-backoff-ms:200}") long retryBackoffMs,
+                            @Value("${stats-server.async.request-timeout:5s}") Duration requestTimeout,
+                            @Value("${stats-server.async.shutdown-timeout-ms:5000}") long shutdownTimeoutMs,
+                            StatsCircuitBreaker circuitBreaker, ObjectProvider<HitSpool> spool,
+                            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(requestTimeout)
+                .build();
+        this.hitsUri = URI.create(serverUrl.replaceAll("/+$", "") + StatsCommonUtils.HITS_ENDPOINT);
+        this.buffer = new HitBuffer<>(bufferCapacity);
+        this.overflow = new HitBuffer<>(bufferCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxRetries = maxRetries;
+        this.retryBackoffMs = retryBackoffMs;
+        this.requestTimeout = requestTimeout;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.circuitBreaker = circuitBreaker;
+        this.spool = spool.getIfAvailable();
+
+        MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+        Gauge.builder("stats.client.hits.buffered", buffer, HitBuffer::size).register(registry);
+        this.sentHits = registry.counter("stats.client.hits.sent");
+        this.retriedHits = registry.counter("stats.client.hits.retried");
+        this.droppedHits = registry.counter("stats.client.hits.dropped");
+    }
+
+    @Override
+    public void report(String appName, String uri, String ip, LocalDateTime timestamp) {
+        EndpointHit hit = EndpointHit.builder()
+                .app(appName)
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp.format(StatsCommonUtils.DT_FORMATTER))
+                .build();
+        if (!running || !buffer.offer(hit)) {
+            drop(hit);
+            return;
+        }
+        if (buffer.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                sender.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                log.debug("Hit reporting is stopped, buffered hits are not sent any more");
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        sender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stats-hit-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sender.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        running = true;
+        log.info("Asynchronous hit reporting to {} started: batchSize = {}, flushIntervalMs = {}, maxInFlight = {}",
+                hitsUri, batchSize, flushIntervalMs, maxInFlight);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMs;
+        try {
+            while ((buffer.size() > 0 || inFlight.availablePermits() < maxInFlight)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(SHUTDOWN_POLL_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sender.shutdownNow();
+        if (spool != null) {
+            List<EndpointHit> rest = new ArrayList<>();
+            buffer.drainTo(rest, Integer.MAX_VALUE);
+            overflow.drainTo(rest, Integer.MAX_VALUE);
+            if (!rest.isEmpty()) {
+                spool.append(rest);
+            }
+        }
+        int unsent = buffer.size() + (maxInFlight - inFlight.availablePermits()) * batchSize;
+        if (unsent > 0) {
+            log.error("Hit reporting stopped with up to {} hits not sent", unsent);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void flush() {
+        flushRequested.set(false);
+        try {
+            spoolOverflow();
+            while (buffer.size() > 0 && inFlight.tryAcquire()) {
+                List<EndpointHit> batch = new ArrayList<>(batchSize);
+                if (buffer.drainTo(batch, batchSize) == 0) {
+                    inFlight.release();
+                    return;
+                }
+                if (spool == null || circuitBreaker.allowRequest()) {
+                    send(batch, 0);
+                } else {
+                    drop(batch, "the circuit is open");
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to flush reported hits", e);
+        }
+    }
+
+    private void spoolOverflow() {
+        if (overflow.size() > 0) {
+            List<EndpointHit> hits = new ArrayList<>(overflow.size());
+            overflow.drainTo(hits, Integer.MAX_VALUE);
+            spool.append(hits);
+            log.debug("Spooled {} hits that found the buffer full", hits.size());
+        }
+    }
+
+    private void send(List<EndpointHit> batch, int attempt) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(hitsUri)
+                    .timeout(requestTimeout)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(batch)))
+                    .build();
+        } catch (JsonProcessingException e) {
+            discard(batch, e.getMessage());
+            return;
+        }
+
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            int status = error == null ? response.statusCode() : 0;
+            if (error != null || status >= 500) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+            if (status / 100 == 2) {
+                sentHits.increment(batch.size());
+                inFlight.release();
+                return;
+            }
+            String reason = error != null ? error.toString() : "status " + status;
+            boolean retryable = error != null || status == 429 || status >= 500;
+            if (!retryable) {
+                discard(batch, reason);
+                return;
+            }
+            if (attempt >= maxRetries || sender.isShutdown() || spool != null && circuitBreaker.isOpen()) {
+                drop(batch, reason);
+                return;
+            }
+            retriedHits.increment(batch.size());
+            log.debug("Retrying {} hits after {}", batch.size(), reason);
+            try {
+                sender.schedule(() -> send(batch, attempt + 1), retryBackoffMs << attempt, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                drop(batch, reason);
+            }
+        });
+    }
+
+    /**
+     * Hands a batch that could not be sent over to the spool, or drops it when the spool is disabled.
+     */
+    private void drop(List<EndpointHit> batch, String reason) {
+        if (spool == null) {
+            discard(batch, reason);
+            return;
+        }
+        inFlight.release();
+        spool.append(batch);
+        log.debug("Spooled {} hits that could not be sent: {}", batch.size(), reason);
+    }
+
+    private void discard(List<EndpointHit> batch, String reason) {
+        droppedHits.increment(batch.size());
+        inFlight.release();
+        log.warn("Dropped {} hits that could not be sent: {}", batch.size(), reason);
+    }
+
+    /**
+     * Leaves a hit that found the buffer full for the sender thread to spool, or drops it when the spool is disabled,
+     * reporting is stopped or the overflow buffer is full as well.
+     */
+    private void drop(EndpointHit hit) {
+        if (spool == null || !running || !overflow.offer(hit)) {
+            droppedHits.increment();
+        }
+    }
+}
@@ -3,6 +3,8 @@ package ru.practicum.statsclient;
 import org.springframework.lang.Nullable;
 import org.springframework.http.*;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.List;
@@ -10,9 +12,16 @@ import java.util.Map;
 
 public class BaseClient {
     protected final RestTemplate rest;
+    @Nullable
+    private final StatsCircuitBreaker circuitBreaker;
 
     public BaseClient(RestTemplate rest) {
+        this(rest, null);
+    }
+
+    public BaseClient(RestTemplate rest, @Nullable StatsCircuitBreaker circuitBreaker) {
         this.rest = rest;
+        this.circuitBreaker = circuitBreaker;
     }
 
     protected <T> ResponseEntity<Object> post(String path, T body) {
@@ -23,8 +32,39 @@ public class BaseClient {
         return makeAndSendRequest(HttpMethod.GET, path, parameters, null);
     }
 
+    /**
+     * Sends a request and hands the successful response to {@code extractor} without buffering its body.
+     * Error responses are thrown as {@link StatsClientException}.
+     */
+    protected <T> T query(HttpMethod method, String path, Map<String, Object> parameters, @Nullable Object body,
+                          MediaType accept, ResponseExtractor<T> extractor) {
+        if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+            throw new StatsClientException(HttpStatus.SERVICE_UNAVAILABLE, "");
+        }
+        HttpHeaders headers = defaultHeaders();
+        headers.setAccept(List.of(accept));
+        T result;
+        try {
+            result = rest.execute(path, method, rest.httpEntityCallback(new HttpEntity<>(body, headers)), extractor,
+                    parameters);
+        } catch (HttpStatusCodeException e) {
+            recordOutcome(e.getStatusCode());
+            throw new StatsClientException(e.getStatusCode(), e.getResponseBodyAsString());
+        } catch (ResourceAccessException e) {
+            if (circuitBreaker != null) {
+                circuitBreaker.onFailure();
+            }
+            throw e;
+        }
+        recordOutcome(HttpStatus.OK);
+        return result;
+    }
+
     private <T> ResponseEntity<Object> makeAndSendRequest(HttpMethod method, String path,
                                                           @Nullable Map<String, Object> parameters, @Nullable T body) {
+        if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
         HttpEntity<T> requestEntity = new HttpEntity<>(body, defaultHeaders());
         ResponseEntity<Object> statsServerResponse;
         try {
@@ -34,11 +74,29 @@ public class BaseClient {
                 statsServerResponse = rest.exchange(path, method, requestEntity, Object.class);
             }
         } catch (HttpStatusCodeException e) {
+            recordOutcome(e.getStatusCode());
             return ResponseEntity.status(e.getStatusCode()).body(e.getResponseBodyAsByteArray());
+        } catch (ResourceAccessException e) {
+            if (circuitBreaker != null) {
+                circuitBreaker.onFailure();
+            }
+            throw e;
         }
+        recordOutcome(statsServerResponse.getStatusCode());
         return prepareGatewayResponse(statsServerResponse);
     }
 
+    private void recordOutcome(HttpStatusCode status) {
+        if (circuitBreaker == null) {
+            return;
+        }
+        if (status.is5xxServerError()) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+
     private HttpHeaders defaultHeaders() {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
@@ -0,0 +1,7 @@
+package ru.practicum.statsclient;
+
+public enum FsyncPolicy {
+    ALWAYS,
+    INTERVAL,
+    NEVER
+}
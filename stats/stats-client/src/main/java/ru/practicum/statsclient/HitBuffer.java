@@ -0,0 +1,47 @@
+package ru.practicum.statsclient;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded lock-free multi-producer queue: producers reserve a slot with a CAS on the size before adding to a
+ * {@link ConcurrentLinkedQueue}, so {@link #offer} never blocks and fails once {@code capacity} elements wait.
+ */
+class HitBuffer<T> {
+    private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+
+    HitBuffer(int capacity) {
+        this.capacity = capacity;
+    }
+
+    boolean offer(T element) {
+        int current;
+        do {
+            current = size.get();
+            if (current >= capacity) {
+                return false;
+            }
+        } while (!size.compareAndSet(current, current + 1));
+        queue.add(element);
+        return true;
+    }
+
+    int drainTo(Collection<T> target, int maxElements) {
+        int drained = 0;
+        T element;
+        while (drained < maxElements && (element = queue.poll()) != null) {
+            target.add(element);
+            drained++;
+        }
+        size.addAndGet(-drained);
+        return drained;
+    }
+
+    int size() {
+        return size.get();
+    }
+}
@@ -0,0 +1,12 @@
+package ru.practicum.statsclient;
+
+import java.time.LocalDateTime;
+
+/**
+ * Reports hits without waiting for the stats server. The implementation is chosen with
+ * {@code stats-server.hit-reporting}; when it is {@code sync} there is none and hits are sent with
+ * {@link StatsClient#addHit}.
+ */
+public interface HitReporter {
+    void report(String appName, String uri, String ip, LocalDateTime timestamp);
+}
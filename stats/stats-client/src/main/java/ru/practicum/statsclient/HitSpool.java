@@ -0,0 +1,310 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.statscommon.model.EndpointHit;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead spool of hits that could not be sent to the stats server. Hits are appended sequentially to the
+ * active segment file in {@code stats-server.spool.directory} as length-prefixed records with a CRC32; a segment
+ * is closed once it reaches {@code stats-server.spool.segment-size}. {@link HitSpoolReplayer} reads closed
+ * segments oldest first and commits its position to a checkpoint file after every shipped batch, so after a
+ * crash at most one batch is sent twice. Appends are forced to disk according to
+ * {@code stats-server.spool.fsync}; a torn record at the end of a segment is skipped.
+ * <p>
+ * The spool holds at most {@code stats-server.spool.max-size} bytes, hits beyond that are dropped and counted.
+ */
+@Component
+@ConditionalOnProperty(name = "stats-server.spool.enabled", havingValue = "true")
+@Slf4j
+public class HitSpool implements DisposableBean {
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int MAX_RECORD_SIZE = 1 << 16;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final long maxSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final FileChannel checkpoint;
+    private final TreeMap<Long, Long> closedSegments = new TreeMap<>();
+    private final Counter appendedHits;
+    private final Counter droppedHits;
+
+    private FileChannel active;
+    private long activeId;
+    private long activeSize;
+    private long checkpointSegment;
+    private long checkpointPosition;
+    private long size;
+    private boolean dirty;
+    private boolean full;
+
+    public HitSpool(@Value("${stats-server.spool.directory:stats-spool}") Path directory,
+                    @Value("${stats-server.spool.segment-size:16MB}") DataSize segmentSize,
+                    @Value("${stats-server.spool.max-size:1GB}") DataSize maxSize,
+                    @Value("${stats-server.spool.fsync:interval}") FsyncPolicy fsyncPolicy,
+                    ObjectProvider<MeterRegistry> meterRegistry) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize.toBytes();
+        this.maxSize = maxSize.toBytes();
+        this.fsyncPolicy = fsyncPolicy;
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    closedSegments.put(id, Files.size(file));
+                }
+            }
+        }
+        this.checkpoint = FileChannel.open(directory.resolve(CHECKPOINT_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (checkpoint.size() == 2 * Long.BYTES) {
+            ByteBuffer buffer = ByteBuffer.allocate(2 * Long.BYTES);
+            checkpoint.read(buffer, 0);
+            checkpointSegment = buffer.flip().getLong();
+            checkpointPosition = buffer.getLong();
+        }
+        List.copyOf(closedSegments.headMap(checkpointSegment).keySet()).forEach(this::deleteSegment);
+        closedSegments.values().forEach(segment -> size += segment);
+        if (closedSegments.containsKey(checkpointSegment)) {
+            size -= checkpointPosition;
+        } else {
+            checkpointPosition = 0;
+        }
+        // Segment ids never go back below the checkpoint, or new hits would be taken for shipped ones.
+        activeId = Math.max(Math.max(checkpointSegment, 1),
+                closedSegments.isEmpty() ? 1 : closedSegments.lastKey() + 1);
+        openActive();
+        if (size > 0) {
+            log.info("Spool {} has {} bytes of hits to replay in {} segments", directory, size,
+                    closedSegments.size());
+        }
+
+        MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+        Gauge.builder("stats.client.spool.size", this, HitSpool::getSize).register(registry);
+        this.appendedHits = registry.counter("stats.client.spool.hits.appended");
+        this.droppedHits = registry.counter("stats.client.spool.hits.dropped");
+    }
+
+    public synchronized void append(List<EndpointHit> hits) {
+        try {
+            ByteBuffer records = encode(hits);
+            if (size + records.remaining() > maxSize) {
+                droppedHits.increment(hits.size());
+                if (!full) {
+                    full = true;
+                    log.warn("Spool {} is full, hits are dropped until it is replayed", directory);
+                }
+                return;
+            }
+            full = false;
+            int length = records.remaining();
+            while (records.hasRemaining()) {
+                active.write(records);
+            }
+            activeSize += length;
+            size += length;
+            appendedHits.increment(hits.size());
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                active.force(false);
+            } else {
+                dirty = true;
+            }
+            if (activeSize >= segmentSize) {
+                closeActive();
+            }
+        } catch (IOException e) {
+            droppedHits.increment(hits.size());
+            log.error("Failed to spool {} hits", hits.size(), e);
+        }
+    }
+
+    /**
+     * Reads up to {@code maxHits} hits from the oldest spooled segment without consuming them. The active
+     * segment is closed first when no other segment is waiting, so new hits are not kept back.
+     */
+    synchronized Batch read(int maxHits) throws IOException {
+        if (closedSegments.isEmpty() && activeSize > 0) {
+            closeActive();
+        }
+        while (!closedSegments.isEmpty()) {
+            long segment = closedSegments.firstKey();
+            long position = segment == checkpointSegment ? checkpointPosition : 0;
+            List<EndpointHit> hits = new ArrayList<>();
+            long end = readRecords(segment, position, maxHits, hits);
+            if (!hits.isEmpty()) {
+                return new Batch(segment, position, end, hits);
+            }
+            commit(new Batch(segment, position, closedSegments.get(segment), List.of()));
+        }
+        return null;
+    }
+
+    /**
+     * Marks the hits of {@code batch} as shipped and deletes its segment once it has been read to the end.
+     */
+    synchronized void commit(Batch batch) throws IOException {
+        long length = closedSegments.getOrDefault(batch.segment(), batch.end());
+        size -= batch.end() - batch.start();
+        boolean finished = batch.end() >= length;
+        if (finished) {
+            checkpointSegment = batch.segment() + 1;
+            checkpointPosition = 0;
+        } else {
+            checkpointSegment = batch.segment();
+            checkpointPosition = batch.end();
+        }
+        checkpoint.write(ByteBuffer.allocate(2 * Long.BYTES)
+                .putLong(checkpointSegment)
+                .putLong(checkpointPosition)
+                .flip(), 0);
+        checkpoint.force(false);
+        if (finished) {
+            deleteSegment(batch.segment());
+        }
+    }
+
+    /**
+     * Forces the appended hits to disk, called periodically with {@link FsyncPolicy#INTERVAL}.
+     */
+    synchronized void sync() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            active.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            log.error("Failed to sync spool segment {}", segmentFile(activeId), e);
+        }
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    @Override
+    public synchronized void destroy() throws IOException {
+        active.force(false);
+        active.close();
+        checkpoint.close();
+        if (activeSize == 0) {
+            Files.deleteIfExists(segmentFile(activeId));
+        }
+    }
+
+    private long readRecords(long segment, long position, int maxHits, List<EndpointHit> hits) throws IOException {
+        long length = closedSegments.get(segment);
+        try (FileChannel channel = FileChannel.open(segmentFile(segment), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            while (hits.size() < maxHits && position + RECORD_HEADER_SIZE <= length) {
+                channel.read(header.clear(), position);
+                int recordLength = header.flip().getInt();
+                int crc = header.getInt();
+                if (recordLength <= 0 || recordLength > MAX_RECORD_SIZE
+                        || position + RECORD_HEADER_SIZE + recordLength > length) {
+                    log.warn("Skipping a torn record at {} of spool segment {}", position, segmentFile(segment));
+                    return length;
+                }
+                ByteBuffer record = ByteBuffer.allocate(recordLength);
+                while (record.hasRemaining()) {
+                    channel.read(record, position + RECORD_HEADER_SIZE + record.position());
+                }
+                CRC32 checksum = new CRC32();
+                checksum.update(record.array());
+                if ((int) checksum.getValue() != crc) {
+                    log.warn("Skipping a corrupted record at {} of spool segment {}", position, segmentFile(segment));
+                    return length;
+                }
+                hits.add(decode(record.array()));
+                position += RECORD_HEADER_SIZE + recordLength;
+            }
+        }
+        return hits.size() < maxHits ? length : position;
+    }
+
+    private static ByteBuffer encode(List<EndpointHit> hits) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(hits.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(64);
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        CRC32 checksum = new CRC32();
+        for (EndpointHit hit : hits) {
+            recordBytes.reset();
+            record.writeUTF(hit.getApp());
+            record.writeUTF(hit.getUri());
+            record.writeUTF(hit.getIp());
+            record.writeUTF(hit.getTimestamp());
+            checksum.reset();
+            checksum.update(recordBytes.toByteArray());
+            out.writeInt(recordBytes.size());
+            out.writeInt((int) checksum.getValue());
+            recordBytes.writeTo(out);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static EndpointHit decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        return new EndpointHit(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+    }
+
+    private void openActive() throws IOException {
+        active = FileChannel.open(segmentFile(activeId), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        activeSize = 0;
+    }
+
+    private void closeActive() throws IOException {
+        active.force(false);
+        active.close();
+        dirty = false;
+        closedSegments.put(activeId, activeSize);
+        activeId++;
+        openActive();
+    }
+
+    private void deleteSegment(long id) {
+        closedSegments.remove(id);
+        try {
+            Files.deleteIfExists(segmentFile(id));
+        } catch (IOException e) {
+            log.error("Failed to delete spool segment {}", segmentFile(id), e);
+        }
+    }
+
+    private Path segmentFile(long id) {
+        return directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+    }
+
+    record Batch(long segment, long start, long end, List<EndpointHit> hits) {
+    }
+}
@@ -0,0 +1,110 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ships the hits of the {@link HitSpool} to the stats server every {@code stats-server.spool.replay-interval-ms}
+ * while the {@link StatsCircuitBreaker} lets requests through. A batch is consumed once the server accepts it
+ * or rejects it with a 4xx response other than 429, which no retry would change; any other failure, including
+ * the breaker refusing the request, ends the pass and the batch is sent again next time. With
+ * {@link FsyncPolicy#INTERVAL} the replayer also forces the spool to disk.
+ */
+@Component
+@ConditionalOnProperty(name = "stats-server.spool.enabled", havingValue = "true")
+@Slf4j
+public class HitSpoolReplayer implements SmartLifecycle {
+    private final HitSpool spool;
+    private final StatsClient statsClient;
+    private final long replayIntervalMs;
+    private final long fsyncIntervalMs;
+    private final int batchSize;
+    private final Counter replayedHits;
+    private final Counter rejectedHits;
+
+    private volatile boolean running;
+    private ScheduledExecutorService executor;
+
+    public HitSpoolReplayer(HitSpool spool, StatsClient statsClient,
+                            @Value("${stats-server.spool.replay-interval-ms:1000}") long replayIntervalMs,
+                            @Value("${stats-server.spool.fsync-interval-ms:1000}") long fsyncIntervalMs,
+                            @Value("${stats-server.spool.replay-batch-size:1000}") int batchSize,
+                            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.spool = spool;
+        this.statsClient = statsClient;
+        this.replayIntervalMs = replayIntervalMs;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.batchSize = batchSize;
+
+        MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+        this.replayedHits = registry.counter("stats.client.spool.hits.replayed");
+        this.rejectedHits = registry.counter("stats.client.spool.hits.rejected");
+    }
+
+    @Override
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stats-spool-replayer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::replay, replayIntervalMs, replayIntervalMs, TimeUnit.MILLISECONDS);
+        if (spool.getFsyncPolicy() == FsyncPolicy.INTERVAL) {
+            executor.scheduleWithFixedDelay(spool::sync, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        executor.shutdownNow();
+        spool.sync();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void replay() {
+        try {
+            while (running && spool.getSize() > 0) {
+                HitSpool.Batch batch = spool.read(batchSize);
+                if (batch == null) {
+                    return;
+                }
+                ResponseEntity<Object> response = statsClient.sendHits(batch.hits());
+                if (response.getStatusCode().is2xxSuccessful()) {
+                    replayedHits.increment(batch.hits().size());
+                } else if (response.getStatusCode().is4xxClientError()
+                        && !response.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS)) {
+                    rejectedHits.increment(batch.hits().size());
+                    log.warn("Stats server rejected {} spooled hits with status {}", batch.hits().size(),
+                            response.getStatusCode());
+                } else {
+                    return;
+                }
+                spool.commit(batch);
+            }
+        } catch (IOException e) {
+            log.error("Failed to replay spooled hits", e);
+        } catch (RuntimeException e) {
+            log.debug("Replaying spooled hits failed: {}", e.toString());
+        }
+    }
+}
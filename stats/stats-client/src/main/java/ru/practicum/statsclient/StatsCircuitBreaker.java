@@ -0,0 +1,89 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker in front of the stats server. After {@code stats-server.circuit-breaker.failure-threshold}
+ * consecutive failures it opens and callers are refused at once for
+ * {@code stats-server.circuit-breaker.open-duration}; then a single trial request is let through per period
+ * until one succeeds and closes it again.
+ */
+@Component
+@Slf4j
+public class StatsCircuitBreaker {
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final boolean enabled;
+    private final int failureThreshold;
+    private final long openDurationMs;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong openedAt = new AtomicLong();
+
+    public StatsCircuitBreaker(@Value("${stats-server.circuit-breaker.enabled:true}") boolean enabled,
+                               @Value("${stats-server.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                               @Value("${stats-server.circuit-breaker.open-duration:10s}") Duration openDuration,
+                               ObjectProvider<MeterRegistry> meterRegistry) {
+        this.enabled = enabled;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = openDuration.toMillis();
+        Gauge.builder("stats.client.circuit.open", state, current -> current.get() == State.CLOSED ? 0 : 1)
+                .register(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    /**
+     * Tells whether a request may be sent now. While the breaker is open this returns {@code true} to one
+     * caller per {@code open-duration}, whose outcome must be reported.
+     */
+    public boolean allowRequest() {
+        if (!enabled || state.get() == State.CLOSED) {
+            return true;
+        }
+        long opened = openedAt.get();
+        long now = System.currentTimeMillis();
+        if (now - opened < openDurationMs || !openedAt.compareAndSet(opened, now)) {
+            return false;
+        }
+        state.set(State.HALF_OPEN);
+        return true;
+    }
+
+    public boolean isOpen() {
+        return enabled && state.get() != State.CLOSED;
+    }
+
+    public void onSuccess() {
+        failures.set(0);
+        if (state.getAndSet(State.CLOSED) != State.CLOSED) {
+            log.info("Stats server is available again, circuit closed");
+        }
+    }
+
+    public void onFailure() {
+        if (!enabled) {
+            return;
+        }
+        if (state.get() != State.CLOSED || failures.incrementAndGet() >= failureThreshold) {
+            openedAt.set(System.currentTimeMillis());
+            if (state.getAndSet(State.OPEN) == State.CLOSED) {
+                log.warn("Stats server failed {} times in a row, circuit opened for {} ms", failureThreshold,
+                        openDurationMs);
+            }
+        }
+    }
+}
@@ -1,33 +1,91 @@
 package ru.practicum.statsclient;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.util.DefaultUriBuilderFactory;
 import ru.practicum.statscommon.StatsCommonUtils;
 import ru.practicum.statscommon.model.EndpointHit;
+import ru.practicum.statscommon.model.StatsQuery;
+import ru.practicum.statscommon.model.UniqueMode;
+import ru.practicum.statscommon.model.ViewStats;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 @Slf4j
-public class StatsClient extends BaseClient {
+public class StatsClient extends BaseClient implements DisposableBean {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HitSpool spool;
+    private final int maxGetUris;
+    private final int queryChunkSize;
+    private final ThreadPoolExecutor queryExecutor;
+
     @Autowired
-    public StatsClient(@Value("${stats-server.url}") String serverUrl, RestTemplateBuilder builder) {
+    public StatsClient(@Value("${stats-server.url}") String serverUrl,
+                       @Value("${stats-server.connect-timeout:2s}") Duration connectTimeout,
+                       @Value("${stats-server.read-timeout:10s}") Duration readTimeout,
+                       @Value("${stats-server.query.max-get-uris:50}") int maxGetUris,
+                       @Value("${stats-server.query.chunk-size:1000}") int queryChunkSize,
+                       @Value("${stats-server.query.parallelism:4}") int queryParallelism,
+                       RestTemplateBuilder builder, StatsCircuitBreaker circuitBreaker,
+                       ObjectProvider<HitSpool> spool) {
         super(builder
                 .uriTemplateHandler(new DefaultUriBuilderFactory(serverUrl))
                 .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(
                         HttpClientBuilder.create().build()
                 ))
-                .build()
+                .setConnectTimeout(connectTimeout)
+                .setReadTimeout(readTimeout)
+                .build(),
+                circuitBreaker
         );
+        this.spool = spool.getIfAvailable();
+        this.maxGetUris = maxGetUris;
+        this.queryChunkSize = Math.min(queryChunkSize, StatsCommonUtils.MAX_QUERY_URIS);
+        AtomicInteger threads = new AtomicInteger();
+        this.queryExecutor = new ThreadPoolExecutor(queryParallelism, queryParallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "stats-query-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.queryExecutor.allowCoreThreadTimeOut(true);
     }
 
     public ResponseEntity<Object> addHit(String appName, String uri, String ip, LocalDateTime timestamp) {
@@ -40,15 +98,53 @@ public class StatsClient extends BaseClient {
                 .ip(ip)
                 .timestamp(timestamp.format(StatsCommonUtils.DT_FORMATTER))
                 .build();
-        return post(StatsCommonUtils.HIT_ENDPOINT, endpointHit);
+        return sendOrSpool(StatsCommonUtils.HIT_ENDPOINT, endpointHit, List.of(endpointHit));
+    }
+
+    public ResponseEntity<Object> addHits(List<EndpointHit> endpointHits) {
+        log.info("Sending a request to register {} appeals", endpointHits.size());
+
+        return sendOrSpool(StatsCommonUtils.HITS_ENDPOINT, endpointHits, endpointHits);
+    }
+
+    /**
+     * Sends hits without spooling them on failure, used to replay the spool.
+     */
+    ResponseEntity<Object> sendHits(List<EndpointHit> endpointHits) {
+        return post(StatsCommonUtils.HITS_ENDPOINT, endpointHits);
+    }
+
+    /**
+     * Posts the hits and, when the spool is enabled, spools them instead if the server cannot be reached or
+     * fails with a 5xx response; the caller then gets 202 Accepted.
+     */
+    private ResponseEntity<Object> sendOrSpool(String path, Object body, List<EndpointHit> endpointHits) {
+        if (spool == null) {
+            return post(path, body);
+        }
+        ResponseEntity<Object> response;
+        try {
+            response = post(path, body);
+        } catch (ResourceAccessException e) {
+            log.warn("Stats server is unavailable, spooling {} hits: {}", endpointHits.size(), e.getMessage());
+            spool.append(endpointHits);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).build();
+        }
+        if (response.getStatusCode().is5xxServerError()) {
+            log.debug("Stats server responded with {}, spooling {} hits", response.getStatusCode(),
+                    endpointHits.size());
+            spool.append(endpointHits);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).build();
+        }
+        return response;
     }
 
     public ResponseEntity<Object> getStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
-        return getStats(start, end, uris, null);
+        return getStats(start, end, uris, (UniqueMode) null);
     }
 
     public ResponseEntity<Object> getStats(LocalDateTime start, LocalDateTime end) {
-        return getStats(start, end, null, null);
+        return getStats(start, end, null, (UniqueMode) null);
     }
 
     public ResponseEntity<Object> getStats(LocalDateTime start, LocalDateTime end, Boolean unique) {
@@ -56,6 +152,10 @@ public class StatsClient extends BaseClient {
     }
 
     public ResponseEntity<Object> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
+        return getStats(start, end, uris, unique == null ? null : UniqueMode.from(unique));
+    }
+
+    public ResponseEntity<Object> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique) {
         log.info("Sending a request to get statistics on parameters start = {}, end = {}, uris = {}, unique = {}",
                 start, end, uris, unique);
 
@@ -63,11 +163,208 @@ public class StatsClient extends BaseClient {
             throw new IllegalArgumentException("Invalid time interval.");
         }
 
-        StringBuilder uriBuilder = new StringBuilder(StatsCommonUtils.STATS_ENDPOINT + "?start={start}&end={end}");
-        Map<String, Object> parameters = Map.of(
-                "start", start.format(StatsCommonUtils.DT_FORMATTER),
-                "end", end.format(StatsCommonUtils.DT_FORMATTER)
-        );
+        return get(statsPath(StatsCommonUtils.STATS_ENDPOINT, uris, unique), rangeParameters(start, end));
+    }
+
+    /**
+     * Returns the view stats decoded straight from the response stream, without an intermediate JSON tree.
+     * Up to {@code stats-server.query.max-get-uris} uris are sent in the query string; larger sets are posted
+     * to {@value StatsCommonUtils#STATS_QUERY_ENDPOINT} in chunks queried in parallel. Error responses are thrown
+     * as {@link StatsClientException}.
+     */
+    public List<ViewStats> queryStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique) {
+        log.info("Sending a typed request to get statistics on parameters start = {}, end = {}, uris = {}, unique = {}",
+                start, end, uris, unique);
+
+        if (start == null || end == null || start.isAfter(end)) {
+            throw new IllegalArgumentException("Invalid time interval.");
+        }
+
+        if (uris == null || uris.size() <= maxGetUris) {
+            List<ViewStats> stats = new ArrayList<>();
+            query(HttpMethod.GET, statsPath(StatsCommonUtils.STATS_ENDPOINT, uris, unique),
+                    rangeParameters(start, end), null, MediaType.APPLICATION_JSON, response -> {
+                        readStats(response.getBody(), (app, uri, hits) -> stats.add(new ViewStats(app, uri, hits)));
+                        return null;
+                    });
+            return stats;
+        }
+
+        List<ViewStats> stats = new ArrayList<>();
+        inChunks(uris.stream().distinct().toList(), chunk -> {
+            List<ViewStats> part = new ArrayList<>();
+            postQuery(statsQuery(start, end, unique).uris(chunk).build(),
+                    (app, uri, hits) -> part.add(new ViewStats(app, uri, hits)));
+            return part;
+        }).forEach(stats::addAll);
+        stats.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        return stats;
+    }
+
+    /**
+     * Returns the hits of every uri summed over all apps, decoded straight from the response stream without
+     * creating {@link ViewStats} objects. Large uri sets are queried like in {@link #queryStats}.
+     */
+    public Map<String, Long> queryHits(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique) {
+        log.info("Sending a request to get hits by uri on parameters start = {}, end = {}, uris = {}, unique = {}",
+                start, end, uris, unique);
+
+        if (start == null || end == null || start.isAfter(end)) {
+            throw new IllegalArgumentException("Invalid time interval.");
+        }
+
+        if (uris == null || uris.size() <= maxGetUris) {
+            Map<String, Long> hitsByUri = new HashMap<>();
+            query(HttpMethod.GET, statsPath(StatsCommonUtils.STATS_ENDPOINT, uris, unique),
+                    rangeParameters(start, end), null, MediaType.APPLICATION_JSON, response -> {
+                        readStats(response.getBody(), (app, uri, hits) -> hitsByUri.merge(uri, hits, Long::sum));
+                        return null;
+                    });
+            return hitsByUri;
+        }
+
+        Map<String, Long> hitsByUri = new HashMap<>();
+        inChunks(uris.stream().distinct().toList(), chunk -> {
+            Map<String, Long> part = new HashMap<>();
+            postQuery(statsQuery(start, end, unique).uris(chunk).build(),
+                    (app, uri, hits) -> part.merge(uri, hits, Long::sum));
+            return part;
+        }).forEach(part -> part.forEach((uri, hits) -> hitsByUri.merge(uri, hits, Long::sum)));
+        return hitsByUri;
+    }
+
+    /**
+     * Returns the hits of the uris {@code uriPrefix + id} by id, summed over all apps. The ids are always posted
+     * to {@value StatsCommonUtils#STATS_QUERY_ENDPOINT} as a compact list, in chunks queried in parallel.
+     */
+    public Map<Long, Long> queryHitsByIds(LocalDateTime start, LocalDateTime end, String uriPrefix,
+                                          Collection<Long> ids, UniqueMode unique) {
+        log.info("Sending a request to get hits of {} ids on parameters start = {}, end = {}, uriPrefix = {}, " +
+                "unique = {}", ids.size(), start, end, uriPrefix, unique);
+
+        if (start == null || end == null || start.isAfter(end)) {
+            throw new IllegalArgumentException("Invalid time interval.");
+        }
+
+        Map<Long, Long> hitsById = new HashMap<>();
+        if (ids.isEmpty()) {
+            return hitsById;
+        }
+        inChunks(ids.stream().distinct().toList(), chunk -> {
+            Map<Long, Long> part = new HashMap<>();
+            postQuery(statsQuery(start, end, unique).uriPrefix(uriPrefix).ids(chunk).build(), (app, uri, hits) -> {
+                if (uri != null && uri.startsWith(uriPrefix)) {
+                    part.merge(Long.parseLong(uri.substring(uriPrefix.length())), hits, Long::sum);
+                }
+            });
+            return part;
+        }).forEach(part -> part.forEach((id, hits) -> hitsById.merge(id, hits, Long::sum)));
+        return hitsById;
+    }
+
+    @Override
+    public void destroy() {
+        queryExecutor.shutdownNow();
+    }
+
+    public long streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique,
+                            Consumer<ViewStats> consumer) {
+        log.info("Sending a request to stream statistics on parameters start = {}, end = {}, uris = {}, unique = {}",
+                start, end, uris, unique);
+
+        if (start == null || end == null || start.isAfter(end)) {
+            throw new IllegalArgumentException("Invalid time interval.");
+        }
+
+        Long count = rest.execute(statsPath(StatsCommonUtils.STATS_ENDPOINT, uris, unique), HttpMethod.GET,
+                request -> request.getHeaders().setAccept(List.of(MediaType.APPLICATION_NDJSON)),
+                response -> {
+                    long received = 0;
+                    try (BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(response.getBody(), StandardCharsets.UTF_8))) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            if (!line.isBlank()) {
+                                consumer.accept(objectMapper.readValue(line, ViewStats.class));
+                                received++;
+                            }
+                        }
+                    }
+                    return received;
+                },
+                rangeParameters(start, end));
+        return count == null ? 0 : count;
+    }
+
+    private void postQuery(StatsQuery query, ViewStatsHandler handler) {
+        query(HttpMethod.POST, StatsCommonUtils.STATS_QUERY_ENDPOINT, Map.of(), query, MediaType.APPLICATION_JSON,
+                response -> {
+                    readStats(response.getBody(), handler);
+                    return null;
+                });
+    }
+
+    private static StatsQuery.StatsQueryBuilder statsQuery(LocalDateTime start, LocalDateTime end, UniqueMode unique) {
+        return StatsQuery.builder()
+                .start(start.format(StatsCommonUtils.DT_FORMATTER))
+                .end(end.format(StatsCommonUtils.DT_FORMATTER))
+                .unique(unique == null ? null : unique.getParameter());
+    }
+
+    /**
+     * Runs {@code query} for every chunk of {@code keys}; several chunks are run in parallel on the query
+     * executor and the first failure is rethrown.
+     */
+    private <E, T> List<T> inChunks(List<E> keys, Function<List<E>, T> query) {
+        if (keys.size() <= queryChunkSize) {
+            return List.of(query.apply(keys));
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += queryChunkSize) {
+            List<E> chunk = keys.subList(from, Math.min(keys.size(), from + queryChunkSize));
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(chunk), queryExecutor));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(false));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    private void readStats(InputStream body, ViewStatsHandler handler) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected an array of view stats");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String app = null;
+                String uri = null;
+                long hits = 0;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "app" -> app = parser.getValueAsString();
+                        case "uri" -> uri = parser.getValueAsString();
+                        case "hits" -> hits = parser.getValueAsLong();
+                        default -> parser.skipChildren();
+                    }
+                }
+                handler.accept(app, uri, hits);
+            }
+        }
+    }
+
+    private String statsPath(String endpoint, List<String> uris, UniqueMode unique) {
+        StringBuilder uriBuilder = new StringBuilder(endpoint + "?start={start}&end={end}");
 
         if (uris != null && !uris.isEmpty()) {
             for (String uri : uris) {
@@ -75,9 +372,62 @@ public class StatsClient extends BaseClient {
             }
         }
         if (unique != null) {
-            uriBuilder.append("&unique=").append(unique);
+            uriBuilder.append("&unique=").append(unique.getParameter());
+        }
+        return uriBuilder.toString();
+    }
+
+    private Map<String, Object> rangeParameters(LocalDateTime start, LocalDateTime end) {
+        return Map.of(
+                "start", start.format(StatsCommonUtils.DT_FORMATTER),
+                "end", end.format(StatsCommonUtils.DT_FORMATTER)
+        );
+    }
+
+    public ResponseEntity<Object> getTop(LocalDateTime start, LocalDateTime end, int limit, UniqueMode unique,
+                                         String prefix) {
+        log.info("Sending a request to get top {} statistics on parameters start = {}, end = {}, unique = {}, prefix = {}",
+                limit, start, end, unique, prefix);
+
+        if (start == null || end == null || start.isAfter(end)) {
+            throw new IllegalArgumentException("Invalid time interval.");
+        }
+
+        StringBuilder uriBuilder = new StringBuilder(StatsCommonUtils.STATS_TOP_ENDPOINT +
+                "?start={start}&end={end}&limit={limit}");
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("start", start.format(StatsCommonUtils.DT_FORMATTER));
+        parameters.put("end", end.format(StatsCommonUtils.DT_FORMATTER));
+        parameters.put("limit", limit);
+
+        if (unique != null) {
+            uriBuilder.append("&unique=").append(unique.getParameter());
+        }
+        if (prefix != null) {
+            uriBuilder.append("&prefix={prefix}");
+            parameters.put("prefix", prefix);
         }
 
         return get(uriBuilder.toString(), parameters);
     }
+
+    public ResponseEntity<Object> getTimeSeries(LocalDateTime start, LocalDateTime end, Duration step,
+                                                List<String> uris, UniqueMode unique) {
+        log.info("Sending a request to get a time series on parameters start = {}, end = {}, step = {}, uris = {}, " +
+                "unique = {}", start, end, step, uris, unique);
+
+        if (start == null || end == null || start.isAfter(end)) {
+            throw new IllegalArgumentException("Invalid time interval.");
+        }
+
+        Map<String, Object> parameters = new HashMap<>(rangeParameters(start, end));
+        parameters.put("step", step.getSeconds() + "s");
+
+        return get(statsPath(StatsCommonUtils.STATS_TIMESERIES_ENDPOINT, uris, unique) + "&step={step}", parameters);
+    }
+
+    @FunctionalInterface
+    private interface ViewStatsHandler {
+        void accept(String app, String uri, long hits);
+    }
 }
@@ -0,0 +1,20 @@
+package ru.practicum.statsclient;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatusCode;
+
+/**
+ * Error response of the stats server to a typed query of {@link StatsClient}. The circuit breaker refusing a
+ * request is reported as {@code 503 Service Unavailable}.
+ */
+@Getter
+public class StatsClientException extends RuntimeException {
+    private final HttpStatusCode status;
+    private final String responseBody;
+
+    public StatsClientException(HttpStatusCode status, String responseBody) {
+        super("Stats server responded with " + status + (responseBody.isEmpty() ? "" : ": " + responseBody));
+        this.status = status;
+        this.responseBody = responseBody;
+    }
+}
@@ -0,0 +1,229 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.practicum.statscommon.HitDatagram;
+import ru.practicum.statscommon.StatsCommonUtils;
+import ru.practicum.statscommon.model.EndpointHit;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Fire-and-forget sender of hits as {@link HitDatagram} packets. Consecutive hits of one app are packed into
+ * datagrams of up to {@code stats-server.datagram.max-packet-size} bytes. Sending never blocks: a datagram the
+ * socket cannot take at once, or that fails to be sent, is dropped and counted. The sequence numbers of the
+ * datagrams let the server count the ones lost on the way.
+ */
+@Service
+@ConditionalOnProperty(name = "stats-server.hit-reporting", havingValue = "datagram")
+@Slf4j
+public class StatsDatagramSender implements HitReporter, DisposableBean {
+    private static final int MIN_PACKET_SIZE = 1024;
+    private static final int MAX_RECORD_OVERHEAD = 5 + 1 + 10;
+    private static final Pattern IPV6 = Pattern.compile("^[0-9a-fA-F:.]*:[0-9a-fA-F:.]*$");
+
+    private final DatagramChannel channel;
+    private final int maxPacketSize;
+    private final int senderId = ThreadLocalRandom.current().nextInt();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final Counter sentPackets;
+    private final Counter sentHits;
+    private final Counter droppedPackets;
+    private final Counter malformedHits;
+
+    public StatsDatagramSender(@Value("${stats-server.datagram.host:localhost}") String host,
+                               @Value("${stats-server.datagram.port:9190}") int port,
+                               @Value("${stats-server.datagram.max-packet-size:1400}") int maxPacketSize,
+                               ObjectProvider<MeterRegistry> meterRegistry) throws IOException {
+        if (maxPacketSize < MIN_PACKET_SIZE || maxPacketSize > HitDatagram.MAX_SIZE) {
+            throw new IllegalArgumentException("Datagram size must be between " + MIN_PACKET_SIZE + " and "
+                    + HitDatagram.MAX_SIZE);
+        }
+        this.channel = DatagramChannel.open();
+        this.channel.configureBlocking(false);
+        this.channel.connect(new InetSocketAddress(host, port));
+        this.maxPacketSize = maxPacketSize;
+
+        MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+        this.sentPackets = registry.counter("stats.client.datagram.packets.sent");
+        this.sentHits = registry.counter("stats.client.datagram.hits.sent");
+        this.droppedPackets = registry.counter("stats.client.datagram.packets.dropped");
+        this.malformedHits = registry.counter("stats.client.datagram.hits.malformed");
+    }
+
+    @Override
+    public void report(String appName, String uri, String ip, LocalDateTime timestamp) {
+        send(List.of(EndpointHit.builder()
+                .app(appName)
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp.format(StatsCommonUtils.DT_FORMATTER))
+                .build()));
+    }
+
+    public void send(List<EndpointHit> endpointHits) {
+        Packet packet = null;
+        for (EndpointHit hit : endpointHits) {
+            byte[] uri;
+            byte[] ip;
+            long timestamp;
+            try {
+                toName(hit.getApp());
+                uri = toName(hit.getUri());
+                ip = toBytes(hit.getIp());
+                if (hit.getTimestamp() == null) {
+                    throw new IllegalArgumentException("Timestamp is missing.");
+                }
+                timestamp = LocalDateTime.parse(hit.getTimestamp(), StatsCommonUtils.DT_FORMATTER)
+                        .toEpochSecond(ZoneOffset.UTC);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                malformedHits.increment();
+                log.debug("Skipping hit {}: {}", hit, e.getMessage());
+                continue;
+            }
+
+            if (packet != null && (!packet.app.equals(hit.getApp()) || !packet.add(uri, ip, timestamp))) {
+                flush(packet);
+                packet = null;
+            }
+            if (packet == null) {
+                packet = new Packet(hit.getApp(), timestamp);
+                if (!packet.add(uri, ip, timestamp)) {
+                    malformedHits.increment();
+                    log.debug("Skipping hit {}: it does not fit into a datagram", hit);
+                    packet = null;
+                }
+            }
+        }
+        if (packet != null) {
+            flush(packet);
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        channel.close();
+    }
+
+    private void flush(Packet packet) {
+        ByteBuffer buffer = packet.buffer;
+        buffer.putInt(HitDatagram.SEQUENCE_OFFSET, sequence.getAndIncrement());
+        buffer.flip();
+        try {
+            if (channel.write(buffer) == 0) {
+                droppedPackets.increment();
+                return;
+            }
+        } catch (IOException e) {
+            droppedPackets.increment();
+            log.debug("Failed to send a hit datagram: {}", e.toString());
+            return;
+        }
+        sentPackets.increment();
+        sentHits.increment(packet.hits);
+    }
+
+    private static byte[] toName(String name) {
+        if (name == null || name.isBlank() || name.length() > HitDatagram.MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("App and URI must be 1 to " + HitDatagram.MAX_NAME_LENGTH
+                    + " characters long");
+        }
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses an IPv4 or IPv6 literal without ever resolving a host name.
+     */
+    private static byte[] toBytes(String ip) {
+        if (ip == null) {
+            throw new IllegalArgumentException("IP address is missing.");
+        }
+        if (ip.indexOf(':') >= 0) {
+            if (!IPV6.matcher(ip).matches()) {
+                throw new IllegalArgumentException("Invalid IP address: " + ip);
+            }
+            try {
+                return InetAddress.getByName(ip).getAddress();
+            } catch (UnknownHostException e) {
+                throw new IllegalArgumentException("Invalid IP address: " + ip);
+            }
+        }
+        String[] octets = ip.split("\\.", -1);
+        if (octets.length != 4) {
+            throw new IllegalArgumentException("Invalid IP address: " + ip);
+        }
+        byte[] address = new byte[4];
+        for (int i = 0; i < octets.length; i++) {
+            String octet = octets[i];
+            if (octet.isEmpty() || octet.length() > 3 || !octet.chars().allMatch(c -> c >= '0' && c <= '9')
+                    || Integer.parseInt(octet) > 255) {
+                throw new IllegalArgumentException("Invalid IP address: " + ip);
+            }
+            address[i] = (byte) Integer.parseInt(octet);
+        }
+        return address;
+    }
+
+    private final class Packet {
+        private final String app;
+        private final long base;
+        private final ByteBuffer buffer;
+        private int hits;
+
+        private Packet(String app, long base) {
+            this.app = app;
+            this.base = base;
+            this.buffer = ByteBuffer.allocate(maxPacketSize);
+            buffer.put(HitDatagram.MAGIC)
+                    .put(HitDatagram.VERSION)
+                    .putInt(senderId)
+                    .putInt(0)
+                    .putLong(base);
+            putName(app.getBytes(StandardCharsets.UTF_8));
+        }
+
+        boolean add(byte[] uri, byte[] ip, long timestamp) {
+            if (buffer.remaining() < uri.length + ip.length + MAX_RECORD_OVERHEAD) {
+                return false;
+            }
+            putName(uri);
+            buffer.put((byte) ip.length).put(ip);
+            putVarLong(HitDatagram.zigzag(timestamp - base));
+            hits++;
+            return true;
+        }
+
+        private void putName(byte[] name) {
+            putVarLong(name.length);
+            buffer.put(name);
+        }
+
+        private void putVarLong(long value) {
+            while ((value & ~0x7fL) != 0) {
+                buffer.put((byte) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.statscommon.model.EndpointHit;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class HitSpoolTest {
+    @TempDir
+    Path directory;
+
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void readsAppendedHitsUntilCommitted() throws IOException {
+        HitSpool spool = open(DataSize.ofMegabytes(1));
+        List<EndpointHit> hits = hits(0, 3);
+        spool.append(hits);
+
+        HitSpool.Batch batch = spool.read(10);
+        assertEquals(hits, batch.hits());
+        assertEquals(hits, spool.read(10).hits());
+
+        spool.commit(batch);
+        assertNull(spool.read(10));
+        assertEquals(0, spool.getSize());
+        spool.destroy();
+    }
+
+    @Test
+    void resumesFromCheckpointAfterRestart() throws IOException {
+        HitSpool spool = open(DataSize.ofMegabytes(1));
+        spool.append(hits(0, 5));
+        spool.commit(spool.read(2));
+        spool.destroy();
+
+        HitSpool reopened = open(DataSize.ofMegabytes(1));
+        HitSpool.Batch batch = reopened.read(10);
+
+        assertEquals(hits(2, 3), batch.hits());
+        reopened.commit(batch);
+        assertNull(reopened.read(10));
+        reopened.destroy();
+    }
+
+    @Test
+    void skipsTornRecordAtEndOfSegment() throws IOException {
+        HitSpool spool = open(DataSize.ofMegabytes(1));
+        spool.append(hits(0, 2));
+        spool.destroy();
+        try (Stream<Path> files = Files.list(directory)) {
+            Path segment = files.filter(file -> file.toString().endsWith(".seg")).findFirst().orElseThrow();
+            // The header and the first bytes of a record whose write was cut short.
+            Files.write(segment, new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 5, 6, 7}, StandardOpenOption.APPEND);
+        }
+
+        HitSpool reopened = open(DataSize.ofMegabytes(1));
+        HitSpool.Batch batch = reopened.read(10);
+
+        assertEquals(hits(0, 2), batch.hits());
+        reopened.commit(batch);
+        assertNull(reopened.read(10));
+        assertEquals(0, reopened.getSize());
+        reopened.destroy();
+    }
+
+    @Test
+    void dropsHitsBeyondMaxSize() throws IOException {
+        HitSpool spool = open(DataSize.ofBytes(200));
+        spool.append(hits(0, 1));
+        spool.append(hits(1, 10));
+
+        assertEquals(hits(0, 1), spool.read(10).hits());
+        assertEquals(10, meterRegistry.counter("stats.client.spool.hits.dropped").count());
+        spool.destroy();
+    }
+
+    private HitSpool open(DataSize maxSize) throws IOException {
+        return new HitSpool(directory, DataSize.ofKilobytes(64), maxSize, FsyncPolicy.ALWAYS,
+                new StaticListableBeanFactory(Map.of("meterRegistry", meterRegistry))
+                        .getBeanProvider(MeterRegistry.class));
+    }
+
+    private static List<EndpointHit> hits(int from, int count) {
+        List<EndpointHit> hits = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            hits.add(new EndpointHit("main-service", "/events/" + i, "192.168.0." + i, "2024-03-01 12:00:0" + i % 10));
+        }
+        return hits;
+    }
+}
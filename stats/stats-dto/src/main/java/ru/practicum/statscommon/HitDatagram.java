@@ -0,0 +1,32 @@
+package ru.practicum.statscommon;
+
+/**
+ * Wire format of the hits sent over UDP. A datagram holds several hits in one of two encodings.
+ * <p>
+ * Binary: the {@link #MAGIC} byte, the {@link #VERSION} byte, the random id of the sender and the sequence number
+ * of the datagram as ints, the base timestamp in epoch seconds (UTC) as a long and the app name, followed by
+ * records up to the end of the datagram. A record is the URI, the address length (4 or 16) with the address
+ * bytes and the zigzag-encoded difference between the hit timestamp and the base timestamp as a varint. Names
+ * are written as a varint byte length and UTF-8 bytes. All hits of a datagram belong to one app.
+ * <p>
+ * Line protocol: UTF-8 lines of {@code app}, {@code uri}, {@code ip} and {@code timestamp} in
+ * {@link StatsCommonUtils#DT_FORMAT}, separated by tabs. It has no sequence numbers and is meant for ad hoc
+ * senders such as {@code nc -u}.
+ */
+public abstract class HitDatagram {
+    public static final byte MAGIC = (byte) 0xb7;
+    public static final byte VERSION = 1;
+    public static final int SEQUENCE_OFFSET = 2 + Integer.BYTES;
+    public static final int MAX_SIZE = 65507;
+    public static final int MAX_NAME_LENGTH = 255;
+    public static final char FIELD_SEPARATOR = '\t';
+    public static final char LINE_SEPARATOR = '\n';
+
+    public static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
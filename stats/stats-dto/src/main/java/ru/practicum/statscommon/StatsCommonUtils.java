@@ -6,5 +6,16 @@ public abstract class StatsCommonUtils {
     public static final String DT_FORMAT = "yyyy-MM-dd HH:mm:ss";
     public static final DateTimeFormatter DT_FORMATTER = DateTimeFormatter.ofPattern(DT_FORMAT);
     public static final String HIT_ENDPOINT = "/hit";
+    public static final String HITS_ENDPOINT = "/hits";
+    public static final String HITS_ADMIN_ENDPOINT = "/admin/hits";
+    public static final String HITS_LOAD_ENDPOINT = "/admin/hits/load";
+    public static final String HITS_EXPORT_ENDPOINT = "/admin/hits/export";
+    public static final String SNAPSHOT_ENDPOINT = "/admin/snapshot";
+    public static final String SHARDS_REBALANCE_ENDPOINT = "/admin/shards/rebalance";
+    public static final String ADMIN_TOKEN_HEADER = "X-Admin-Token";
     public static final String STATS_ENDPOINT = "/stats";
+    public static final String STATS_QUERY_ENDPOINT = "/stats/query";
+    public static final String STATS_TOP_ENDPOINT = "/stats/top";
+    public static final String STATS_TIMESERIES_ENDPOINT = "/stats/timeseries";
+    public static final int MAX_QUERY_URIS = 10000;
 }
@@ -0,0 +1,62 @@
+package ru.practicum.statscommon.model;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Body of a {@code POST /stats/query} request. The uris are given as a list, as ids appended to
+ * {@code uriPrefix}, or both; without any the stats of all uris are returned.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class StatsQuery {
+
+    @NotBlank
+    String start;
+
+    @NotBlank
+    String end;
+
+    List<String> uris;
+
+    String uriPrefix;
+
+    List<Long> ids;
+
+    String unique;
+
+    @Override
+    public String toString() {
+        return "StatsQuery{" +
+                "start='" + start + '\'' +
+                ", end='" + end + '\'' +
+                ", uris=" + (uris == null ? null : uris.size()) +
+                ", uriPrefix='" + uriPrefix + '\'' +
+                ", ids=" + (ids == null ? null : ids.size()) +
+                ", unique='" + unique + '\'' +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        StatsQuery that = (StatsQuery) o;
+        return Objects.equals(start, that.start) && Objects.equals(end, that.end) && Objects.equals(uris, that.uris)
+                && Objects.equals(uriPrefix, that.uriPrefix) && Objects.equals(ids, that.ids)
+                && Objects.equals(unique, that.unique);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(start, end, uris, uriPrefix, ids, unique);
+    }
+}
@@ -0,0 +1,30 @@
+package ru.practicum.statscommon.model;
+
+public enum UniqueMode {
+    NONE("false"),
+    EXACT("true"),
+    APPROX("approx");
+
+    private final String parameter;
+
+    UniqueMode(String parameter) {
+        this.parameter = parameter;
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+
+    public static UniqueMode from(String parameter) {
+        for (UniqueMode mode : values()) {
+            if (mode.parameter.equalsIgnoreCase(parameter)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown unique mode: " + parameter);
+    }
+
+    public static UniqueMode from(Boolean unique) {
+        return Boolean.TRUE.equals(unique) ? EXACT : NONE;
+    }
+}
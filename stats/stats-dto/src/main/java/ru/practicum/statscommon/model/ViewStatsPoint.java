@@ -0,0 +1,40 @@
+package ru.practicum.statscommon.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Objects;
+
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ViewStatsPoint {
+
+    String start;
+
+    Long hits;
+
+    @Override
+    public String toString() {
+        return "ViewStatsPoint{" +
+                "start='" + start + '\'' +
+                ", hits=" + hits +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ViewStatsPoint that = (ViewStatsPoint) o;
+        return Objects.equals(start, that.start) && Objects.equals(hits, that.hits);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(start, hits);
+    }
+}
@@ -0,0 +1,44 @@
+package ru.practicum.statscommon.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+import java.util.Objects;
+
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ViewStatsSeries {
+
+    String app;
+
+    String uri;
+
+    List<ViewStatsPoint> points;
+
+    @Override
+    public String toString() {
+        return "ViewStatsSeries{" +
+                "app='" + app + '\'' +
+                ", uri='" + uri + '\'' +
+                ", points=" + points +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ViewStatsSeries that = (ViewStatsSeries) o;
+        return Objects.equals(app, that.app) && Objects.equals(uri, that.uri) && Objects.equals(points, that.points);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(app, uri, points);
+    }
+}
@@ -0,0 +1,52 @@
+package ru.practicum.statsserver.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import ru.practicum.statscommon.StatsCommonUtils;
+import ru.practicum.statsserver.exception.AdminAccessDeniedException;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Guards the {@code /admin} endpoints, which load, export, restore and clear raw hits and rebalance shards. When
+ * {@code stats.admin.token} is set, requests have to carry it in the {@value StatsCommonUtils#ADMIN_TOKEN_HEADER}
+ * header; otherwise only requests from the loopback interface are accepted.
+ */
+@Component
+public class AdminAccessInterceptor implements HandlerInterceptor {
+    private final byte[] token;
+
+    public AdminAccessInterceptor(@Value("${stats.admin.token:}") String token) {
+        this.token = token.isBlank() ? null : token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (token == null) {
+            if (!isLoopback(request.getRemoteAddr())) {
+                throw new AdminAccessDeniedException("Admin endpoints are only served on localhost " +
+                        "unless stats.admin.token is set");
+            }
+            return true;
+        }
+        String presented = request.getHeader(StatsCommonUtils.ADMIN_TOKEN_HEADER);
+        if (presented == null || !MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8))) {
+            throw new AdminAccessDeniedException("Missing or invalid " + StatsCommonUtils.ADMIN_TOKEN_HEADER);
+        }
+        return true;
+    }
+
+    private static boolean isLoopback(String address) {
+        try {
+            return InetAddress.getByName(address).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+}
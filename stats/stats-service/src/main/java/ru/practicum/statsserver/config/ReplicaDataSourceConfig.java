@@ -0,0 +1,74 @@
+package ru.practicum.statsserver.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import ru.practicum.statsserver.storage.ConditionalOnJdbcStorage;
+import ru.practicum.statsserver.storage.ReplicaRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replaces the auto-configured data source with a {@link ReplicaRoutingDataSource} when
+ * {@code stats.replica.urls} lists one or more replicas. Replicas use the primary's driver and credentials
+ * unless {@code stats.replica.username} and {@code stats.replica.password} are set. Every pool gets the
+ * {@code spring.datasource.hikari.*} settings, which replica pools can override with {@code stats.replica.hikari.*}.
+ */
+@Configuration
+@ConditionalOnJdbcStorage
+@ConditionalOnExpression("'${stats.replica.urls:}' != ''")
+public class ReplicaDataSourceConfig {
+    @Bean
+    public ReplicaRoutingDataSource routingDataSource(DataSourceProperties properties, Environment environment,
+                                                      @Value("${stats.replica.urls}") String urls,
+                                                      @Value("${stats.replica.username:}") String username,
+                                                      @Value("${stats.replica.password:}") String password,
+                                                      @Value("${stats.replica.max-lag:10s}") String maxLag) {
+        Binder binder = Binder.get(environment);
+        List<String> replicaUrls = Arrays.stream(urls.split(","))
+                .map(String::strip)
+                .filter(url -> !url.isEmpty())
+                .toList();
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            DataSourceBuilder<HikariDataSource> builder = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(replicaUrls.get(i));
+            if (!username.isBlank()) {
+                builder.username(username).password(password);
+            }
+            HikariDataSource replica = pool(builder, binder, "replica-" + i);
+            binder.bind("stats.replica.hikari", Bindable.ofInstance(replica));
+            replicas.add(replica);
+        }
+        HikariDataSource primary = pool(properties.initializeDataSourceBuilder().type(HikariDataSource.class),
+                binder, "primary");
+        return new ReplicaRoutingDataSource(primary, replicas, DurationStyle.detectAndParse(maxLag));
+    }
+
+    private HikariDataSource pool(DataSourceBuilder<HikariDataSource> builder, Binder binder, String name) {
+        HikariDataSource dataSource = builder.build();
+        dataSource.setPoolName(name);
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+}
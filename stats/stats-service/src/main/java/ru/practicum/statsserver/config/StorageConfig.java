@@ -0,0 +1,21 @@
+package ru.practicum.statsserver.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import ru.practicum.statsserver.storage.ConditionalOnJdbcStorage;
+import ru.practicum.statsserver.storage.DatabasePlatform;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+
+@Configuration
+@ConditionalOnJdbcStorage
+public class StorageConfig {
+    @Bean
+    public DatabasePlatform databasePlatform(DataSource dataSource) throws MetaDataAccessException {
+        String productName = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+        return DatabasePlatform.fromProductName(productName);
+    }
+}
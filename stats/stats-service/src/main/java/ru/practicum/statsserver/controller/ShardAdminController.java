@@ -0,0 +1,21 @@
+package ru.practicum.statsserver.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.practicum.statscommon.StatsCommonUtils;
+import ru.practicum.statsserver.shard.RebalanceResult;
+import ru.practicum.statsserver.shard.ShardRebalancer;
+
+@RestController
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "sharded")
+public class ShardAdminController {
+    private final ShardRebalancer shardRebalancer;
+
+    @PostMapping(StatsCommonUtils.SHARDS_REBALANCE_ENDPOINT)
+    public RebalanceResult rebalance() {
+        return shardRebalancer.rebalance();
+    }
+}
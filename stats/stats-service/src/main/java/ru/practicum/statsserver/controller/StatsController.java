@@ -1,22 +1,48 @@
 package ru.practicum.statsserver.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.practicum.statscommon.StatsCommonUtils;
 import ru.practicum.statscommon.model.EndpointHit;
+import ru.practicum.statscommon.model.StatsQuery;
+import ru.practicum.statscommon.model.UniqueMode;
 import ru.practicum.statscommon.model.ViewStats;
+import ru.practicum.statscommon.model.ViewStatsSeries;
+import ru.practicum.statsserver.ingest.BulkHitLoader;
+import ru.practicum.statsserver.ingest.BulkLoadFormat;
+import ru.practicum.statsserver.ingest.BulkLoadResult;
 import ru.practicum.statsserver.service.StatsService;
+import ru.practicum.statsserver.snapshot.SnapshotResult;
+import ru.practicum.statsserver.snapshot.SnapshotService;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
 @RequiredArgsConstructor
 public class StatsController {
+    private static final int MAX_TOP_LIMIT = 1000;
+    private static final long MAX_TIMESERIES_POINTS = 10000;
+
     private final StatsService statsService;
+    private final BulkHitLoader bulkHitLoader;
+    private final SnapshotService snapshotService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping(StatsCommonUtils.HIT_ENDPOINT)
     @ResponseStatus(HttpStatus.CREATED)
@@ -24,14 +50,143 @@ public class StatsController {
         statsService.addHit(endpointHit);
     }
 
+    @PostMapping(StatsCommonUtils.HITS_ENDPOINT)
+    @ResponseStatus(HttpStatus.CREATED)
+    public void addHits(@RequestBody List<@Valid EndpointHit> endpointHits) {
+        statsService.addHits(endpointHits);
+    }
+
+    @PostMapping(value = StatsCommonUtils.HITS_LOAD_ENDPOINT,
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, BulkLoadFormat.CSV_MEDIA_TYPE})
+    public BulkLoadResult loadHits(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                   @RequestParam(defaultValue = "false") boolean atomic,
+                                   InputStream body) throws IOException {
+        return bulkHitLoader.load(body, BulkLoadFormat.fromMediaType(contentType), atomic);
+    }
+
+    @GetMapping(value = StatsCommonUtils.HITS_EXPORT_ENDPOINT, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportHits(@RequestParam(required = false) List<String> uris) {
+        StreamingResponseBody body = out -> statsService.exportHits(uris, hit -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(hit));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @DeleteMapping(StatsCommonUtils.HITS_ADMIN_ENDPOINT)
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void clearHits() {
+        statsService.clearHits();
+    }
+
+    @GetMapping(value = StatsCommonUtils.SNAPSHOT_ENDPOINT, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportSnapshot() {
+        StreamingResponseBody body = out -> snapshotService.export(Channels.newChannel(out));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
+    }
+
+    @PostMapping(value = StatsCommonUtils.SNAPSHOT_ENDPOINT, consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public SnapshotResult restoreSnapshot(InputStream body) throws IOException {
+        return snapshotService.restore(Channels.newChannel(body));
+    }
+
     @GetMapping(StatsCommonUtils.STATS_ENDPOINT)
     public List<ViewStats> getStats(@RequestParam @DateTimeFormat(pattern = StatsCommonUtils.DT_FORMAT) LocalDateTime start,
                                     @RequestParam @DateTimeFormat(pattern = StatsCommonUtils.DT_FORMAT) LocalDateTime end,
                                     @RequestParam(required = false) List<String> uris,
-                                    @RequestParam(required = false, defaultValue = "false") Boolean unique) {
+                                    @RequestParam(required = false, defaultValue = "false") String unique) {
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("Invalid time interval.");
+        }
+        return statsService.getStats(start, end, uris, UniqueMode.from(unique));
+    }
+
+    @PostMapping(StatsCommonUtils.STATS_QUERY_ENDPOINT)
+    public List<ViewStats> queryStats(@Valid @RequestBody StatsQuery query) {
+        LocalDateTime start = LocalDateTime.parse(query.getStart(), StatsCommonUtils.DT_FORMATTER);
+        LocalDateTime end = LocalDateTime.parse(query.getEnd(), StatsCommonUtils.DT_FORMATTER);
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("Invalid time interval.");
+        }
+        List<String> uris = new ArrayList<>();
+        if (query.getUris() != null) {
+            uris.addAll(query.getUris());
+        }
+        if (query.getIds() != null && !query.getIds().isEmpty()) {
+            if (query.getUriPrefix() == null) {
+                throw new IllegalArgumentException("Ids require a uri prefix.");
+            }
+            query.getIds().forEach(id -> uris.add(query.getUriPrefix() + id));
+        }
+        if (uris.size() > StatsCommonUtils.MAX_QUERY_URIS) {
+            throw new IllegalArgumentException("Too many uris, at most " + StatsCommonUtils.MAX_QUERY_URIS
+                    + " are allowed.");
+        }
+        UniqueMode unique = UniqueMode.from(query.getUnique() == null ? "false" : query.getUnique());
+        return statsService.getStats(start, end, uris.isEmpty() ? null : uris, unique);
+    }
+
+    @GetMapping(value = StatsCommonUtils.STATS_ENDPOINT, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamStats(@RequestParam @DateTimeFormat(pattern = StatsCommonUtils.DT_FORMAT) LocalDateTime start,
+                                                             @RequestParam @DateTimeFormat(pattern = StatsCommonUtils.DT_FORMAT) LocalDateTime end,
+                                                             @RequestParam(required = false) List<String> uris,
+                                                             @RequestParam(required = false, defaultValue = "false") String unique) {
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("Invalid time interval.");
+        }
+        UniqueMode uniqueMode = UniqueMode.from(unique);
+        StreamingResponseBody body = out -> statsService.streamStats(start, end, uris, uniqueMode, viewStats -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(viewStats));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @GetMapping(StatsCommonUtils.STATS_TOP_ENDPOINT)
+    public List<ViewStats> getTop(@RequestParam @DateTimeFormat(pattern = StatsCommonUtils.DT_FORMAT) LocalDateTime start,
+                                  @RequestParam @DateTimeFormat(pattern = StatsCommonUtils.DT_FORMAT) LocalDateTime end,
+                                  @RequestParam(required = false, defaultValue = "10") int limit,
+                                  @RequestParam(required = false, defaultValue = "false") String unique,
+                                  @RequestParam(required = false) String prefix) {
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("Invalid time interval.");
+        }
+        if (limit < 1 || limit > MAX_TOP_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_TOP_LIMIT + ".");
+        }
+        return statsService.getTop(start, end, limit, UniqueMode.from(unique), prefix);
+    }
+
+    @GetMapping(StatsCommonUtils.STATS_TIMESERIES_ENDPOINT)
+    public List<ViewStatsSeries> getTimeSeries(@RequestParam @DateTimeFormat(pattern = StatsCommonUtils.DT_FORMAT) LocalDateTime start,
+                                               @RequestParam @DateTimeFormat(pattern = StatsCommonUtils.DT_FORMAT) LocalDateTime end,
+                                               @RequestParam String step,
+                                               @RequestParam(required = false) List<String> uris,
+                                               @RequestParam(required = false, defaultValue = "false") String unique) {
         if (start.isAfter(end)) {
             throw new IllegalArgumentException("Invalid time interval.");
         }
-        return statsService.getStats(start, end, uris, unique);
+        Duration stepDuration = DurationStyle.detectAndParse(step);
+        if (stepDuration.getSeconds() < 1 || stepDuration.getNano() != 0) {
+            throw new IllegalArgumentException("Step must be a positive whole number of seconds.");
+        }
+        if (Duration.between(start, end).getSeconds() / stepDuration.getSeconds() >= MAX_TIMESERIES_POINTS) {
+            throw new IllegalArgumentException("Too many points, at most " + MAX_TIMESERIES_POINTS + " are allowed.");
+        }
+        return statsService.getTimeSeries(start, end, stepDuration, uris, UniqueMode.from(unique));
     }
 }
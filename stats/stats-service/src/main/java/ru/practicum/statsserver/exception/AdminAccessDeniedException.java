@@ -0,0 +1,7 @@
+package ru.practicum.statsserver.exception;
+
+public class AdminAccessDeniedException extends RuntimeException {
+    public AdminAccessDeniedException(String message) {
+        super(message);
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.web.bind.MissingServletRequestParameterException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.annotation.HandlerMethodValidationException;
 import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 import java.time.format.DateTimeParseException;
@@ -26,6 +27,7 @@ public class ErrorHandler {
     @ExceptionHandler({
             DateTimeParseException.class,
             MethodArgumentNotValidException.class,
+            HandlerMethodValidationException.class,
             DataIntegrityViolationException.class,
             MethodArgumentTypeMismatchException.class,
             IllegalArgumentException.class,
@@ -38,6 +40,19 @@ public class ErrorHandler {
         return new ErrorResponse(exception.getMessage());
     }
 
+    @ExceptionHandler(IngestRejectedException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ErrorResponse handleIngestRejected(final IngestRejectedException exception) {
+        log.warn(exception.toString());
+        return new ErrorResponse(exception.getMessage());
+    }
+
+    @ExceptionHandler(AdminAccessDeniedException.class)
+    @ResponseStatus(HttpStatus.FORBIDDEN)
+    public ErrorResponse handleAdminAccessDenied(final AdminAccessDeniedException exception) {
+        log.warn(exception.toString());
+        return new ErrorResponse(exception.getMessage());
+    }
 
     @ExceptionHandler
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
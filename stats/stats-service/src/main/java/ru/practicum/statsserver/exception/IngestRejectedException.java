@@ -0,0 +1,7 @@
+package ru.practicum.statsserver.exception;
+
+public class IngestRejectedException extends RuntimeException {
+    public IngestRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,193 @@
+package ru.practicum.statsserver.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsserver.exception.IngestRejectedException;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.storage.StatsStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+@Component
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "async")
+@Slf4j
+public class AsyncHitIngestor implements HitIngestor, SmartLifecycle {
+    private static final long POLL_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final StatsStorage statsStorage;
+    private final BlockingQueue<Stats> queue;
+    // One permit per free queue slot. Producers reserve slots here before adding, so a whole batch is either
+    // admitted or rejected; the flusher returns the permits of the hits it takes off the queue.
+    private final Semaphore freeSlots;
+    private final OverflowPolicy overflowPolicy;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long shutdownTimeoutMs;
+    private final Counter droppedCounter;
+    private final Counter rejectedCounter;
+    private final Counter flushedCounter;
+    private final Counter failedFlushCounter;
+    private final Timer flushTimer;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public AsyncHitIngestor(StatsStorage statsStorage, MeterRegistry meterRegistry,
+                            @Value("${stats.ingest.queue-capacity:100000}") int queueCapacity,
+                            @Value("${stats.ingest.batch-size:5000}") int batchSize,
+                            @Value("${stats.ingest.flush-interval-ms:1000}") long flushIntervalMs,
+                            @Value("${stats.ingest.overflow-policy:block}") OverflowPolicy overflowPolicy,
+                            @Value("${stats.ingest.shutdown-timeout-ms:30000}") long shutdownTimeoutMs) {
+        this.statsStorage = statsStorage;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.freeSlots = new Semaphore(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.overflowPolicy = overflowPolicy;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+
+        Gauge.builder("stats.ingest.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+        this.droppedCounter = meterRegistry.counter("stats.ingest.hits.dropped");
+        this.rejectedCounter = meterRegistry.counter("stats.ingest.hits.rejected");
+        this.flushedCounter = meterRegistry.counter("stats.ingest.hits.flushed");
+        this.failedFlushCounter = meterRegistry.counter("stats.ingest.flush.failed");
+        this.flushTimer = meterRegistry.timer("stats.ingest.flush.latency");
+    }
+
+    @Override
+    public void ingest(List<Stats> hits) {
+        if (!running) {
+            rejectedCounter.increment(hits.size());
+            throw new IngestRejectedException("Hit ingestion is stopped.");
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK -> putAll(hits);
+            case DROP -> hits.forEach(hit -> {
+                if (freeSlots.tryAcquire()) {
+                    queue.add(hit);
+                } else {
+                    droppedCounter.increment();
+                }
+            });
+            case REJECT -> {
+                if (!freeSlots.tryAcquire(hits.size())) {
+                    rejectedCounter.increment(hits.size());
+                    throw new IngestRejectedException("Hit queue is full.");
+                }
+                queue.addAll(hits);
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        flusher = new Thread(this::runFlusher, "stats-ingest-flusher");
+        flusher.start();
+        log.info("Asynchronous hit ingestion started: capacity = {}, batchSize = {}, flushIntervalMs = {}, policy = {}",
+                queue.remainingCapacity(), batchSize, flushIntervalMs, overflowPolicy);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            flusher.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.error("Hit ingestion stopped with {} hits not flushed", queue.size());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void putAll(List<Stats> hits) {
+        try {
+            for (Stats hit : hits) {
+                freeSlots.acquire();
+                queue.add(hit);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IngestRejectedException("Interrupted while waiting for space in the hit queue.");
+        }
+    }
+
+    private void runFlusher() {
+        List<Stats> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    fillBatch(batch);
+                }
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                failedFlushCounter.increment();
+                log.error("Failed to flush {} hits, retrying in {} ms", batch.size(), flushIntervalMs, e);
+                if (!running) {
+                    log.error("Hit ingestion is stopping, {} hits are lost", batch.size() + queue.size());
+                    return;
+                }
+                sleepQuietly();
+            }
+        }
+    }
+
+    private void fillBatch(List<Stats> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (true) {
+            freeSlots.release(queue.drainTo(batch, batchSize - batch.size()));
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                return;
+            }
+            Stats next = queue.poll(Math.min(remaining, POLL_SLICE_NANOS), TimeUnit.NANOSECONDS);
+            if (next != null) {
+                freeSlots.release();
+                batch.add(next);
+            }
+        }
+    }
+
+    private void flush(List<Stats> batch) {
+        flushTimer.record(() -> statsStorage.write(batch));
+        flushedCounter.increment(batch.size());
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(flushIntervalMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package ru.practicum.statsserver.ingest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.statscommon.StatsCommonUtils;
+import ru.practicum.statscommon.model.EndpointHit;
+import ru.practicum.statsserver.mapper.StatsMapper;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.storage.StatsStorage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads hits from a JSON Lines stream of {@link EndpointHit} objects or a CSV stream with the
+ * {@code app,uri,ip,timestamp} columns and an optional header. Lines are read on the calling thread and
+ * parsed in parallel in chunks of {@code stats.load.chunk-size}; the chunks are written in input order
+ * straight to {@link StatsStorage#write}, bypassing the ingest queue. Invalid lines are counted and skipped.
+ * <p>
+ * An atomic load collects every hit and writes them with one {@link StatsStorage#write} call, so a failed load
+ * stores nothing and can be retried; the hits are held in memory until then.
+ */
+@Component
+@Slf4j
+public class BulkHitLoader {
+    private static final String CSV_HEADER = "app,uri,ip,timestamp";
+    private static final int LOGGED_REJECTIONS = 10;
+
+    private final StatsStorage statsStorage;
+    private final StatsMapper statsMapper;
+    private final ObjectReader hitReader;
+    private final int chunkSize;
+    private final int parallelism;
+    private final long progressIntervalMs;
+
+    public BulkHitLoader(StatsStorage statsStorage, StatsMapper statsMapper, ObjectMapper objectMapper,
+                         @Value("${stats.load.chunk-size:10000}") int chunkSize,
+                         @Value("${stats.load.parallelism:0}") int parallelism,
+                         @Value("${stats.load.progress-interval-ms:5000}") long progressIntervalMs) {
+        this.statsStorage = statsStorage;
+        this.statsMapper = statsMapper;
+        this.hitReader = objectMapper.readerFor(EndpointHit.class);
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.progressIntervalMs = progressIntervalMs;
+    }
+
+    public BulkLoadResult load(InputStream input, BulkLoadFormat format) throws IOException {
+        return load(input, format, false);
+    }
+
+    public BulkLoadResult load(InputStream input, BulkLoadFormat format, boolean atomic) throws IOException {
+        Progress progress = new Progress(atomic);
+        Deque<Future<ParsedChunk>> pending = new ArrayDeque<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 1 << 16);
+             ExecutorService parsers = Executors.newFixedThreadPool(parallelism)) {
+            try {
+                List<String> lines = new ArrayList<>(chunkSize);
+                long firstLine = 1;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    progress.lines++;
+                    if (progress.lines == 1 && format == BulkLoadFormat.CSV
+                            && line.strip().equalsIgnoreCase(CSV_HEADER)) {
+                        firstLine++;
+                        continue;
+                    }
+                    lines.add(line);
+                    if (lines.size() == chunkSize) {
+                        pending.add(submit(parsers, lines, firstLine, format, progress));
+                        firstLine += lines.size();
+                        lines = new ArrayList<>(chunkSize);
+                        while (pending.size() > 2 * parallelism) {
+                            write(pending.poll(), progress);
+                        }
+                    }
+                }
+                if (!lines.isEmpty()) {
+                    pending.add(submit(parsers, lines, firstLine, format, progress));
+                }
+                while (!pending.isEmpty()) {
+                    write(pending.poll(), progress);
+                }
+                if (atomic && !progress.held.isEmpty()) {
+                    statsStorage.write(progress.held);
+                }
+            } finally {
+                pending.forEach(future -> future.cancel(true));
+            }
+        }
+
+        BulkLoadResult result = progress.toResult();
+        log.info("Bulk load finished: {} lines, {} hits loaded, {} rejected in {} ms ({} hits/s)",
+                result.getLines(), result.getLoaded(), result.getRejected(), result.getDurationMs(),
+                result.getHitsPerSecond());
+        return result;
+    }
+
+    private Future<ParsedChunk> submit(ExecutorService parsers, List<String> lines, long firstLine,
+                                       BulkLoadFormat format, Progress progress) {
+        return parsers.submit(() -> parse(lines, firstLine, format, progress));
+    }
+
+    private ParsedChunk parse(List<String> lines, long firstLine, BulkLoadFormat format, Progress progress) {
+        List<Stats> hits = new ArrayList<>(lines.size());
+        int rejected = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                EndpointHit hit = format == BulkLoadFormat.CSV ? parseCsv(line) : hitReader.readValue(line);
+                hits.add(toStats(hit));
+            } catch (JsonProcessingException | DateTimeParseException | IllegalArgumentException e) {
+                rejected++;
+                if (progress.loggedRejections.getAndIncrement() < LOGGED_REJECTIONS) {
+                    log.warn("Skipping line {}: {}", firstLine + i, e.getMessage());
+                }
+            }
+        }
+        return new ParsedChunk(hits, rejected);
+    }
+
+    private void write(Future<ParsedChunk> future, Progress progress) {
+        ParsedChunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Bulk load was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to parse hits", e.getCause());
+        }
+
+        if (progress.held != null) {
+            progress.held.addAll(chunk.hits());
+        } else if (!chunk.hits().isEmpty()) {
+            statsStorage.write(chunk.hits());
+        }
+        progress.loaded += chunk.hits().size();
+        progress.rejected += chunk.rejected();
+
+        long now = System.currentTimeMillis();
+        if (now - progress.reportedAt >= progressIntervalMs) {
+            progress.reportedAt = now;
+            log.info("Bulk load: {} hits loaded, {} rejected, {} hits/s", progress.loaded, progress.rejected,
+                    progress.rate(now));
+        }
+    }
+
+    private Stats toStats(EndpointHit hit) {
+        if (isBlank(hit.getApp()) || isBlank(hit.getUri()) || isBlank(hit.getTimestamp())) {
+            throw new IllegalArgumentException("Hit must have app, uri, ip and timestamp");
+        }
+        return statsMapper.toStats(hit, LocalDateTime.parse(hit.getTimestamp(), StatsCommonUtils.DT_FORMATTER));
+    }
+
+    /**
+     * Splits one CSV record; fields may be quoted, with {@code ""} standing for a quote inside a quoted field.
+     */
+    private static EndpointHit parseCsv(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        if (fields.size() != 4) {
+            throw new IllegalArgumentException("Expected 4 fields but found " + fields.size());
+        }
+        return new EndpointHit(fields.get(0), fields.get(1), fields.get(2).strip(), fields.get(3).strip());
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private record ParsedChunk(List<Stats> hits, int rejected) {
+    }
+
+    private static final class Progress {
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicLong loggedRejections = new AtomicLong();
+        private final List<Stats> held;
+        private long reportedAt = startedAt;
+        private long lines;
+        private long loaded;
+        private long rejected;
+
+        private Progress(boolean atomic) {
+            this.held = atomic ? new ArrayList<>() : null;
+        }
+
+        long rate(long now) {
+            return loaded * 1000 / Math.max(1, now - startedAt);
+        }
+
+        BulkLoadResult toResult() {
+            long now = System.currentTimeMillis();
+            return new BulkLoadResult(lines, loaded, rejected, now - startedAt, rate(now));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ru.practicum.statsserver.ingest;
+
+import org.springframework.http.MediaType;
+
+public enum BulkLoadFormat {
+    JSONL,
+    CSV;
+
+    public static final String CSV_MEDIA_TYPE = "text/csv";
+
+    public static BulkLoadFormat fromMediaType(MediaType mediaType) {
+        if (MediaType.APPLICATION_NDJSON.isCompatibleWith(mediaType)) {
+            return JSONL;
+        }
+        if (MediaType.parseMediaType(CSV_MEDIA_TYPE).isCompatibleWith(mediaType)) {
+            return CSV;
+        }
+        throw new IllegalArgumentException("Unsupported bulk load content type: " + mediaType);
+    }
+
+    public static BulkLoadFormat fromFileName(String fileName) {
+        String name = fileName.toLowerCase();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - ".gz".length());
+        }
+        return name.endsWith(".csv") ? CSV : JSONL;
+    }
+}
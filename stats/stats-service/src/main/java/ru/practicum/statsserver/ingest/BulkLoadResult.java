@@ -0,0 +1,18 @@
+package ru.practicum.statsserver.ingest;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class BulkLoadResult {
+    private final long lines;
+
+    private final long loaded;
+
+    private final long rejected;
+
+    private final long durationMs;
+
+    private final long hitsPerSecond;
+}
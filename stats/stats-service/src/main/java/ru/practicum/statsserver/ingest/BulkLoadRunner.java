@@ -0,0 +1,69 @@
+package ru.practicum.statsserver.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Command-line entry point of {@link BulkHitLoader}:
+ * {@code java -jar stats-service.jar --spring.main.web-application-type=none --stats.load.file=hits.jsonl}.
+ * The format follows the file extension ({@code .csv} or JSON Lines, optionally gzipped) unless
+ * {@code stats.load.format} is set. With {@code stats.load.exit} the application stops once the file is loaded.
+ */
+@Component
+@ConditionalOnProperty(name = "stats.load.file")
+@Slf4j
+public class BulkLoadRunner implements ApplicationRunner {
+    private final BulkHitLoader bulkHitLoader;
+    private final ConfigurableApplicationContext context;
+    private final Path file;
+    private final BulkLoadFormat format;
+    private final boolean exit;
+
+    public BulkLoadRunner(BulkHitLoader bulkHitLoader, ConfigurableApplicationContext context,
+                          @Value("${stats.load.file}") Path file,
+                          @Value("${stats.load.format:#{null}}") BulkLoadFormat format,
+                          @Value("${stats.load.exit:true}") boolean exit) {
+        this.bulkHitLoader = bulkHitLoader;
+        this.context = context;
+        this.file = file;
+        this.format = format != null ? format : BulkLoadFormat.fromFileName(file.getFileName().toString());
+        this.exit = exit;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        log.info("Loading {} hits from {}", format, file);
+        int status = 0;
+        try (InputStream input = open()) {
+            bulkHitLoader.load(input, format);
+        } catch (IOException | RuntimeException e) {
+            if (!exit) {
+                throw e;
+            }
+            log.error("Failed to load hits from {}", file, e);
+            status = 1;
+        }
+        if (exit) {
+            int code = status;
+            System.exit(SpringApplication.exit(context, () -> code));
+        }
+    }
+
+    private InputStream open() throws IOException {
+        InputStream input = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+        return file.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(input, 1 << 16) : input;
+    }
+}
@@ -0,0 +1,177 @@
+package ru.practicum.statsserver.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.statscommon.HitDatagram;
+import ru.practicum.statsserver.model.Stats;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives {@link HitDatagram} packets on {@code stats.datagram.port}. The receiver thread only decodes packets
+ * and queues them, so a slow write never stalls the socket; a writer thread passes the queued hits to the
+ * {@link HitIngestor} in batches of about {@code stats.datagram.batch-size}. Delivery is lossy: packets that
+ * find the queue full or whose batch fails to be written are dropped and counted.
+ */
+@Component
+@ConditionalOnProperty(name = "stats.datagram.enabled", havingValue = "true")
+@Slf4j
+public class DatagramHitListener implements SmartLifecycle {
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private final HitIngestor hitIngestor;
+    private final HitDatagramDecoder decoder = new HitDatagramDecoder();
+    private final InetSocketAddress address;
+    private final int receiveBufferSize;
+    private final int batchSize;
+    private final long shutdownTimeoutMs;
+    private final BlockingQueue<List<Stats>> queue;
+    private final Counter receivedPackets;
+    private final Counter receivedHits;
+    private final Counter droppedPackets;
+    private final Counter malformedPackets;
+    private final Counter lostPackets;
+
+    private volatile boolean running;
+    private DatagramChannel channel;
+    private Thread receiver;
+    private Thread writer;
+
+    public DatagramHitListener(HitIngestor hitIngestor, MeterRegistry meterRegistry,
+                               @Value("${stats.datagram.host:0.0.0.0}") String host,
+                               @Value("${stats.datagram.port:9190}") int port,
+                               @Value("${stats.datagram.receive-buffer:4MB}") DataSize receiveBufferSize,
+                               @Value("${stats.datagram.queue-capacity:10000}") int queueCapacity,
+                               @Value("${stats.datagram.batch-size:5000}") int batchSize,
+                               @Value("${stats.ingest.shutdown-timeout-ms:30000}") long shutdownTimeoutMs) {
+        this.hitIngestor = hitIngestor;
+        this.address = new InetSocketAddress(host, port);
+        this.receiveBufferSize = (int) receiveBufferSize.toBytes();
+        this.batchSize = batchSize;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("stats.datagram.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+        this.receivedPackets = meterRegistry.counter("stats.datagram.packets.received");
+        this.receivedHits = meterRegistry.counter("stats.datagram.hits.received");
+        this.droppedPackets = meterRegistry.counter("stats.datagram.packets.dropped");
+        this.malformedPackets = meterRegistry.counter("stats.datagram.packets.malformed");
+        this.lostPackets = meterRegistry.counter("stats.datagram.packets.lost");
+    }
+
+    @Override
+    public void start() {
+        try {
+            channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+            channel.bind(address);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to listen for hit datagrams on " + address, e);
+        }
+        running = true;
+        receiver = new Thread(this::runReceiver, "stats-datagram-receiver");
+        writer = new Thread(this::runWriter, "stats-datagram-writer");
+        receiver.start();
+        writer.start();
+        log.info("Listening for hit datagrams on {}", address);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            channel.close();
+            receiver.join(shutdownTimeoutMs);
+            writer.join(shutdownTimeoutMs);
+        } catch (IOException e) {
+            log.warn("Failed to close the datagram channel", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.error("Datagram ingestion stopped with {} packets not written", queue.size());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 2048;
+    }
+
+    private void runReceiver() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HitDatagram.MAX_SIZE);
+        while (running) {
+            buffer.clear();
+            try {
+                channel.receive(buffer);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("Failed to receive a hit datagram", e);
+                continue;
+            }
+            buffer.flip();
+            receivedPackets.increment();
+
+            List<Stats> hits = new ArrayList<>();
+            try {
+                lostPackets.increment(decoder.decode(buffer, hits));
+            } catch (IllegalArgumentException e) {
+                malformedPackets.increment();
+                log.debug("Skipping a malformed hit datagram: {}", e.getMessage());
+                continue;
+            }
+            receivedHits.increment(hits.size());
+            if (!hits.isEmpty() && !queue.offer(hits)) {
+                droppedPackets.increment();
+            }
+        }
+    }
+
+    private void runWriter() {
+        while (running || !queue.isEmpty()) {
+            List<Stats> batch = new ArrayList<>(batchSize);
+            int packets = 0;
+            try {
+                List<Stats> hits = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                while (hits != null) {
+                    batch.addAll(hits);
+                    packets++;
+                    hits = batch.size() < batchSize ? queue.poll() : null;
+                }
+                if (!batch.isEmpty()) {
+                    hitIngestor.ingest(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                droppedPackets.increment(packets);
+                log.warn("Failed to write {} hits received as datagrams, they are dropped", batch.size(), e);
+            }
+        }
+    }
+}
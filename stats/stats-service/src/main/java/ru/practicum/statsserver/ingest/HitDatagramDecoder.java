@@ -0,0 +1,143 @@
+package ru.practicum.statsserver.ingest;
+
+import ru.practicum.statscommon.HitDatagram;
+import ru.practicum.statscommon.StatsCommonUtils;
+import ru.practicum.statsserver.mapper.IpAddressMapper;
+import ru.practicum.statsserver.model.Stats;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes {@link HitDatagram} packets. A packet with any invalid record is rejected as a whole. For binary
+ * packets the decoder remembers the last sequence number of up to {@value #MAX_SENDERS} senders and reports the
+ * gaps as lost packets; a packet that arrives after a later one of its sender has already been counted as lost.
+ * Not thread-safe.
+ */
+class HitDatagramDecoder {
+    private static final int MAX_SENDERS = 1024;
+
+    private final Map<Integer, Integer> sequences = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+            return size() > MAX_SENDERS;
+        }
+    };
+
+    /**
+     * Appends the hits of {@code packet} to {@code hits} and returns the number of packets of the same sender
+     * lost since its previous one. Throws {@link IllegalArgumentException} for a malformed packet.
+     */
+    long decode(ByteBuffer packet, List<Stats> hits) {
+        if (!packet.hasRemaining()) {
+            throw new IllegalArgumentException("Empty datagram");
+        }
+        List<Stats> decoded = new ArrayList<>();
+        long lost;
+        try {
+            if (packet.get(packet.position()) == HitDatagram.MAGIC) {
+                lost = decodeBinary(packet, decoded);
+            } else {
+                lost = decodeLines(packet, decoded);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated datagram", e);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid timestamp: " + e.getMessage(), e);
+        }
+        hits.addAll(decoded);
+        return lost;
+    }
+
+    private long decodeBinary(ByteBuffer packet, List<Stats> hits) {
+        packet.get();
+        if (packet.get() != HitDatagram.VERSION) {
+            throw new IllegalArgumentException("Unsupported datagram version");
+        }
+        int sender = packet.getInt();
+        int sequence = packet.getInt();
+        long base = packet.getLong();
+        String app = readName(packet);
+        while (packet.hasRemaining()) {
+            String uri = readName(packet);
+            int ipLength = packet.get() & 0xff;
+            if (ipLength != 4 && ipLength != 16) {
+                throw new IllegalArgumentException("Invalid address length " + ipLength);
+            }
+            byte[] ip = new byte[ipLength];
+            packet.get(ip);
+            long timestamp = base + HitDatagram.unzigzag(readVarLong(packet));
+            hits.add(toStats(app, uri, ip, LocalDateTime.ofEpochSecond(timestamp, 0, ZoneOffset.UTC)));
+        }
+        return lost(sender, sequence);
+    }
+
+    private long decodeLines(ByteBuffer packet, List<Stats> hits) {
+        String text = StandardCharsets.UTF_8.decode(packet).toString();
+        for (String line : text.split(String.valueOf(HitDatagram.LINE_SEPARATOR))) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] fields = line.split(String.valueOf(HitDatagram.FIELD_SEPARATOR), -1);
+            if (fields.length != 4) {
+                throw new IllegalArgumentException("Expected 4 fields but found " + fields.length);
+            }
+            hits.add(toStats(fields[0], fields[1], IpAddressMapper.toBytes(fields[2].strip()),
+                    LocalDateTime.parse(fields[3].strip(), StatsCommonUtils.DT_FORMATTER)));
+        }
+        return 0;
+    }
+
+    private long lost(int sender, int sequence) {
+        Integer last = sequences.get(sender);
+        if (last != null && sequence - last <= 0) {
+            return 0;
+        }
+        sequences.put(sender, sequence);
+        return last == null ? 0 : sequence - last - 1L;
+    }
+
+    private static Stats toStats(String app, String uri, byte[] ip, LocalDateTime timestamp) {
+        if (app.isBlank() || uri.isBlank() || app.length() > HitDatagram.MAX_NAME_LENGTH
+                || uri.length() > HitDatagram.MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("App and URI must be 1 to " + HitDatagram.MAX_NAME_LENGTH
+                    + " characters long");
+        }
+        return Stats.builder()
+                .app(app)
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+
+    private static String readName(ByteBuffer packet) {
+        long length = readVarLong(packet);
+        if (length < 0 || length > packet.remaining()) {
+            throw new IllegalArgumentException("Truncated datagram");
+        }
+        byte[] bytes = new byte[(int) length];
+        packet.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readVarLong(ByteBuffer packet) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = packet.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,9 @@
+package ru.practicum.statsserver.ingest;
+
+import ru.practicum.statsserver.model.Stats;
+
+import java.util.List;
+
+public interface HitIngestor {
+    void ingest(List<Stats> hits);
+}
@@ -0,0 +1,70 @@
+package ru.practicum.statsserver.ingest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.storage.ConditionalOnJdbcStorage;
+import ru.practicum.statsserver.storage.DictionaryRepository;
+import ru.practicum.statsserver.storage.IpBitmapRepository;
+import ru.practicum.statsserver.storage.RollupRepository;
+import ru.practicum.statsserver.storage.SketchRepository;
+import ru.practicum.statsserver.storage.StatsRepository;
+import ru.practicum.statsserver.window.HotWindow;
+
+import java.util.List;
+
+@Component
+@ConditionalOnJdbcStorage
+public class HitWriter {
+    private final StatsRepository statsRepository;
+    private final RollupRepository rollupRepository;
+    private final SketchRepository sketchRepository;
+    private final IpBitmapRepository ipBitmapRepository;
+    private final HotWindow hotWindow;
+    private final boolean rollupEnabled;
+    private final boolean sketchEnabled;
+    private final boolean bitmapEnabled;
+
+    public HitWriter(StatsRepository statsRepository, RollupRepository rollupRepository,
+                     SketchRepository sketchRepository, IpBitmapRepository ipBitmapRepository, HotWindow hotWindow,
+                     @Value("${stats.rollup.enabled:true}") boolean rollupEnabled,
+                     @Value("${stats.sketch.enabled:true}") boolean sketchEnabled,
+                     @Value("${stats.bitmap.enabled:true}") boolean bitmapEnabled) {
+        this.statsRepository = statsRepository;
+        this.rollupRepository = rollupRepository;
+        this.sketchRepository = sketchRepository;
+        this.ipBitmapRepository = ipBitmapRepository;
+        this.hotWindow = hotWindow;
+        this.rollupEnabled = rollupEnabled;
+        this.sketchEnabled = sketchEnabled;
+        this.bitmapEnabled = bitmapEnabled;
+    }
+
+    /**
+     * Writes hits whose dictionary ids have already been set by {@link DictionaryRepository#resolve}.
+     */
+    @Transactional
+    public void write(List<Stats> hits) {
+        statsRepository.saveBatch(hits);
+        if (rollupEnabled) {
+            rollupRepository.increment(hits);
+        }
+        if (sketchEnabled) {
+            sketchRepository.add(hits);
+        }
+        if (bitmapEnabled) {
+            ipBitmapRepository.add(hits);
+        }
+        if (hotWindow.isEnabled()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    hotWindow.record(hits);
+                }
+            });
+        }
+    }
+}
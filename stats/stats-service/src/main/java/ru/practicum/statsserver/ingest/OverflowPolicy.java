@@ -0,0 +1,7 @@
+package ru.practicum.statsserver.ingest;
+
+public enum OverflowPolicy {
+    BLOCK,
+    DROP,
+    REJECT
+}
@@ -0,0 +1,21 @@
+package ru.practicum.statsserver.ingest;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.storage.StatsStorage;
+
+import java.util.List;
+
+@Component
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "sync", matchIfMissing = true)
+@RequiredArgsConstructor
+public class SyncHitIngestor implements HitIngestor {
+    private final StatsStorage statsStorage;
+
+    @Override
+    public void ingest(List<Stats> hits) {
+        statsStorage.write(hits);
+    }
+}
@@ -0,0 +1,48 @@
+package ru.practicum.statsserver.mapper;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public final class IpAddressMapper {
+    private static final Pattern IPV4 = Pattern.compile("^(\\d{1,3})\\.(\\d{1,3})\\.(\\d{1,3})\\.(\\d{1,3})$");
+    private static final Pattern IPV6 = Pattern.compile("^[0-9a-fA-F:.]*:[0-9a-fA-F:.]*$");
+
+    private IpAddressMapper() {
+    }
+
+    public static byte[] toBytes(String ip) {
+        if (ip == null) {
+            throw new IllegalArgumentException("IP address is missing.");
+        }
+        Matcher ipv4 = IPV4.matcher(ip);
+        if (ipv4.matches()) {
+            byte[] address = new byte[4];
+            for (int i = 0; i < address.length; i++) {
+                int octet = Integer.parseInt(ipv4.group(i + 1));
+                if (octet > 255) {
+                    throw new IllegalArgumentException("Invalid IP address: " + ip);
+                }
+                address[i] = (byte) octet;
+            }
+            return address;
+        }
+        if (!IPV6.matcher(ip).matches()) {
+            throw new IllegalArgumentException("Invalid IP address: " + ip);
+        }
+        try {
+            return InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Invalid IP address: " + ip);
+        }
+    }
+
+    public static String toString(byte[] ip) {
+        try {
+            return InetAddress.getByAddress(ip).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Invalid IP address length: " + ip.length);
+        }
+    }
+}
@@ -2,13 +2,22 @@ package ru.practicum.statsserver.mapper;
 
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
+import ru.practicum.statscommon.StatsCommonUtils;
 import ru.practicum.statscommon.model.EndpointHit;
 import ru.practicum.statsserver.model.Stats;
 
 import java.time.LocalDateTime;
 
-@Mapper(componentModel = "spring")
+@Mapper(componentModel = "spring", imports = {IpAddressMapper.class, StatsCommonUtils.class})
 public interface StatsMapper {
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "appId", ignore = true)
+    @Mapping(target = "uriId", ignore = true)
+    @Mapping(target = "ip", expression = "java(IpAddressMapper.toBytes(endpointHit.getIp()))")
     @Mapping(target = "timestamp", expression = "java(timestamp)")
     Stats toStats(EndpointHit endpointHit, LocalDateTime timestamp);
+
+    @Mapping(target = "ip", expression = "java(IpAddressMapper.toString(stats.getIp()))")
+    @Mapping(target = "timestamp", expression = "java(stats.getTimestamp().format(StatsCommonUtils.DT_FORMATTER))")
+    EndpointHit toEndpointHit(Stats stats);
 }
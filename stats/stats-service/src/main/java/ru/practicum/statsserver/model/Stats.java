@@ -20,15 +20,21 @@ public class Stats {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     Long id;
 
-    @Column(name = "app_name", nullable = false)
-    String app;
+    @Column(name = "app_id", nullable = false)
+    Integer appId;
 
-    @Column(nullable = false)
-    String uri;
+    @Column(name = "uri_id", nullable = false)
+    Integer uriId;
 
-    @Column(name = "user_ip", nullable = false, length = 15)
-    String ip;
+    @Column(name = "user_ip", nullable = false, length = 16)
+    byte[] ip;
 
     @Column(name = "created", nullable = false)
     LocalDateTime timestamp;
+
+    @Transient
+    String app;
+
+    @Transient
+    String uri;
 }
@@ -1,13 +1,31 @@
 package ru.practicum.statsserver.service;
 
 import ru.practicum.statscommon.model.EndpointHit;
+import ru.practicum.statscommon.model.UniqueMode;
 import ru.practicum.statscommon.model.ViewStats;
+import ru.practicum.statscommon.model.ViewStatsSeries;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface StatsService {
     void addHit(EndpointHit endpointHit);
 
-    List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique);
-}
\ No newline at end of file
+    void addHits(List<EndpointHit> endpointHits);
+
+    List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique);
+
+    void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique,
+                     Consumer<ViewStats> consumer);
+
+    List<ViewStats> getTop(LocalDateTime start, LocalDateTime end, int limit, UniqueMode unique, String prefix);
+
+    List<ViewStatsSeries> getTimeSeries(LocalDateTime start, LocalDateTime end, Duration step, List<String> uris,
+                                        UniqueMode unique);
+
+    void exportHits(List<String> uris, Consumer<EndpointHit> consumer);
+
+    void clearHits();
+}
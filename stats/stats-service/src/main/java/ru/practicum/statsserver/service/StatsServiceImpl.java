@@ -3,50 +3,95 @@ package ru.practicum.statsserver.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.statscommon.StatsCommonUtils;
 import ru.practicum.statscommon.model.EndpointHit;
+import ru.practicum.statscommon.model.UniqueMode;
 import ru.practicum.statscommon.model.ViewStats;
+import ru.practicum.statscommon.model.ViewStatsSeries;
+import ru.practicum.statsserver.ingest.HitIngestor;
 import ru.practicum.statsserver.mapper.StatsMapper;
-import ru.practicum.statsserver.storage.StatsRepository;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.storage.StatsStorage;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
-@Transactional(readOnly = true)
 @Slf4j
 public class StatsServiceImpl implements StatsService {
-    private final StatsRepository statsRepository;
+    private final StatsStorage statsStorage;
     private final StatsMapper statsMapper;
+    private final HitIngestor hitIngestor;
 
     @Override
-    @Transactional
     public void addHit(EndpointHit endpointHit) {
         log.info("Регистрация апелляции в {}", endpointHit);
 
-        statsRepository.save(statsMapper.toStats(endpointHit,
-                LocalDateTime.parse(endpointHit.getTimestamp(), StatsCommonUtils.DT_FORMATTER)));
+        hitIngestor.ingest(List.of(toStats(endpointHit)));
     }
 
     @Override
-    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
+    public void addHits(List<EndpointHit> endpointHits) {
+        log.info("Пакетная регистрация {} апелляций", endpointHits.size());
+
+        hitIngestor.ingest(endpointHits.stream()
+                .map(this::toStats)
+                .toList());
+    }
+
+    @Override
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique) {
         log.info("Отображение списка запросов по параметрам start = {}, end = {}, uris = {}, unique = {}",
                 start, end, uris, unique);
 
-        if (uris == null || uris.isEmpty()) {
-            if (unique) {
-                return statsRepository.getAllStatsDistinctIp(start, end);
-            } else {
-                return statsRepository.getAllStats(start, end);
-            }
-        } else {
-            if (unique) {
-                return statsRepository.getStatsByUrisDistinctIp(start, end, uris);
-            } else {
-                return statsRepository.getStatsByUris(start, end, uris);
-            }
-        }
+        return statsStorage.getStats(start, end, uris, unique);
+    }
+
+    @Override
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique,
+                            Consumer<ViewStats> consumer) {
+        log.info("Потоковая выгрузка статистики по параметрам start = {}, end = {}, uris = {}, unique = {}",
+                start, end, uris, unique);
+
+        statsStorage.streamStats(start, end, uris, unique, consumer);
+    }
+
+    @Override
+    public List<ViewStats> getTop(LocalDateTime start, LocalDateTime end, int limit, UniqueMode unique, String prefix) {
+        log.info("Отображение {} самых популярных запросов по параметрам start = {}, end = {}, unique = {}, prefix = {}",
+                limit, start, end, unique, prefix);
+
+        return statsStorage.getTop(start, end, limit, unique, prefix);
+    }
+
+    @Override
+    public List<ViewStatsSeries> getTimeSeries(LocalDateTime start, LocalDateTime end, Duration step, List<String> uris,
+                                               UniqueMode unique) {
+        log.info("Отображение временного ряда по параметрам start = {}, end = {}, step = {}, uris = {}, unique = {}",
+                start, end, step, uris, unique);
+
+        return statsStorage.getTimeSeries(start, end, step, uris, unique);
+    }
+
+    @Override
+    public void exportHits(List<String> uris, Consumer<EndpointHit> consumer) {
+        log.info("Выгрузка запросов по параметрам uris = {}", uris);
+
+        statsStorage.exportHits(uris, hit -> consumer.accept(statsMapper.toEndpointHit(hit)));
+    }
+
+    @Override
+    public void clearHits() {
+        log.warn("Удаление всех запросов из хранилища");
+
+        statsStorage.clear();
+    }
+
+    private Stats toStats(EndpointHit endpointHit) {
+        return statsMapper.toStats(endpointHit,
+                LocalDateTime.parse(endpointHit.getTimestamp(), StatsCommonUtils.DT_FORMATTER));
     }
 }
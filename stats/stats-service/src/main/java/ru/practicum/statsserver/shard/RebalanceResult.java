@@ -0,0 +1,14 @@
+package ru.practicum.statsserver.shard;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class RebalanceResult {
+    private final long movedUris;
+
+    private final long movedHits;
+
+    private final long durationMs;
+}
@@ -0,0 +1,226 @@
+package ru.practicum.statsserver.shard;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.Getter;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.util.UriBuilder;
+import ru.practicum.statscommon.StatsCommonUtils;
+import ru.practicum.statscommon.model.EndpointHit;
+import ru.practicum.statscommon.model.StatsQuery;
+import ru.practicum.statscommon.model.UniqueMode;
+import ru.practicum.statscommon.model.ViewStats;
+import ru.practicum.statscommon.model.ViewStatsSeries;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * HTTP client of one stats node, speaking the public API of the service.
+ */
+class ShardClient {
+    private static final ParameterizedTypeReference<List<ViewStats>> VIEW_STATS =
+            new ParameterizedTypeReference<>() {
+            };
+    private static final ParameterizedTypeReference<List<ViewStatsSeries>> VIEW_STATS_SERIES =
+            new ParameterizedTypeReference<>() {
+            };
+
+    @Getter
+    private final String node;
+    private final RestClient rest;
+    private final ObjectReader hitReader;
+    private final ObjectReader statsReader;
+
+    ShardClient(String node, RestClient rest, ObjectMapper objectMapper) {
+        this.node = node;
+        this.rest = rest;
+        this.hitReader = objectMapper.readerFor(EndpointHit.class);
+        this.statsReader = objectMapper.readerFor(ViewStats.class);
+    }
+
+    void addHits(List<EndpointHit> hits) {
+        rest.post()
+                .uri(StatsCommonUtils.HITS_ENDPOINT)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(hits)
+                .retrieve()
+                .toBodilessEntity();
+    }
+
+    void clearHits() {
+        rest.delete()
+                .uri(StatsCommonUtils.HITS_ADMIN_ENDPOINT)
+                .retrieve()
+                .toBodilessEntity();
+    }
+
+    /**
+     * Posts a uri filter to {@value StatsCommonUtils#STATS_QUERY_ENDPOINT} in chunks of at most
+     * {@value StatsCommonUtils#MAX_QUERY_URIS} uris, the most a node accepts in one query.
+     */
+    List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique) {
+        if (uris != null && !uris.isEmpty()) {
+            List<String> distinct = uris.stream().distinct().toList();
+            List<ViewStats> stats = new ArrayList<>();
+            for (int from = 0; from < distinct.size(); from += StatsCommonUtils.MAX_QUERY_URIS) {
+                List<String> chunk = distinct.subList(from,
+                        Math.min(distinct.size(), from + StatsCommonUtils.MAX_QUERY_URIS));
+                List<ViewStats> part = rest.post()
+                        .uri(StatsCommonUtils.STATS_QUERY_ENDPOINT)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .body(StatsQuery.builder()
+                                .start(start.format(StatsCommonUtils.DT_FORMATTER))
+                                .end(end.format(StatsCommonUtils.DT_FORMATTER))
+                                .uris(chunk)
+                                .unique(unique.getParameter())
+                                .build())
+                        .retrieve()
+                        .body(VIEW_STATS);
+                if (part != null) {
+                    stats.addAll(part);
+                }
+            }
+            return stats;
+        }
+        return rest.get()
+                .uri(builder -> query(builder.path(StatsCommonUtils.STATS_ENDPOINT), start, end, uris, unique)
+                        .build())
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .body(VIEW_STATS);
+    }
+
+    /**
+     * Reads the NDJSON variant of {@value StatsCommonUtils#STATS_ENDPOINT} line by line, so the rows of this node
+     * are never held in memory together.
+     */
+    void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique,
+                     Consumer<ViewStats> consumer) {
+        rest.get()
+                .uri(builder -> query(builder.path(StatsCommonUtils.STATS_ENDPOINT), start, end, uris, unique)
+                        .build())
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange((request, response) -> {
+                    if (response.getStatusCode().isError()) {
+                        throw new IllegalStateException("Node " + node + " failed to stream stats: " +
+                                response.getStatusCode());
+                    }
+                    readLines(response.getBody(), statsReader, consumer);
+                    return null;
+                });
+    }
+
+    List<ViewStats> getTop(LocalDateTime start, LocalDateTime end, int limit, UniqueMode unique, String prefix) {
+        return rest.get()
+                .uri(builder -> query(builder.path(StatsCommonUtils.STATS_TOP_ENDPOINT), start, end, null, unique)
+                        .queryParam("limit", limit)
+                        .queryParamIfPresent("prefix", Optional.ofNullable(prefix))
+                        .build())
+                .retrieve()
+                .body(VIEW_STATS);
+    }
+
+    List<ViewStatsSeries> getTimeSeries(LocalDateTime start, LocalDateTime end, Duration step, List<String> uris,
+                                        UniqueMode unique) {
+        return rest.get()
+                .uri(builder -> query(builder.path(StatsCommonUtils.STATS_TIMESERIES_ENDPOINT), start, end, uris,
+                        unique)
+                        .queryParam("step", step.getSeconds() + "s")
+                        .build())
+                .retrieve()
+                .body(VIEW_STATS_SERIES);
+    }
+
+    void exportHits(List<String> uris, Consumer<EndpointHit> consumer) {
+        export(uris, body -> {
+            readLines(body, hitReader, consumer);
+            return null;
+        });
+    }
+
+    /**
+     * Streams the hits of {@code uris} from this node into the bulk loader of {@code target} and returns the
+     * number of hits loaded there. The load is atomic: if the copy fails, none of the hits are stored on the target.
+     */
+    long copyHits(List<String> uris, ShardClient target) {
+        Long loaded = export(uris, target::loadHits);
+        return loaded == null ? 0 : loaded;
+    }
+
+    private long loadHits(InputStream hits) {
+        LoadResponse response = rest.post()
+                .uri(builder -> builder.path(StatsCommonUtils.HITS_LOAD_ENDPOINT)
+                        .queryParam("atomic", true)
+                        .build())
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(hits::transferTo)
+                .retrieve()
+                .body(LoadResponse.class);
+        if (response == null) {
+            throw new IllegalStateException("Node " + node + " returned no bulk load result");
+        }
+        return response.loaded();
+    }
+
+    private <T> T export(List<String> uris, BodyHandler<T> handler) {
+        return rest.get()
+                .uri(builder -> {
+                    builder.path(StatsCommonUtils.HITS_EXPORT_ENDPOINT);
+                    if (uris != null && !uris.isEmpty()) {
+                        builder.queryParam("uris", uris);
+                    }
+                    return builder.build();
+                })
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange((request, response) -> {
+                    if (response.getStatusCode().isError()) {
+                        throw new IllegalStateException("Node " + node + " failed to export hits: " +
+                                response.getStatusCode());
+                    }
+                    return handler.handle(response.getBody());
+                });
+    }
+
+    private static <T> void readLines(InputStream body, ObjectReader reader, Consumer<T> consumer) throws IOException {
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (!line.isBlank()) {
+                    consumer.accept(reader.readValue(line));
+                }
+            }
+        }
+    }
+
+    private static UriBuilder query(UriBuilder builder, LocalDateTime start, LocalDateTime end, List<String> uris,
+                                    UniqueMode unique) {
+        builder.queryParam("start", start.format(StatsCommonUtils.DT_FORMATTER))
+                .queryParam("end", end.format(StatsCommonUtils.DT_FORMATTER))
+                .queryParam("unique", unique.getParameter());
+        if (uris != null && !uris.isEmpty()) {
+            builder.queryParam("uris", uris);
+        }
+        return builder;
+    }
+
+    @FunctionalInterface
+    private interface BodyHandler<T> {
+        T handle(InputStream body) throws IOException;
+    }
+
+    private record LoadResponse(long loaded, long rejected) {
+    }
+}
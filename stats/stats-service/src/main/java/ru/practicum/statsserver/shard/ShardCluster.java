@@ -0,0 +1,144 @@
+package ru.practicum.statsserver.shard;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.client.ClientHttpRequestFactories;
+import org.springframework.boot.web.client.ClientHttpRequestFactorySettings;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import ru.practicum.statscommon.StatsCommonUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Nodes of a sharded deployment: the ring of {@code stats.shard.nodes} that owns the URIs now and, while a
+ * topology change is being rebalanced, the ring of {@code stats.shard.previous-nodes}. Requests to several
+ * nodes run in parallel on a pool of {@code stats.shard.parallelism} threads. Requests carry
+ * {@code stats.admin.token}, which the nodes need to accept the admin endpoints used by a rebalance.
+ */
+@Component
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "sharded")
+public class ShardCluster {
+    private final ShardRing ring;
+    private final ShardRing previousRing;
+    private final Map<String, ShardClient> clients = new LinkedHashMap<>();
+    private final ExecutorService executor;
+
+    public ShardCluster(RestClient.Builder restClientBuilder, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                        @Value("${stats.shard.nodes}") List<String> nodes,
+                        @Value("${stats.shard.previous-nodes:}") List<String> previousNodes,
+                        @Value("${stats.shard.virtual-nodes:256}") int virtualNodes,
+                        @Value("${stats.shard.parallelism:8}") int parallelism,
+                        @Value("${stats.shard.connect-timeout:5s}") String connectTimeout,
+                        @Value("${stats.shard.read-timeout:60s}") String readTimeout,
+                        @Value("${stats.admin.token:}") String adminToken) {
+        this.ring = new ShardRing(nodes, virtualNodes);
+        this.previousRing = previousNodes.isEmpty() ? null : new ShardRing(previousNodes, virtualNodes);
+
+        ClientHttpRequestFactorySettings settings = ClientHttpRequestFactorySettings.DEFAULTS
+                .withConnectTimeout(DurationStyle.detectAndParse(connectTimeout))
+                .withReadTimeout(DurationStyle.detectAndParse(readTimeout));
+        Set<String> allNodes = new LinkedHashSet<>(nodes);
+        allNodes.addAll(previousNodes);
+        for (String node : allNodes) {
+            RestClient.Builder builder = restClientBuilder.clone()
+                    .baseUrl(node)
+                    .requestFactory(ClientHttpRequestFactories.get(settings));
+            if (!adminToken.isBlank()) {
+                builder.defaultHeader(StatsCommonUtils.ADMIN_TOKEN_HEADER, adminToken);
+            }
+            clients.put(node, new ShardClient(node, builder.build(), objectMapper));
+        }
+        this.executor = ExecutorServiceMetrics.monitor(meterRegistry, Executors.newFixedThreadPool(parallelism),
+                "stats.shard.requests");
+    }
+
+    public ShardRing getRing() {
+        return ring;
+    }
+
+    public Optional<ShardRing> getPreviousRing() {
+        return Optional.ofNullable(previousRing);
+    }
+
+    public boolean owns(String node, String uri) {
+        return ring.owner(uri).equals(node);
+    }
+
+    ShardClient client(String node) {
+        return clients.get(node);
+    }
+
+    /**
+     * Sends one request per entry of {@code requests} to the node it is keyed by and waits for all of them.
+     * The first failure is rethrown once every request has finished.
+     */
+    <R, T> Map<String, T> scatter(Map<String, R> requests, BiFunction<ShardClient, R, T> call) {
+        Map<String, T> results = new LinkedHashMap<>();
+        Map<String, RuntimeException> failures = settle(requests, call, results);
+        if (!failures.isEmpty()) {
+            throw failure(failures);
+        }
+        return results;
+    }
+
+    /**
+     * Sends one request per entry of {@code requests} like {@link #scatter} and returns the failures by node
+     * instead of throwing, so the caller can tell which requests took effect.
+     */
+    <R> Map<String, RuntimeException> scatterSettled(Map<String, R> requests, BiConsumer<ShardClient, R> call) {
+        return settle(requests, (client, request) -> {
+            call.accept(client, request);
+            return null;
+        }, new HashMap<>());
+    }
+
+    static IllegalStateException failure(Map<String, RuntimeException> failures) {
+        IllegalStateException failure = null;
+        for (Map.Entry<String, RuntimeException> node : failures.entrySet()) {
+            if (failure == null) {
+                failure = new IllegalStateException("Shard " + node.getKey() + " failed: " +
+                        node.getValue().getMessage(), node.getValue());
+            } else {
+                failure.addSuppressed(node.getValue());
+            }
+        }
+        return failure;
+    }
+
+    private <R, T> Map<String, RuntimeException> settle(Map<String, R> requests, BiFunction<ShardClient, R, T> call,
+                                                        Map<String, T> results) {
+        Map<String, Future<T>> futures = new LinkedHashMap<>();
+        requests.forEach((node, request) -> futures.put(node,
+                executor.submit(() -> call.apply(clients.get(node), request))));
+
+        Map<String, RuntimeException> failures = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<T>> future : futures.entrySet()) {
+            try {
+                results.put(future.getKey(), future.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.values().forEach(pending -> pending.cancel(true));
+                throw new IllegalStateException("Shard request was interrupted", e);
+            } catch (ExecutionException e) {
+                failures.put(future.getKey(), e.getCause() instanceof RuntimeException runtimeException
+                        ? runtimeException
+                        : new IllegalStateException(e.getCause()));
+            }
+        }
+        return failures;
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,186 @@
+package ru.practicum.statsserver.shard;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.statscommon.model.UniqueMode;
+import ru.practicum.statscommon.model.ViewStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Copies the hits of the URIs whose owner differs between {@code stats.shard.previous-nodes} and
+ * {@code stats.shard.nodes} from the previous owner to the new one. Only those URIs are moved, about 1/(N+1) of
+ * them when a node joins N others. The coordinator routes new hits to the new owners as soon as it starts with
+ * the new topology, so the rebalance only moves history; until it finishes, queries of moved URIs miss their
+ * older hits. The copies left on the previous owners are ignored by the coordinator.
+ * <p>
+ * URIs are copied in batches of at most {@code stats.shard.rebalance-batch-size} URIs and
+ * {@code stats.shard.rebalance-batch-hits} hits, each loaded atomically by the target, and every copied batch is
+ * recorded in {@code stats.shard.rebalance-progress}. A failed batch leaves nothing on the target, so the rebalance
+ * can be run again after a failure: it resumes with the URIs not recorded yet, and does nothing once all are.
+ */
+@Component
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "sharded")
+@Slf4j
+public class ShardRebalancer {
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final ShardCluster cluster;
+    private final int batchSize;
+    private final long batchHits;
+    private final Path progressFile;
+
+    public ShardRebalancer(ShardCluster cluster, @Value("${stats.shard.rebalance-batch-size:100}") int batchSize,
+                           @Value("${stats.shard.rebalance-batch-hits:100000}") long batchHits,
+                           @Value("${stats.shard.rebalance-progress:stats-rebalance.progress}") Path progressFile) {
+        this.cluster = cluster;
+        this.batchSize = batchSize;
+        this.batchHits = batchHits;
+        this.progressFile = progressFile;
+    }
+
+    public synchronized RebalanceResult rebalance() {
+        ShardRing previous = cluster.getPreviousRing().orElseThrow(() ->
+                new IllegalStateException("stats.shard.previous-nodes is not set, there is nothing to rebalance"));
+        ShardRing ring = cluster.getRing();
+        long startedAt = System.currentTimeMillis();
+        long movedUris = 0;
+        long movedHits = 0;
+
+        try (Progress progress = Progress.open(progressFile, previous.getNodes() + " -> " + ring.getNodes())) {
+            if (progress.getDone() > 0) {
+                log.info("Resuming rebalance, {} URIs were copied before", progress.getDone());
+            }
+            for (String source : previous.getNodes()) {
+                Map<String, Map<String, Long>> moves = new TreeMap<>();
+                listUris(source).forEach((uri, hits) -> {
+                    String target = ring.owner(uri);
+                    if (previous.owner(uri).equals(source) && !target.equals(source) && !progress.isDone(uri)) {
+                        moves.computeIfAbsent(target, node -> new TreeMap<>()).put(uri, hits);
+                    }
+                });
+                for (Map.Entry<String, Map<String, Long>> move : moves.entrySet()) {
+                    for (List<String> batch : split(move.getValue())) {
+                        movedHits += cluster.client(source).copyHits(batch, cluster.client(move.getKey()));
+                        movedUris += batch.size();
+                        progress.add(batch);
+                    }
+                    log.info("Moved {} URIs from {} to {}", move.getValue().size(), source, move.getKey());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to record rebalance progress in " + progressFile, e);
+        }
+
+        RebalanceResult result = new RebalanceResult(movedUris, movedHits, System.currentTimeMillis() - startedAt);
+        log.info("Rebalance finished: {} URIs with {} hits moved in {} ms", result.getMovedUris(),
+                result.getMovedHits(), result.getDurationMs());
+        return result;
+    }
+
+    private List<List<String>> split(Map<String, Long> uris) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        long hits = 0;
+        for (Map.Entry<String, Long> uri : uris.entrySet()) {
+            if (!batch.isEmpty() && (batch.size() == batchSize || hits + uri.getValue() > batchHits)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                hits = 0;
+            }
+            batch.add(uri.getKey());
+            hits += uri.getValue();
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private Map<String, Long> listUris(String node) {
+        Map<String, Long> uris = new TreeMap<>();
+        for (ViewStats stats : cluster.client(node).getStats(EPOCH, LocalDateTime.now().plusDays(1), null,
+                UniqueMode.NONE)) {
+            uris.merge(stats.getUri(), stats.getHits(), Long::sum);
+        }
+        return uris;
+    }
+
+    /**
+     * Progress file: the topology on the first line and a copied URI on each following one. A line torn by a crash
+     * is dropped, and a file of another topology is started over.
+     */
+    private static final class Progress implements Closeable {
+        private final FileChannel channel;
+        private final Set<String> done;
+
+        private Progress(FileChannel channel, Set<String> done) {
+            this.channel = channel;
+            this.done = done;
+        }
+
+        static Progress open(Path file, String topology) throws IOException {
+            List<String> lines = new ArrayList<>();
+            if (Files.exists(file)) {
+                String content = Files.readString(file, StandardCharsets.UTF_8);
+                lines.addAll(Arrays.asList(content.split("\n", -1)));
+                lines.remove(lines.size() - 1);
+            }
+            Set<String> done = new HashSet<>();
+            if (!lines.isEmpty() && lines.get(0).equals(topology)) {
+                done.addAll(lines.subList(1, lines.size()));
+            }
+
+            // The file is rewritten without a torn line through a temporary file, so a crash keeps the old one.
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            List<String> header = new ArrayList<>(done.size() + 1);
+            header.add(topology);
+            header.addAll(done);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(channel, header);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new Progress(FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND), done);
+        }
+
+        int getDone() {
+            return done.size();
+        }
+
+        boolean isDone(String uri) {
+            return done.contains(uri);
+        }
+
+        void add(List<String> uris) throws IOException {
+            write(channel, uris);
+            done.addAll(uris);
+        }
+
+        private static void write(FileChannel channel, List<String> lines) throws IOException {
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(String.join("\n", lines) + "\n");
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package ru.practicum.statsserver.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Consistent-hash ring of stats nodes keyed by URI. Every node is placed at {@code virtualNodes} points derived
+ * from its URL, so the placement of a node does not depend on the others: adding a node to N existing ones moves
+ * about 1/(N+1) of the URIs, all of them to the new node.
+ */
+public class ShardRing {
+    private final List<String> nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    public ShardRing(List<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A shard ring needs at least one node");
+        }
+        if (new HashSet<>(nodes).size() != nodes.size()) {
+            throw new IllegalArgumentException("Shard nodes must be unique: " + nodes);
+        }
+        this.nodes = List.copyOf(nodes);
+
+        TreeMap<Long, Integer> ring = new TreeMap<>();
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                ring.putIfAbsent(hash(nodes.get(node) + "#" + v), node);
+            }
+        }
+        this.points = new long[ring.size()];
+        this.owners = new int[ring.size()];
+        int i = 0;
+        for (Map.Entry<Long, Integer> point : ring.entrySet()) {
+            points[i] = point.getKey();
+            owners[i++] = point.getValue();
+        }
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public String owner(String uri) {
+        int index = Arrays.binarySearch(points, hash(uri));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return nodes.get(owners[index == points.length ? 0 : index]);
+    }
+
+    /**
+     * 64-bit FNV-1a of the UTF-8 bytes followed by the MurmurHash3 finalizer, so that URIs differing only in
+     * their last characters still spread over the ring. Must stay stable: it decides where stored hits live.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,231 @@
+package ru.practicum.statsserver.shard;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.statscommon.StatsCommonUtils;
+import ru.practicum.statscommon.model.EndpointHit;
+import ru.practicum.statscommon.model.UniqueMode;
+import ru.practicum.statscommon.model.ViewStats;
+import ru.practicum.statscommon.model.ViewStatsPoint;
+import ru.practicum.statscommon.model.ViewStatsSeries;
+import ru.practicum.statsserver.mapper.StatsMapper;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.storage.StatsStorage;
+import ru.practicum.statsserver.storage.UriPattern;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Coordinator of a sharded deployment. Hits are routed to the node that owns their URI on the
+ * {@link ShardRing}, queries go to the owners of the requested URIs, or to every node for patterns and
+ * unfiltered queries, and the results are merged and ordered by hits again. All hits of a URI live on one node,
+ * so unique counts need no merging.
+ * <p>
+ * Rows of URIs a node does not own are dropped: they are copies left behind by a rebalance.
+ * <p>
+ * A write fails only if no node stored its hits, so the client can safely retry it. Once some node has stored
+ * its part, the batches of the failed nodes are kept in memory and redelivered every
+ * {@code stats.shard.redelivery-interval-ms}. At most {@code stats.shard.redelivery-capacity} batches are kept,
+ * and further ones are dropped and counted.
+ */
+@Component
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "sharded")
+@Slf4j
+public class ShardedStatsStorage implements StatsStorage {
+    private static final int MAX_NODE_TOP_LIMIT = 1000;
+
+    private final ShardCluster cluster;
+    private final StatsMapper statsMapper;
+    private final BlockingQueue<Redelivery> redeliveries;
+    private final Counter redeliveredHits;
+    private final Counter droppedHits;
+
+    public ShardedStatsStorage(ShardCluster cluster, StatsMapper statsMapper, MeterRegistry meterRegistry,
+                               @Value("${stats.shard.redelivery-capacity:1000}") int redeliveryCapacity) {
+        this.cluster = cluster;
+        this.statsMapper = statsMapper;
+        this.redeliveries = new LinkedBlockingQueue<>(redeliveryCapacity);
+        Gauge.builder("stats.shard.redelivery.queue", redeliveries, BlockingQueue::size).register(meterRegistry);
+        this.redeliveredHits = meterRegistry.counter("stats.shard.hits.redelivered");
+        this.droppedHits = meterRegistry.counter("stats.shard.hits.dropped");
+    }
+
+    @Override
+    public void write(List<Stats> hits) {
+        Map<String, List<EndpointHit>> batches = new HashMap<>();
+        for (Stats hit : hits) {
+            batches.computeIfAbsent(cluster.getRing().owner(hit.getUri()), node -> new ArrayList<>())
+                    .add(statsMapper.toEndpointHit(hit));
+        }
+        Map<String, RuntimeException> failures = cluster.scatterSettled(batches, ShardClient::addHits);
+        if (!failures.isEmpty() && failures.size() == batches.size()) {
+            throw ShardCluster.failure(failures);
+        }
+        failures.forEach((node, failure) -> {
+            log.warn("Shard {} failed to store {} hits, they will be redelivered: {}", node,
+                    batches.get(node).size(), failure.getMessage());
+            redeliver(new Redelivery(node, batches.get(node)));
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${stats.shard.redelivery-interval-ms:1000}",
+            initialDelayString = "${stats.shard.redelivery-interval-ms:1000}")
+    public void redeliver() {
+        for (int pending = redeliveries.size(); pending > 0; pending--) {
+            Redelivery redelivery = redeliveries.poll();
+            if (redelivery == null) {
+                return;
+            }
+            try {
+                cluster.client(redelivery.node()).addHits(redelivery.hits());
+                redeliveredHits.increment(redelivery.hits().size());
+            } catch (RuntimeException e) {
+                log.debug("Redelivery to shard {} failed: {}", redelivery.node(), e.toString());
+                redeliver(redelivery);
+            }
+        }
+    }
+
+    @Override
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique) {
+        List<ViewStats> result = new ArrayList<>();
+        cluster.scatter(route(uris), (client, nodeUris) -> client.getStats(start, end, nodeUris, unique))
+                .forEach((node, stats) -> result.addAll(owned(node, stats)));
+        result.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        return result;
+    }
+
+    /**
+     * Asks the nodes one after another and passes their rows on as they arrive. A node asked for all URIs or for
+     * patterns streams its rows; the rows of listed URIs, one per app and URI, are fetched in one piece.
+     */
+    @Override
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique,
+                            Consumer<ViewStats> consumer) {
+        boolean broadcast = isBroadcast(uris);
+        route(uris).forEach((node, nodeUris) -> {
+            Consumer<ViewStats> forward = item -> {
+                if (cluster.owns(node, item.getUri())) {
+                    consumer.accept(item);
+                }
+            };
+            if (broadcast) {
+                cluster.client(node).streamStats(start, end, nodeUris, unique, forward);
+            } else {
+                cluster.client(node).getStats(start, end, nodeUris, unique).forEach(forward);
+            }
+        });
+    }
+
+    /**
+     * Asks every node for its top {@code limit}. A node whose top holds rows it does not own is asked again for
+     * a longer list, so that the merged top is complete.
+     */
+    @Override
+    public List<ViewStats> getTop(LocalDateTime start, LocalDateTime end, int limit, UniqueMode unique, String prefix) {
+        Map<String, Integer> requests = new LinkedHashMap<>();
+        cluster.getRing().getNodes().forEach(node -> requests.put(node, limit));
+
+        List<ViewStats> result = new ArrayList<>();
+        cluster.scatter(requests, (client, nodeLimit) -> {
+            for (int requested = nodeLimit; ; requested = Math.min(requested * 2, MAX_NODE_TOP_LIMIT)) {
+                List<ViewStats> top = client.getTop(start, end, requested, unique, prefix);
+                List<ViewStats> owned = owned(client.getNode(), top);
+                if (owned.size() >= nodeLimit || top.size() < requested || requested == MAX_NODE_TOP_LIMIT) {
+                    return owned;
+                }
+            }
+        }).values().forEach(result::addAll);
+        result.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    @Override
+    public List<ViewStatsSeries> getTimeSeries(LocalDateTime start, LocalDateTime end, Duration step, List<String> uris,
+                                               UniqueMode unique) {
+        List<ViewStatsSeries> result = new ArrayList<>();
+        cluster.scatter(route(uris), (client, nodeUris) -> client.getTimeSeries(start, end, step, nodeUris, unique))
+                .forEach((node, series) -> series.stream()
+                        .filter(item -> cluster.owns(node, item.getUri()))
+                        .forEach(result::add));
+
+        Map<ViewStatsSeries, Long> totals = new IdentityHashMap<>();
+        result.forEach(series -> totals.put(series, series.getPoints().stream()
+                .mapToLong(ViewStatsPoint::getHits)
+                .sum()));
+        result.sort(Comparator.comparing(totals::get).reversed());
+        return result;
+    }
+
+    @Override
+    public void exportHits(List<String> uris, Consumer<Stats> consumer) {
+        route(uris).forEach((node, nodeUris) -> cluster.client(node).exportHits(nodeUris, hit -> {
+            if (cluster.owns(node, hit.getUri())) {
+                consumer.accept(statsMapper.toStats(hit,
+                        LocalDateTime.parse(hit.getTimestamp(), StatsCommonUtils.DT_FORMATTER)));
+            }
+        }));
+    }
+
+    /**
+     * Drops the pending redeliveries and clears every node. Fails if any node could not be cleared, so that an
+     * interrupted restore is not started over on top of the hits left there.
+     */
+    @Override
+    public void clear() {
+        redeliveries.clear();
+        Map<String, RuntimeException> failures = cluster.scatterSettled(route(null),
+                (client, uris) -> client.clearHits());
+        if (!failures.isEmpty()) {
+            throw ShardCluster.failure(failures);
+        }
+    }
+
+    /**
+     * Maps every node that has to be asked to the URIs to ask it for: the owners get their own URIs, while a
+     * query without URIs or with patterns goes to all nodes unchanged.
+     */
+    private Map<String, List<String>> route(List<String> uris) {
+        Map<String, List<String>> requests = new LinkedHashMap<>();
+        if (isBroadcast(uris)) {
+            cluster.getRing().getNodes().forEach(node -> requests.put(node, uris));
+            return requests;
+        }
+        for (String uri : new LinkedHashSet<>(uris)) {
+            requests.computeIfAbsent(cluster.getRing().owner(uri), node -> new ArrayList<>()).add(uri);
+        }
+        return requests;
+    }
+
+    private static boolean isBroadcast(List<String> uris) {
+        return uris == null || uris.isEmpty() || uris.stream().anyMatch(UriPattern::isPattern);
+    }
+
+    private List<ViewStats> owned(String node, List<ViewStats> stats) {
+        return stats.stream()
+                .filter(item -> cluster.owns(node, item.getUri()))
+                .toList();
+    }
+
+    private void redeliver(Redelivery redelivery) {
+        if (!redeliveries.offer(redelivery)) {
+            droppedHits.increment(redelivery.hits().size());
+            log.error("Redelivery queue is full, dropped {} hits of shard {}", redelivery.hits().size(),
+                    redelivery.node());
+        }
+    }
+
+    private record Redelivery(String node, List<EndpointHit> hits) {
+    }
+}
@@ -0,0 +1,123 @@
+package ru.practicum.statsserver.sketch;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HyperLogLog cardinality sketch with 2^12 one-byte registers and a 64-bit hash.
+ * The relative standard error is 1.04 / sqrt(4096) ~ 1.6%, so about 99.7% of estimates fall within 4.9%
+ * of the exact distinct count. Below ~10 000 distinct values linear counting is used and the error is
+ * typically smaller; a few hundred distinct values are usually within one or two of the exact count.
+ * Sketches are merged by taking the register-wise maximum, which is lossless: the merge of per-hour
+ * sketches is identical to a sketch built over the whole range.
+ */
+public class HyperLogLog {
+    private static final int PRECISION = 12;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+    private static final byte DENSE = 0;
+    private static final byte SPARSE = 1;
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this.registers = new byte[REGISTERS];
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    public void add(String value) {
+        add(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void add(byte[] value) {
+        long hash = hash(value);
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public byte[] toBytes() {
+        int nonZero = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                nonZero++;
+            }
+        }
+
+        if (nonZero * 3 + 3 >= REGISTERS + 1) {
+            ByteBuffer buffer = ByteBuffer.allocate(REGISTERS + 1);
+            buffer.put(DENSE).put(registers);
+            return buffer.array();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(nonZero * 3 + 3);
+        buffer.put(SPARSE).putShort((short) nonZero);
+        for (int i = 0; i < REGISTERS; i++) {
+            if (registers[i] != 0) {
+                buffer.putShort((short) i).put(registers[i]);
+            }
+        }
+        return buffer.array();
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte format = buffer.get();
+        byte[] registers = new byte[REGISTERS];
+
+        if (format == DENSE) {
+            buffer.get(registers);
+        } else if (format == SPARSE) {
+            int count = buffer.getShort();
+            for (int i = 0; i < count; i++) {
+                registers[buffer.getShort()] = buffer.get();
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown sketch format " + format);
+        }
+        return new HyperLogLog(registers);
+    }
+
+    private static long hash(byte[] value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
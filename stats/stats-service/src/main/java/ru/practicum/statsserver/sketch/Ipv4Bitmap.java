@@ -0,0 +1,238 @@
+package ru.practicum.statsserver.sketch;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Exact set of IPv4 addresses in the Roaring layout. Addresses are grouped by their upper 16 bits into
+ * containers that keep the lower 16 bits as a sorted array while they hold at most {@value #ARRAY_MAX} values
+ * and as a 2^16-bit bitmap above that, so a container never takes more than 8 KB. Sets are merged with
+ * {@link #or}, which makes the distinct count of a range the cardinality of the union of its hourly sets.
+ */
+public class Ipv4Bitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = (1 << 16) / Long.SIZE;
+    private static final byte VERSION = 1;
+    private static final byte ARRAY = 0;
+    private static final byte BITMAP = 1;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    public static boolean isIpv4(byte[] ip) {
+        return ip.length == 4;
+    }
+
+    public void add(byte[] ip) {
+        if (!isIpv4(ip)) {
+            throw new IllegalArgumentException("Not an IPv4 address: " + ip.length + " bytes");
+        }
+        add(ByteBuffer.wrap(ip).getInt());
+    }
+
+    public void add(int address) {
+        container((char) (address >>> 16)).add((char) address);
+    }
+
+    public void or(Ipv4Bitmap other) {
+        for (int i = 0; i < other.size; i++) {
+            int index = Arrays.binarySearch(keys, 0, size, other.keys[i]);
+            if (index >= 0) {
+                containers[index].or(other.containers[i]);
+            } else {
+                insert(-index - 1, other.keys[i], other.containers[i].copy());
+            }
+        }
+    }
+
+    public long cardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    /**
+     * Serializes the set: a version byte, the container count and every container as its key, type,
+     * cardinality and either the sorted values or the bitmap words.
+     */
+    public byte[] toBytes() {
+        int length = 1 + Integer.BYTES;
+        for (int i = 0; i < size; i++) {
+            length += Character.BYTES + 1 + Integer.BYTES + containers[i].payloadSize();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(VERSION).putInt(size);
+        for (int i = 0; i < size; i++) {
+            Container container = containers[i];
+            buffer.putChar(keys[i]);
+            buffer.put(container.words == null ? ARRAY : BITMAP);
+            buffer.putInt(container.cardinality);
+            if (container.words == null) {
+                for (int j = 0; j < container.cardinality; j++) {
+                    buffer.putChar(container.values[j]);
+                }
+            } else {
+                for (long word : container.words) {
+                    buffer.putLong(word);
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    public static Ipv4Bitmap fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.get() != VERSION) {
+            throw new IllegalArgumentException("Unknown IPv4 bitmap version");
+        }
+        Ipv4Bitmap bitmap = new Ipv4Bitmap();
+        int size = buffer.getInt();
+        bitmap.keys = new char[Math.max(size, 4)];
+        bitmap.containers = new Container[bitmap.keys.length];
+        for (int i = 0; i < size; i++) {
+            char key = buffer.getChar();
+            byte type = buffer.get();
+            Container container = new Container();
+            container.cardinality = buffer.getInt();
+            if (type == ARRAY) {
+                container.values = new char[Math.max(container.cardinality, 4)];
+                for (int j = 0; j < container.cardinality; j++) {
+                    container.values[j] = buffer.getChar();
+                }
+            } else {
+                container.values = null;
+                container.words = new long[BITMAP_WORDS];
+                for (int j = 0; j < BITMAP_WORDS; j++) {
+                    container.words[j] = buffer.getLong();
+                }
+            }
+            bitmap.keys[i] = key;
+            bitmap.containers[i] = container;
+        }
+        bitmap.size = size;
+        return bitmap;
+    }
+
+    private Container container(char key) {
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            return containers[index];
+        }
+        Container container = new Container();
+        insert(-index - 1, key, container);
+        return container;
+    }
+
+    private void insert(int index, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private static final class Container {
+        private char[] values = new char[4];
+        private long[] words;
+        private int cardinality;
+
+        void add(char value) {
+            if (words != null) {
+                long bit = 1L << value;
+                if ((words[value >>> 6] & bit) == 0) {
+                    words[value >>> 6] |= bit;
+                    cardinality++;
+                }
+                return;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return;
+            }
+            if (cardinality == ARRAY_MAX) {
+                toBitmap();
+                add(value);
+                return;
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+        }
+
+        void or(Container other) {
+            if (other.words != null) {
+                if (words == null) {
+                    toBitmap();
+                }
+                int merged = 0;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    words[i] |= other.words[i];
+                    merged += Long.bitCount(words[i]);
+                }
+                cardinality = merged;
+            } else if (words != null) {
+                for (int i = 0; i < other.cardinality; i++) {
+                    add(other.values[i]);
+                }
+            } else {
+                char[] merged = new char[cardinality + other.cardinality];
+                int i = 0;
+                int j = 0;
+                int n = 0;
+                while (i < cardinality && j < other.cardinality) {
+                    char a = values[i];
+                    char b = other.values[j];
+                    merged[n++] = a <= b ? a : b;
+                    if (a <= b) {
+                        i++;
+                    }
+                    if (b <= a) {
+                        j++;
+                    }
+                }
+                while (i < cardinality) {
+                    merged[n++] = values[i++];
+                }
+                while (j < other.cardinality) {
+                    merged[n++] = other.values[j++];
+                }
+                values = merged;
+                cardinality = n;
+                if (n > ARRAY_MAX) {
+                    toBitmap();
+                }
+            }
+        }
+
+        Container copy() {
+            Container copy = new Container();
+            copy.cardinality = cardinality;
+            copy.values = values == null ? null : Arrays.copyOf(values, Math.max(cardinality, 4));
+            copy.words = words == null ? null : words.clone();
+            return copy;
+        }
+
+        int payloadSize() {
+            return words == null ? cardinality * Character.BYTES : BITMAP_WORDS * Long.BYTES;
+        }
+
+        private void toBitmap() {
+            words = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ru.practicum.statsserver.snapshot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Seeds the store from {@code stats.snapshot.restore-file} on startup. The application reports readiness only
+ * after the restore has finished. A store that already has hits is left untouched, so the property may stay set
+ * across restarts.
+ * <p>
+ * A restore is not atomic, so {@code stats.snapshot.restore-marker} is created before the first hit is written and
+ * deleted once the last one is. Finding the marker on startup means the previous restore was interrupted: the
+ * store is cleared and the restore started over instead of being skipped with part of the hits.
+ */
+@Component
+@ConditionalOnProperty(name = "stats.snapshot.restore-file")
+@Slf4j
+public class SnapshotRestoreRunner implements ApplicationRunner {
+    private final SnapshotService snapshotService;
+    private final Path file;
+    private final Path marker;
+
+    public SnapshotRestoreRunner(SnapshotService snapshotService,
+                                 @Value("${stats.snapshot.restore-file}") Path file,
+                                 @Value("${stats.snapshot.restore-marker:stats-restore.marker}") Path marker) {
+        this.snapshotService = snapshotService;
+        this.file = file;
+        this.marker = marker;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (Files.exists(marker)) {
+            log.warn("Restore of snapshot {} was interrupted, clearing the store and starting over", file);
+            snapshotService.clear();
+        } else if (!snapshotService.isStoreEmpty()) {
+            log.info("Store already has hits, snapshot {} is not restored", file);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(marker, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        log.info("Restoring snapshot {}", file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            snapshotService.restore(channel);
+        }
+        Files.delete(marker);
+    }
+}
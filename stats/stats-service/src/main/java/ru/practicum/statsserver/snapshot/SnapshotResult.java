@@ -0,0 +1,14 @@
+package ru.practicum.statsserver.snapshot;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class SnapshotResult {
+    private final long hits;
+
+    private final long durationMs;
+
+    private final long hitsPerSecond;
+}
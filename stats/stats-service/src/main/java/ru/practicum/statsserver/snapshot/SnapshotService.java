@@ -0,0 +1,83 @@
+package ru.practicum.statsserver.snapshot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.statscommon.model.UniqueMode;
+import ru.practicum.statsserver.storage.StatsStorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.time.LocalDateTime;
+
+/**
+ * Exports the hits of the store into a {@link StatsSnapshot} and restores them from one. A restore hands every
+ * decoded block to {@link StatsStorage#write} as one batch, so the rollups, sketches and the hot window are
+ * built from whole blocks the same way as during ingestion.
+ */
+@Component
+@Slf4j
+public class SnapshotService {
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final StatsStorage statsStorage;
+    private final int blockRows;
+
+    public SnapshotService(StatsStorage statsStorage, @Value("${stats.snapshot.block-rows:50000}") int blockRows) {
+        this.statsStorage = statsStorage;
+        this.blockRows = blockRows;
+    }
+
+    public SnapshotResult export(WritableByteChannel channel) throws IOException {
+        long startedAt = System.currentTimeMillis();
+        long hits;
+        try (StatsSnapshot.Writer writer = new StatsSnapshot.Writer(channel, blockRows)) {
+            try {
+                statsStorage.exportHits(null, hit -> {
+                    try {
+                        writer.add(hit);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            hits = writer.finish();
+        }
+        SnapshotResult result = toResult(hits, startedAt);
+        log.info("Snapshot of {} hits exported in {} ms ({} hits/s)", result.getHits(), result.getDurationMs(),
+                result.getHitsPerSecond());
+        return result;
+    }
+
+    public SnapshotResult restore(ReadableByteChannel channel) throws IOException {
+        long startedAt = System.currentTimeMillis();
+        long hits = StatsSnapshot.read(channel, statsStorage::write);
+        SnapshotResult result = toResult(hits, startedAt);
+        log.info("Snapshot of {} hits restored in {} ms ({} hits/s)", result.getHits(), result.getDurationMs(),
+                result.getHitsPerSecond());
+        return result;
+    }
+
+    /**
+     * Tells whether the store has no hits outside the archive, which is checked before restoring on startup.
+     */
+    public boolean isStoreEmpty() {
+        return statsStorage.getTop(EPOCH, LocalDateTime.now().plusDays(1), 1, UniqueMode.NONE, null).isEmpty();
+    }
+
+    /**
+     * Removes every hit of the store, so that an interrupted restore can be started over.
+     */
+    public void clear() {
+        statsStorage.clear();
+    }
+
+    private static SnapshotResult toResult(long hits, long startedAt) {
+        long duration = System.currentTimeMillis() - startedAt;
+        return new SnapshotResult(hits, duration, hits * 1000 / Math.max(1, duration));
+    }
+}
@@ -0,0 +1,344 @@
+package ru.practicum.statsserver.snapshot;
+
+import ru.practicum.statsserver.model.Stats;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary snapshot of the hits of a stats store, written and read sequentially through NIO channels. Hits are
+ * stored in blocks of up to {@code blockRows} rows; every block is deflated as a whole and holds the app and URI
+ * names first seen in it followed by four columns: the app index, the URI index, the zigzag-encoded delta of the
+ * timestamp in epoch seconds to the previous row and the binary address. Names are numbered in order of first
+ * appearance across the whole snapshot, so each one is written once.
+ * <p>
+ * Layout: magic and version, the blocks as their raw and compressed length and the compressed payload, an empty
+ * block as the end marker and a trailer with the total row count and the magic.
+ */
+final class StatsSnapshot {
+    private static final int MAGIC = 0x5354534e;
+    private static final int VERSION = 1;
+    private static final int BLOCK_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private StatsSnapshot() {
+    }
+
+    /**
+     * Reads a snapshot and passes every block to {@code blocks} as soon as it is decoded. Returns the number of
+     * hits read.
+     */
+    static long read(ReadableByteChannel channel, Consumer<List<Stats>> blocks) throws IOException {
+        ByteBuffer header = read(channel, 2 * Integer.BYTES);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IllegalArgumentException("Unsupported stats snapshot format");
+        }
+
+        List<String> apps = new ArrayList<>();
+        List<String> uris = new ArrayList<>();
+        long rows = 0;
+        while (true) {
+            ByteBuffer blockHeader = read(channel, BLOCK_HEADER_SIZE);
+            int rawLength = blockHeader.getInt();
+            int length = blockHeader.getInt();
+            if (rawLength == 0) {
+                break;
+            }
+            if (rawLength < 0 || length <= 0) {
+                throw new IllegalArgumentException("Corrupted stats snapshot block");
+            }
+            List<Stats> block = decode(inflate(read(channel, length).array(), rawLength), apps, uris);
+            rows += block.size();
+            blocks.accept(block);
+        }
+
+        ByteBuffer trailer = read(channel, TRAILER_SIZE);
+        if (trailer.getLong() != rows || trailer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Corrupted stats snapshot trailer");
+        }
+        return rows;
+    }
+
+    private static List<Stats> decode(byte[] payload, List<String> apps, List<String> uris) {
+        Cursor cursor = new Cursor(payload);
+        int rows = (int) cursor.nextVarLong();
+        for (int i = (int) cursor.nextVarLong(); i > 0; i--) {
+            apps.add(cursor.nextString());
+        }
+        for (int i = (int) cursor.nextVarLong(); i > 0; i--) {
+            uris.add(cursor.nextString());
+        }
+
+        int[] appIndexes = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            appIndexes[i] = (int) cursor.nextVarLong();
+        }
+        int[] uriIndexes = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            uriIndexes[i] = (int) cursor.nextVarLong();
+        }
+        long[] timestamps = new long[rows];
+        long previous = 0;
+        for (int i = 0; i < rows; i++) {
+            previous += unzigzag(cursor.nextVarLong());
+            timestamps[i] = previous;
+        }
+
+        List<Stats> block = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            if (appIndexes[i] >= apps.size() || uriIndexes[i] >= uris.size()) {
+                throw new IllegalArgumentException("Corrupted stats snapshot dictionary");
+            }
+            block.add(Stats.builder()
+                    .app(apps.get(appIndexes[i]))
+                    .uri(uris.get(uriIndexes[i]))
+                    .ip(cursor.nextBytes())
+                    .timestamp(LocalDateTime.ofEpochSecond(timestamps[i], 0, ZoneOffset.UTC))
+                    .build());
+        }
+        return block;
+    }
+
+    private static byte[] inflate(byte[] source, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(source);
+            byte[] raw = new byte[rawLength];
+            int size = 0;
+            while (size < raw.length) {
+                int inflated = inflater.inflate(raw, size, raw.length - size);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalArgumentException("Truncated stats snapshot block");
+                }
+                size += inflated;
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupted stats snapshot block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static ByteBuffer read(ReadableByteChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of stats snapshot");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void write(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Cursor {
+        private final byte[] bytes;
+        private int position;
+
+        private Cursor(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long nextVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (position == bytes.length) {
+                    throw new IllegalArgumentException("Corrupted stats snapshot block");
+                }
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        byte[] nextBytes() {
+            int length = (int) nextVarLong();
+            if (length > bytes.length - position) {
+                throw new IllegalArgumentException("Corrupted stats snapshot block");
+            }
+            byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return value;
+        }
+
+        String nextString() {
+            return new String(nextBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class ColumnBuffer {
+        private byte[] bytes = new byte[4096];
+        private int size;
+
+        void put(int value) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void put(byte[] values, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(values, offset, bytes, size, length);
+            size += length;
+        }
+
+        void putVarLong(long value) {
+            while ((value & ~0x7fL) != 0) {
+                put((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            put((int) value);
+        }
+
+        void putBytes(byte[] values) {
+            putVarLong(values.length);
+            put(values, 0, values.length);
+        }
+
+        void putColumn(ColumnBuffer column) {
+            put(column.bytes, 0, column.size);
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * Streams hits into a snapshot. Hits may arrive in any order, although time-ordered hits give smaller
+     * timestamp deltas. {@link #finish} must be called to write the end marker and the trailer.
+     */
+    static final class Writer implements Closeable {
+        private final WritableByteChannel channel;
+        private final int blockRows;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final byte[] scratch = new byte[1 << 16];
+        private final Map<String, Integer> appIndexes = new HashMap<>();
+        private final Map<String, Integer> uriIndexes = new HashMap<>();
+        private final List<String> newApps = new ArrayList<>();
+        private final List<String> newUris = new ArrayList<>();
+        private final ColumnBuffer appColumn = new ColumnBuffer();
+        private final ColumnBuffer uriColumn = new ColumnBuffer();
+        private final ColumnBuffer timeColumn = new ColumnBuffer();
+        private final ColumnBuffer ipColumn = new ColumnBuffer();
+        private final ColumnBuffer payload = new ColumnBuffer();
+        private final ColumnBuffer compressed = new ColumnBuffer();
+        private int blockSize;
+        private long previous;
+        private long rows;
+
+        Writer(WritableByteChannel channel, int blockRows) throws IOException {
+            if (blockRows < 1) {
+                throw new IllegalArgumentException("Snapshot block must hold at least one row");
+            }
+            this.channel = channel;
+            this.blockRows = blockRows;
+            write(channel, ByteBuffer.allocate(2 * Integer.BYTES).putInt(MAGIC).putInt(VERSION).flip());
+        }
+
+        void add(Stats hit) throws IOException {
+            long timestamp = hit.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+            appColumn.putVarLong(index(hit.getApp(), appIndexes, newApps));
+            uriColumn.putVarLong(index(hit.getUri(), uriIndexes, newUris));
+            timeColumn.putVarLong(zigzag(timestamp - previous));
+            ipColumn.putBytes(hit.getIp());
+            previous = timestamp;
+            blockSize++;
+            if (blockSize == blockRows) {
+                flushBlock();
+            }
+        }
+
+        /**
+         * Writes the last block, the end marker and the trailer. Returns the number of hits written.
+         */
+        long finish() throws IOException {
+            flushBlock();
+            write(channel, ByteBuffer.allocate(BLOCK_HEADER_SIZE + TRAILER_SIZE)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(rows)
+                    .putInt(MAGIC)
+                    .flip());
+            return rows;
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+        }
+
+        private static int index(String name, Map<String, Integer> indexes, List<String> newNames) {
+            return indexes.computeIfAbsent(name, key -> {
+                newNames.add(key);
+                return indexes.size();
+            });
+        }
+
+        private void flushBlock() throws IOException {
+            if (blockSize == 0) {
+                return;
+            }
+            payload.putVarLong(blockSize);
+            for (List<String> names : List.of(newApps, newUris)) {
+                payload.putVarLong(names.size());
+                for (String name : names) {
+                    payload.putBytes(name.getBytes(StandardCharsets.UTF_8));
+                }
+                names.clear();
+            }
+            for (ColumnBuffer column : List.of(appColumn, uriColumn, timeColumn, ipColumn)) {
+                payload.putColumn(column);
+                column.clear();
+            }
+
+            deflater.reset();
+            deflater.setInput(payload.bytes, 0, payload.size);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int length = deflater.deflate(scratch);
+                compressed.put(scratch, 0, length);
+            }
+            write(channel, ByteBuffer.allocate(BLOCK_HEADER_SIZE).putInt(payload.size).putInt(compressed.size).flip());
+            write(channel, ByteBuffer.wrap(compressed.bytes, 0, compressed.size));
+
+            rows += blockSize;
+            blockSize = 0;
+            previous = 0;
+            payload.clear();
+            compressed.clear();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package ru.practicum.statsserver.storage;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+
+import java.lang.annotation.*;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Documented
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "jdbc", matchIfMissing = true)
+public @interface ConditionalOnJdbcStorage {
+}
@@ -0,0 +1,10 @@
+package ru.practicum.statsserver.storage;
+
+public enum DatabasePlatform {
+    POSTGRESQL,
+    H2;
+
+    public static DatabasePlatform fromProductName(String productName) {
+        return "PostgreSQL".equalsIgnoreCase(productName) ? POSTGRESQL : H2;
+    }
+}
@@ -0,0 +1,212 @@
+package ru.practicum.statsserver.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statscommon.model.ViewStats;
+import ru.practicum.statsserver.model.Stats;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+@Repository
+@ConditionalOnJdbcStorage
+@Slf4j
+public class DictionaryRepository {
+    private static final int CHUNK_SIZE = 1000;
+    private static final int INSERT_ATTEMPTS = 3;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean postgresql;
+    private final int cacheSize;
+    private final Dictionary apps = new Dictionary("stats_app", "name");
+    private final Dictionary uris = new Dictionary("stats_uri", "uri");
+
+    public DictionaryRepository(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                DatabasePlatform databasePlatform,
+                                @Value("${stats.dictionary.cache-size:100000}") int cacheSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.postgresql = databasePlatform == DatabasePlatform.POSTGRESQL;
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Sets the dictionary ids of {@code hits}, inserting the values seen for the first time in a transaction of
+     * their own. It has to be called before the transaction that writes the hits is opened: inside it, every cache
+     * miss would hold one pooled connection while waiting for a second, and a rollback of the write would leave ids
+     * of rolled back rows in the cache.
+     */
+    public void resolve(List<Stats> hits) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Dictionary ids have to be resolved before the write transaction");
+        }
+        Map<String, Integer> appIds = apps.resolve(hits.stream().map(Stats::getApp).toList());
+        Map<String, Integer> uriIds = uris.resolve(hits.stream().map(Stats::getUri).toList());
+        hits.forEach(hit -> {
+            hit.setAppId(appIds.get(hit.getApp()));
+            hit.setUriId(uriIds.get(hit.getUri()));
+        });
+    }
+
+    /**
+     * Resolves the exact URIs to their ids; values containing {@link UriPattern#WILDCARD} are kept as {@code LIKE}
+     * patterns for the query to match against the dictionary.
+     */
+    public UriFilter findUriFilter(Collection<String> values) {
+        List<String> exact = new ArrayList<>(values.size());
+        Set<String> patterns = new LinkedHashSet<>();
+        for (String value : values) {
+            if (UriPattern.isPattern(value)) {
+                patterns.add(UriPattern.toLike(value));
+            } else {
+                exact.add(value);
+            }
+        }
+        return new UriFilter(uris.find(exact).values(), List.copyOf(patterns));
+    }
+
+    /**
+     * Returns the ids of every URI selected by {@code filter}. Pattern matches are read on each call and not cached.
+     */
+    public Set<Integer> findUriIds(UriFilter filter) {
+        Set<Integer> result = new HashSet<>(filter.getIds());
+        for (String pattern : filter.getPatterns()) {
+            result.addAll(uris.match(pattern));
+        }
+        return result;
+    }
+
+    public Map<Integer, String> findAppNames(Collection<Integer> ids) {
+        return apps.findValues(ids);
+    }
+
+    public Map<Integer, String> findUriValues(Collection<Integer> ids) {
+        return uris.findValues(ids);
+    }
+
+    public List<ViewStats> toViewStats(Map<StatsKey, Long> counts) {
+        Map<Integer, String> appNames = findAppNames(counts.keySet().stream().map(StatsKey::getAppId).toList());
+        Map<Integer, String> uriValues = findUriValues(counts.keySet().stream().map(StatsKey::getUriId).toList());
+
+        List<ViewStats> result = new ArrayList<>(counts.size());
+        counts.forEach((key, hits) -> result.add(new ViewStats(appNames.get(key.getAppId()),
+                uriValues.get(key.getUriId()), hits)));
+        result.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        return result;
+    }
+
+    private class Dictionary {
+        private final String table;
+        private final String column;
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final String insertSql;
+
+        Dictionary(String table, String column) {
+            this.table = table;
+            this.column = column;
+            this.insertSql = postgresql
+                    ? "INSERT INTO " + table + " (" + column + ") VALUES (?) ON CONFLICT (" + column + ") DO NOTHING"
+                    : "MERGE INTO " + table + " AS d USING (VALUES (CAST(? AS VARCHAR(255)))) AS v (" + column + ") " +
+                    "ON d." + column + " = v." + column + " " +
+                    "WHEN NOT MATCHED THEN INSERT (" + column + ") VALUES (v." + column + ")";
+        }
+
+        Map<String, Integer> resolve(Collection<String> values) {
+            Map<String, Integer> result = new HashMap<>();
+            SortedSet<String> missing = new TreeSet<>();
+            for (String value : values) {
+                Integer id = ids.get(value);
+                if (id != null) {
+                    result.put(value, id);
+                } else {
+                    missing.add(value);
+                }
+            }
+            if (!missing.isEmpty()) {
+                result.putAll(transactionTemplate.execute(status -> insertAbsent(missing)));
+            }
+            return result;
+        }
+
+        Map<String, Integer> find(Collection<String> values) {
+            Map<String, Integer> result = new HashMap<>();
+            List<String> missing = new ArrayList<>();
+            for (String value : new HashSet<>(values)) {
+                Integer id = ids.get(value);
+                if (id != null) {
+                    result.put(value, id);
+                } else {
+                    missing.add(value);
+                }
+            }
+            result.putAll(select(missing));
+            return result;
+        }
+
+        List<Integer> match(String likePattern) {
+            return jdbcTemplate.queryForList("SELECT id FROM " + table + " WHERE " + column +
+                    " LIKE :pattern ESCAPE '\\'", new MapSqlParameterSource("pattern", likePattern), Integer.class);
+        }
+
+        Map<Integer, String> findValues(Collection<Integer> keys) {
+            Map<Integer, String> result = new HashMap<>();
+            forEachChunk(new ArrayList<>(new HashSet<>(keys)), chunk -> jdbcTemplate.query(
+                    "SELECT id, " + column + " FROM " + table + " WHERE id IN (:ids)",
+                    new MapSqlParameterSource("ids", chunk),
+                    rs -> {
+                        result.put(rs.getInt("id"), rs.getString(column));
+                    }));
+            return result;
+        }
+
+        private Map<String, Integer> insertAbsent(SortedSet<String> values) {
+            List<Object[]> batch = values.stream().map(value -> new Object[]{value}).toList();
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    jdbcTemplate.getJdbcTemplate().batchUpdate(insertSql, batch);
+                    break;
+                } catch (DuplicateKeyException e) {
+                    if (attempt == INSERT_ATTEMPTS) {
+                        throw e;
+                    }
+                    log.debug("Concurrent insert into {}, retrying", table);
+                }
+            }
+            return select(new ArrayList<>(values));
+        }
+
+        private Map<String, Integer> select(List<String> values) {
+            Map<String, Integer> result = new HashMap<>();
+            forEachChunk(values, chunk -> jdbcTemplate.query(
+                    "SELECT id, " + column + " FROM " + table + " WHERE " + column + " IN (:values)",
+                    new MapSqlParameterSource("values", chunk),
+                    rs -> {
+                        result.put(rs.getString(column), rs.getInt("id"));
+                    }));
+            cache(result);
+            return result;
+        }
+
+        private void cache(Map<String, Integer> values) {
+            if (ids.size() + values.size() > cacheSize) {
+                ids.clear();
+            }
+            ids.putAll(values);
+        }
+
+        private <T> void forEachChunk(List<T> values, Consumer<List<T>> action) {
+            for (int from = 0; from < values.size(); from += CHUNK_SIZE) {
+                action.accept(values.subList(from, Math.min(from + CHUNK_SIZE, values.size())));
+            }
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package ru.practicum.statsserver.storage;
+
+@FunctionalInterface
+public interface HitVisitor {
+    void accept(NamedStatsKey key, byte[] ip);
+}
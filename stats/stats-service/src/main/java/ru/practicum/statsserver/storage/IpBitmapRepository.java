@@ -0,0 +1,310 @@
+package ru.practicum.statsserver.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statscommon.model.ViewStats;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.sketch.Ipv4Bitmap;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Exact distinct counts from hourly {@link Ipv4Bitmap}s in {@code stats_ip_hour}. Whole hours of a range are
+ * answered by OR-ing their bitmaps and the ragged edges by raw hits.
+ * <p>
+ * Writes only append the addresses to {@code stats_ip_pending}, so they neither lock nor rewrite a bitmap; every
+ * {@code stats.bitmap.merge-interval-ms} the pending addresses are taken in batches of
+ * {@code stats.bitmap.merge-batch-size} and OR-ed into the bitmaps in one transaction each. Queries add the pending
+ * addresses of their hours, so they stay exact in between.
+ * <p>
+ * IPv6 addresses are not kept in the bitmaps but in {@code stats_ip6_hour}, one row per hour, key and address, so
+ * the distinct counts of whole hours do not depend on the {@code stats} table and survive its archiving.
+ */
+@Repository
+@ConditionalOnJdbcStorage
+@Slf4j
+public class IpBitmapRepository {
+    private static final int LOCK_CHUNK_SIZE = 500;
+    private static final int STREAM_BATCH_SIZE = 1000;
+
+    private static final String INSERT_PENDING = "INSERT INTO stats_ip_pending (bucket, app_id, uri_id, user_ip) " +
+            "VALUES (?, ?, ?, ?)";
+
+    private static final String PENDING_BATCH = "DELETE FROM stats_ip_pending " +
+            "WHERE id IN (SELECT id FROM stats_ip_pending ORDER BY id LIMIT :limit)";
+
+    private static final String TAKE_PENDING = PENDING_BATCH + " RETURNING bucket, app_id, uri_id, user_ip";
+
+    private static final String SELECT_TAKEN_PENDING = "SELECT bucket, app_id, uri_id, user_ip FROM OLD TABLE (" +
+            PENDING_BATCH + ")";
+
+    private static final String MERGE_ABSENT = "MERGE INTO stats_ip_hour AS s " +
+            "USING (VALUES (CAST(? AS TIMESTAMP), CAST(? AS INTEGER), CAST(? AS INTEGER))) " +
+            "AS v (bucket, app_id, uri_id) " +
+            "ON s.bucket = v.bucket AND s.app_id = v.app_id AND s.uri_id = v.uri_id " +
+            "WHEN NOT MATCHED THEN INSERT (bucket, app_id, uri_id, bitmap) " +
+            "VALUES (v.bucket, v.app_id, v.uri_id, ?)";
+
+    private static final String INSERT_ABSENT = "INSERT INTO stats_ip_hour (bucket, app_id, uri_id, bitmap) " +
+            "VALUES (?, ?, ?, ?) ON CONFLICT (bucket, app_id, uri_id) DO NOTHING";
+
+    private static final String MERGE_ABSENT_IPV6 = "MERGE INTO stats_ip6_hour AS s " +
+            "USING (VALUES (CAST(? AS TIMESTAMP), CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS BYTEA))) " +
+            "AS v (bucket, app_id, uri_id, user_ip) " +
+            "ON s.bucket = v.bucket AND s.app_id = v.app_id AND s.uri_id = v.uri_id AND s.user_ip = v.user_ip " +
+            "WHEN NOT MATCHED THEN INSERT (bucket, app_id, uri_id, user_ip) " +
+            "VALUES (v.bucket, v.app_id, v.uri_id, v.user_ip)";
+
+    private static final String INSERT_ABSENT_IPV6 = "INSERT INTO stats_ip6_hour (bucket, app_id, uri_id, user_ip) " +
+            "VALUES (?, ?, ?, ?) ON CONFLICT (bucket, app_id, uri_id, user_ip) DO NOTHING";
+
+    private static final String UPDATE_BITMAP = "UPDATE stats_ip_hour SET bitmap = ? " +
+            "WHERE bucket = ? AND app_id = ? AND uri_id = ?";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final DictionaryRepository dictionaryRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int mergeBatchSize;
+    private final String insertAbsentSql;
+    private final String insertAbsentIpv6Sql;
+    private final String takePendingSql;
+
+    public IpBitmapRepository(NamedParameterJdbcTemplate jdbcTemplate, DictionaryRepository dictionaryRepository,
+                              DatabasePlatform databasePlatform, PlatformTransactionManager transactionManager,
+                              @Value("${stats.bitmap.enabled:true}") boolean enabled,
+                              @Value("${stats.bitmap.merge-batch-size:50000}") int mergeBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dictionaryRepository = dictionaryRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.mergeBatchSize = mergeBatchSize;
+        boolean postgresql = databasePlatform == DatabasePlatform.POSTGRESQL;
+        this.insertAbsentSql = postgresql ? INSERT_ABSENT : MERGE_ABSENT;
+        this.insertAbsentIpv6Sql = postgresql ? INSERT_ABSENT_IPV6 : MERGE_ABSENT_IPV6;
+        this.takePendingSql = postgresql ? TAKE_PENDING : SELECT_TAKEN_PENDING;
+    }
+
+    public void add(List<Stats> hits) {
+        Map<RollupKey, Set<ByteBuffer>> hours = new HashMap<>();
+        for (Stats hit : hits) {
+            hours.computeIfAbsent(new RollupKey(hit.getTimestamp().truncatedTo(ChronoUnit.HOURS),
+                    hit.getAppId(), hit.getUriId()), key -> new HashSet<>()).add(ByteBuffer.wrap(hit.getIp()));
+        }
+
+        List<Object[]> pending = new ArrayList<>();
+        hours.forEach((key, addresses) -> addresses.forEach(ip -> pending.add(new Object[]{
+                Timestamp.valueOf(key.getBucket()), key.getAppId(), key.getUriId(), ip.array()})));
+        jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT_PENDING, pending);
+    }
+
+    @Scheduled(fixedDelayString = "${stats.bitmap.merge-interval-ms:1000}",
+            initialDelayString = "${stats.bitmap.merge-interval-ms:1000}")
+    public void mergePending() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Integer merged;
+            do {
+                merged = transactionTemplate.execute(status -> mergeBatch());
+            } while (merged != null && merged == mergeBatchSize);
+        } catch (RuntimeException e) {
+            log.error("Failed to merge pending addresses into the hourly bitmaps", e);
+        }
+    }
+
+    /**
+     * Takes up to {@code stats.bitmap.merge-batch-size} pending addresses and merges them; the bitmaps are locked
+     * in key order, so concurrent merges cannot deadlock. Returns the number of addresses taken.
+     */
+    private int mergeBatch() {
+        Map<RollupKey, Addresses> hours = new TreeMap<>();
+        int[] taken = new int[1];
+        jdbcTemplate.query(takePendingSql, new MapSqlParameterSource("limit", mergeBatchSize), rs -> {
+            hours.computeIfAbsent(new RollupKey(rs.getTimestamp("bucket").toLocalDateTime(),
+                    rs.getInt("app_id"), rs.getInt("uri_id")), key -> new Addresses()).add(rs.getBytes("user_ip"));
+            taken[0]++;
+        });
+
+        List<Object[]> ipv6 = new ArrayList<>();
+        hours.forEach((key, addresses) -> {
+            if (addresses.ipv6Addresses != null) {
+                addresses.ipv6Addresses.forEach(ip -> ipv6.add(new Object[]{Timestamp.valueOf(key.getBucket()),
+                        key.getAppId(), key.getUriId(), ip.array()}));
+            }
+        });
+        jdbcTemplate.getJdbcTemplate().batchUpdate(insertAbsentIpv6Sql, ipv6);
+
+        hours.values().removeIf(addresses -> addresses.bitmap.cardinality() == 0);
+        jdbcTemplate.getJdbcTemplate().batchUpdate(insertAbsentSql, hours.entrySet().stream()
+                .map(entry -> new Object[]{Timestamp.valueOf(entry.getKey().getBucket()),
+                        entry.getKey().getAppId(), entry.getKey().getUriId(), entry.getValue().bitmap.toBytes()})
+                .toList());
+
+        List<Object[]> updates = new ArrayList<>();
+        List<RollupKey> keys = new ArrayList<>(hours.keySet());
+        for (int from = 0; from < keys.size(); from += LOCK_CHUNK_SIZE) {
+            List<RollupKey> chunk = keys.subList(from, Math.min(from + LOCK_CHUNK_SIZE, keys.size()));
+            lockBitmaps(chunk).forEach((key, stored) -> {
+                long before = stored.cardinality();
+                stored.or(hours.get(key).bitmap);
+                if (stored.cardinality() != before) {
+                    updates.add(new Object[]{stored.toBytes(), Timestamp.valueOf(key.getBucket()),
+                            key.getAppId(), key.getUriId()});
+                }
+            });
+        }
+        jdbcTemplate.getJdbcTemplate().batchUpdate(UPDATE_BITMAP, updates);
+        return taken[0];
+    }
+
+    public List<ViewStats> getDistinctStats(RollupPlan plan, UriFilter uris) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        Map<StatsKey, Long> counts = new HashMap<>();
+        count(plan, StatsSql.uriCondition(uris, parameters), parameters, counts::put);
+        return dictionaryRepository.toViewStats(counts);
+    }
+
+    public void streamDistinctStats(RollupPlan plan, UriFilter uris, Consumer<ViewStats> consumer) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        Map<StatsKey, Long> batch = new HashMap<>();
+        count(plan, StatsSql.uriCondition(uris, parameters), parameters, (key, count) -> {
+            batch.put(key, count);
+            if (batch.size() == STREAM_BATCH_SIZE) {
+                dictionaryRepository.toViewStats(batch).forEach(consumer);
+                batch.clear();
+            }
+        });
+        dictionaryRepository.toViewStats(batch).forEach(consumer);
+    }
+
+    public List<ViewStats> getDistinctTop(RollupPlan plan, String uriPrefix, int limit) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        PriorityQueue<Map.Entry<StatsKey, Long>> top = new PriorityQueue<>(limit + 1, Map.Entry.comparingByValue());
+        count(plan, StatsSql.uriPrefixCondition(uriPrefix, parameters), parameters, (key, count) -> {
+            if (top.size() < limit || count > top.peek().getValue()) {
+                top.add(Map.entry(key, count));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+        });
+
+        Map<StatsKey, Long> counts = new HashMap<>();
+        top.forEach(entry -> counts.put(entry.getKey(), entry.getValue()));
+        return dictionaryRepository.toViewStats(counts);
+    }
+
+    /**
+     * Hands the exact distinct count of every key to {@code sink}. The addresses of the edges, the pending addresses
+     * and the IPv6 addresses of the whole hours are collected first; the hourly bitmaps are then read in key order,
+     * so that only one merged bitmap of the hours is held at a time. Pending addresses are read before the bitmaps,
+     * so an address merged in between is found in the bitmaps instead of being missed.
+     */
+    private void count(RollupPlan plan, String uriFilter, MapSqlParameterSource parameters,
+                       BiConsumer<StatsKey, Long> sink) {
+        Map<StatsKey, Addresses> extra = new HashMap<>();
+        if (!plan.getRaw().isEmpty()) {
+            addAddresses("SELECT app_id, uri_id, user_ip FROM stats WHERE " +
+                    StatsSql.rangeCondition("created", "r", plan.getRaw(), parameters) + uriFilter, parameters, extra);
+        }
+
+        if (!plan.getHours().isEmpty()) {
+            String hourCondition = StatsSql.rangeCondition("bucket", "h", plan.getHours(), parameters);
+            addAddresses("SELECT app_id, uri_id, user_ip FROM stats_ip_pending WHERE " + hourCondition + uriFilter,
+                    parameters, extra);
+            addAddresses("SELECT app_id, uri_id, user_ip FROM stats_ip6_hour WHERE " + hourCondition + uriFilter,
+                    parameters, extra);
+
+            Ipv4Bitmap[] current = new Ipv4Bitmap[1];
+            StatsKey[] currentKey = new StatsKey[1];
+            jdbcTemplate.query("SELECT app_id, uri_id, bitmap FROM stats_ip_hour WHERE " + hourCondition +
+                    uriFilter + " ORDER BY app_id, uri_id", parameters, rs -> {
+                        StatsKey key = new StatsKey(rs.getInt("app_id"), rs.getInt("uri_id"));
+                        if (!key.equals(currentKey[0])) {
+                            addCount(sink, currentKey[0], current[0], extra);
+                            currentKey[0] = key;
+                            current[0] = new Ipv4Bitmap();
+                        }
+                        current[0].or(Ipv4Bitmap.fromBytes(rs.getBytes("bitmap")));
+                    });
+            addCount(sink, currentKey[0], current[0], extra);
+        }
+        extra.forEach((key, addresses) -> sink.accept(key, addresses.count()));
+    }
+
+    private void addAddresses(String sql, MapSqlParameterSource parameters, Map<StatsKey, Addresses> extra) {
+        jdbcTemplate.query(sql, parameters, rs -> {
+            extra.computeIfAbsent(new StatsKey(rs.getInt("app_id"), rs.getInt("uri_id")),
+                    key -> new Addresses()).add(rs.getBytes("user_ip"));
+        });
+    }
+
+    private Map<RollupKey, Ipv4Bitmap> lockBitmaps(List<RollupKey> keys) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        List<String> tuples = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            parameters.addValue("b" + i, Timestamp.valueOf(keys.get(i).getBucket()));
+            parameters.addValue("a" + i, keys.get(i).getAppId());
+            parameters.addValue("u" + i, keys.get(i).getUriId());
+            tuples.add("(:b" + i + ", :a" + i + ", :u" + i + ")");
+        }
+
+        Map<RollupKey, Ipv4Bitmap> stored = new TreeMap<>();
+        jdbcTemplate.query("SELECT bucket, app_id, uri_id, bitmap FROM stats_ip_hour " +
+                "WHERE (bucket, app_id, uri_id) IN (" + String.join(", ", tuples) + ") FOR UPDATE", parameters, rs -> {
+                    stored.put(new RollupKey(rs.getTimestamp("bucket").toLocalDateTime(),
+                            rs.getInt("app_id"), rs.getInt("uri_id")), Ipv4Bitmap.fromBytes(rs.getBytes("bitmap")));
+                });
+        return stored;
+    }
+
+    private void addCount(BiConsumer<StatsKey, Long> sink, StatsKey key, Ipv4Bitmap hours,
+                          Map<StatsKey, Addresses> extra) {
+        if (key == null) {
+            return;
+        }
+        Addresses addresses = extra.remove(key);
+        if (addresses == null) {
+            sink.accept(key, hours.cardinality());
+            return;
+        }
+        addresses.bitmap.or(hours);
+        sink.accept(key, addresses.count());
+    }
+
+    /**
+     * IPv4 addresses as a bitmap and the distinct IPv6 addresses, if any.
+     */
+    private static final class Addresses {
+        private final Ipv4Bitmap bitmap = new Ipv4Bitmap();
+        private Set<ByteBuffer> ipv6Addresses;
+
+        void add(byte[] ip) {
+            if (Ipv4Bitmap.isIpv4(ip)) {
+                bitmap.add(ip);
+                return;
+            }
+            if (ipv6Addresses == null) {
+                ipv6Addresses = new HashSet<>();
+            }
+            ipv6Addresses.add(ByteBuffer.wrap(ip));
+        }
+
+        long count() {
+            return bitmap.cardinality() + (ipv6Addresses == null ? 0 : ipv6Addresses.size());
+        }
+    }
+}
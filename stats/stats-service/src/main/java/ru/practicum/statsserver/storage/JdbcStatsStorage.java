@@ -0,0 +1,346 @@
+package ru.practicum.statsserver.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.statscommon.model.UniqueMode;
+import ru.practicum.statscommon.model.ViewStats;
+import ru.practicum.statscommon.model.ViewStatsSeries;
+import ru.practicum.statsserver.ingest.HitWriter;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.sketch.HyperLogLog;
+import ru.practicum.statsserver.storage.archive.StatsArchive;
+import ru.practicum.statsserver.window.HotWindow;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Consumer;
+
+@Component
+@ConditionalOnJdbcStorage
+@Transactional(readOnly = true)
+public class JdbcStatsStorage implements StatsStorage {
+    private final HitWriter hitWriter;
+    private final StatsRepository statsRepository;
+    private final RollupRepository rollupRepository;
+    private final SketchRepository sketchRepository;
+    private final IpBitmapRepository ipBitmapRepository;
+    private final TimeSeriesRepository timeSeriesRepository;
+    private final DictionaryRepository dictionaryRepository;
+    private final HotWindow hotWindow;
+    private final StatsArchive archive;
+    private final SlicedQueryExecutor slicedQueryExecutor;
+    private final boolean rollupEnabled;
+    private final boolean sketchEnabled;
+    private final boolean bitmapEnabled;
+
+    public JdbcStatsStorage(HitWriter hitWriter, StatsRepository statsRepository, RollupRepository rollupRepository,
+                            SketchRepository sketchRepository, IpBitmapRepository ipBitmapRepository,
+                            TimeSeriesRepository timeSeriesRepository,
+                            DictionaryRepository dictionaryRepository, HotWindow hotWindow, StatsArchive archive,
+                            SlicedQueryExecutor slicedQueryExecutor,
+                            @Value("${stats.rollup.enabled:true}") boolean rollupEnabled,
+                            @Value("${stats.sketch.enabled:true}") boolean sketchEnabled,
+                            @Value("${stats.bitmap.enabled:true}") boolean bitmapEnabled) {
+        this.hitWriter = hitWriter;
+        this.statsRepository = statsRepository;
+        this.rollupRepository = rollupRepository;
+        this.sketchRepository = sketchRepository;
+        this.ipBitmapRepository = ipBitmapRepository;
+        this.timeSeriesRepository = timeSeriesRepository;
+        this.dictionaryRepository = dictionaryRepository;
+        this.hotWindow = hotWindow;
+        this.archive = archive;
+        this.slicedQueryExecutor = slicedQueryExecutor;
+        this.rollupEnabled = rollupEnabled;
+        this.sketchEnabled = sketchEnabled;
+        this.bitmapEnabled = bitmapEnabled;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void write(List<Stats> hits) {
+        dictionaryRepository.resolve(hits);
+        hitWriter.write(hits);
+    }
+
+    @Override
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique) {
+        if (archive.covers(start)) {
+            return getArchivedStats(start, end, uris, unique);
+        }
+        UriFilter uriFilter = findUriFilter(uris);
+        if (uriFilter != null && uriFilter.isEmpty()) {
+            return List.of();
+        }
+
+        if (rollupEnabled && unique == UniqueMode.NONE) {
+            TimeRange hot = hotWindow.coverage(start, end.plusSeconds(1));
+            if (hot != null) {
+                return getHotStats(start, end, hot, uriFilter);
+            }
+            return rollupRepository.getStats(RollupPlan.of(start, end), uriFilter);
+        }
+        if (sketchEnabled && unique == UniqueMode.APPROX) {
+            return sketchRepository.getApproxStats(RollupPlan.ofHours(start, end), uriFilter);
+        }
+        if (bitmapEnabled && unique == UniqueMode.EXACT) {
+            return ipBitmapRepository.getDistinctStats(RollupPlan.ofHours(start, end), uriFilter);
+        }
+        boolean distinctIp = unique != UniqueMode.NONE;
+        return slicedQueryExecutor.count(start, end, uriFilter, distinctIp)
+                .map(dictionaryRepository::toViewStats)
+                .orElseGet(() -> statsRepository.getRawStats(start, end, uriFilter, distinctIp));
+    }
+
+    @Override
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique,
+                            Consumer<ViewStats> consumer) {
+        if (archive.covers(start)) {
+            getArchivedStats(start, end, uris, unique).forEach(consumer);
+            return;
+        }
+        UriFilter uriFilter = findUriFilter(uris);
+        if (uriFilter != null && uriFilter.isEmpty()) {
+            return;
+        }
+
+        if (rollupEnabled && unique == UniqueMode.NONE) {
+            rollupRepository.streamStats(RollupPlan.of(start, end), uriFilter, consumer);
+        } else if (sketchEnabled && unique == UniqueMode.APPROX) {
+            sketchRepository.streamApproxStats(RollupPlan.ofHours(start, end), uriFilter, consumer);
+        } else if (bitmapEnabled && unique == UniqueMode.EXACT) {
+            ipBitmapRepository.streamDistinctStats(RollupPlan.ofHours(start, end), uriFilter, consumer);
+        } else {
+            boolean distinctIp = unique != UniqueMode.NONE;
+            slicedQueryExecutor.count(start, end, uriFilter, distinctIp).ifPresentOrElse(
+                    counts -> dictionaryRepository.toViewStats(counts).forEach(consumer),
+                    () -> statsRepository.streamRawStats(start, end, uriFilter, distinctIp, consumer));
+        }
+    }
+
+    @Override
+    public List<ViewStats> getTop(LocalDateTime start, LocalDateTime end, int limit, UniqueMode unique, String prefix) {
+        if (rollupEnabled && unique == UniqueMode.NONE) {
+            RollupPlan plan = RollupPlan.of(start, end);
+            if (!readsArchivedHits(plan)) {
+                return rollupRepository.getTop(plan, prefix, limit);
+            }
+        } else if (sketchEnabled && unique == UniqueMode.APPROX) {
+            RollupPlan plan = RollupPlan.ofHours(start, end);
+            if (!readsArchivedHits(plan)) {
+                return sketchRepository.getApproxTop(plan, prefix, limit);
+            }
+        } else if (bitmapEnabled && unique == UniqueMode.EXACT) {
+            RollupPlan plan = RollupPlan.ofHours(start, end);
+            if (!readsArchivedHits(plan)) {
+                return ipBitmapRepository.getDistinctTop(plan, prefix, limit);
+            }
+        } else if (!archive.covers(start)) {
+            return statsRepository.getRawTop(start, end, prefix, limit, unique != UniqueMode.NONE);
+        }
+        List<String> uris = prefix == null || prefix.isEmpty() ? null : List.of(prefix + UriPattern.WILDCARD);
+        List<ViewStats> stats = getArchivedStats(start, end, uris, unique);
+        return stats.subList(0, Math.min(limit, stats.size()));
+    }
+
+    @Override
+    public List<ViewStatsSeries> getTimeSeries(LocalDateTime start, LocalDateTime end, Duration step, List<String> uris,
+                                               UniqueMode unique) {
+        UriFilter uriFilter = findUriFilter(uris);
+        if (uriFilter != null && uriFilter.isEmpty()) {
+            return List.of();
+        }
+
+        TimeBuckets buckets = new TimeBuckets(start, end.plusSeconds(1), step);
+        if (unique == UniqueMode.NONE) {
+            ChronoUnit coarsest = ChronoUnit.SECONDS;
+            if (rollupEnabled && buckets.isAlignedTo(ChronoUnit.HOURS)) {
+                coarsest = ChronoUnit.HOURS;
+            } else if (rollupEnabled && buckets.isAlignedTo(ChronoUnit.MINUTES)) {
+                coarsest = ChronoUnit.MINUTES;
+            }
+            RollupPlan plan = RollupPlan.of(start, end, coarsest);
+            if (readsArchivedHits(plan)) {
+                throw archivedSeries();
+            }
+            return timeSeriesRepository.getCounts(buckets, plan, uriFilter);
+        }
+        if (sketchEnabled && unique == UniqueMode.APPROX && buckets.isAlignedTo(ChronoUnit.HOURS)) {
+            RollupPlan plan = RollupPlan.ofHours(start, end);
+            if (readsArchivedHits(plan)) {
+                throw archivedSeries();
+            }
+            return timeSeriesRepository.getApproxCounts(buckets, plan, uriFilter);
+        }
+        if (archive.covers(start)) {
+            throw archivedSeries();
+        }
+        return timeSeriesRepository.getDistinctCounts(buckets, uriFilter);
+    }
+
+    @Override
+    public void exportHits(List<String> uris, Consumer<Stats> consumer) {
+        if (archive.isEnabled()) {
+            archive.exportHits(uris == null || uris.isEmpty() ? null : uris, consumer);
+        }
+        UriFilter uriFilter = findUriFilter(uris);
+        if (uriFilter == null || !uriFilter.isEmpty()) {
+            statsRepository.exportRawHits(uriFilter, consumer);
+        }
+    }
+
+    @Override
+    @Transactional
+    public void clear() {
+        statsRepository.deleteAllHits();
+        hotWindow.clear();
+        archive.clear();
+    }
+
+    /**
+     * Returns whether {@code plan} reads raw hits that have been moved to the archive.
+     */
+    private boolean readsArchivedHits(RollupPlan plan) {
+        return plan.getRaw().stream().anyMatch(range -> archive.covers(range.getFrom()));
+    }
+
+    /**
+     * The archive answers range totals only, so a time series can't read raw hits of archived days.
+     */
+    private IllegalArgumentException archivedSeries() {
+        return new IllegalArgumentException("Hits before " + archive.getArchivedUntil() +
+                " are archived, their time series are only available from rollups");
+    }
+
+    private UriFilter findUriFilter(List<String> uris) {
+        if (uris == null || uris.isEmpty()) {
+            return null;
+        }
+        return dictionaryRepository.findUriFilter(uris);
+    }
+
+    private List<ViewStats> getHotStats(LocalDateTime start, LocalDateTime end, TimeRange hot,
+                                        UriFilter uriFilter) {
+        Map<StatsKey, Long> counts = hotWindow.count(hot,
+                uriFilter == null ? null : dictionaryRepository.findUriIds(uriFilter));
+
+        List<TimeRange> cold = new ArrayList<>();
+        if (start.isBefore(hot.getFrom())) {
+            cold.add(new TimeRange(start, hot.getFrom()));
+        }
+        if (hot.getTo().isBefore(end.plusSeconds(1))) {
+            cold.add(new TimeRange(hot.getTo(), end.plusSeconds(1)));
+        }
+        if (!cold.isEmpty()) {
+            rollupRepository.getCounts(RollupPlan.of(cold), uriFilter)
+                    .forEach((key, hits) -> counts.merge(key, hits, Long::sum));
+        }
+        return dictionaryRepository.toViewStats(counts);
+    }
+
+    /**
+     * Reads {@code [start, archivedUntil)} from the archive and the rest of the range from the database. Hit counts
+     * are added up; distinct counts merge the address sets or sketches of both parts. Late hits of archived days
+     * are still read from the table.
+     */
+    private List<ViewStats> getArchivedStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                             UniqueMode unique) {
+        LocalDateTime to = end.plusSeconds(1);
+        LocalDateTime boundary = archive.getArchivedUntil();
+        boolean live = boundary.isBefore(to);
+        TimeRange archived = new TimeRange(start, live ? boundary : to);
+        List<String> archiveUris = uris == null || uris.isEmpty() ? null : uris;
+
+        Map<NamedStatsKey, Long> counts = new HashMap<>();
+        if (unique == UniqueMode.NONE) {
+            counts.putAll(archive.countHits(archived, archiveUris));
+            forEachLateHit(archived, uris, (key, ip) -> counts.merge(key, 1L, Long::sum));
+            if (live) {
+                getStats(boundary, end, uris, unique).forEach(stats -> counts.merge(
+                        new NamedStatsKey(stats.getApp(), stats.getUri()), stats.getHits(), Long::sum));
+            }
+        } else if (unique == UniqueMode.EXACT) {
+            Map<NamedStatsKey, Set<ByteBuffer>> ips = new HashMap<>();
+            archive.forEachHit(archived, archiveUris, (key, ip) -> ips.computeIfAbsent(key, k -> new HashSet<>())
+                    .add(ByteBuffer.wrap(ip)));
+            // The table is read key by key with its addresses made distinct by the database, so a key is counted
+            // and its set released once its rows end.
+            NamedStatsKey[] current = new NamedStatsKey[1];
+            forEachDistinctLiveIp(new TimeRange(start, to), uris, (key, ip) -> {
+                if (!key.equals(current[0])) {
+                    if (current[0] != null) {
+                        counts.put(current[0], (long) ips.remove(current[0]).size());
+                    }
+                    current[0] = key;
+                }
+                ips.computeIfAbsent(key, k -> new HashSet<>()).add(ByteBuffer.wrap(ip));
+            });
+            ips.forEach((key, set) -> counts.put(key, (long) set.size()));
+        } else {
+            Map<NamedStatsKey, HyperLogLog> sketches = new HashMap<>();
+            HitVisitor collector = (key, ip) -> sketches.computeIfAbsent(key, k -> new HyperLogLog()).add(ip);
+            archive.forEachHit(archived, archiveUris, collector);
+            forEachLateHit(archived, uris, collector);
+            if (live) {
+                mergeLiveSketches(boundary, end, uris, sketches);
+            }
+            sketches.forEach((key, sketch) -> counts.put(key, sketch.estimate()));
+        }
+
+        List<ViewStats> result = new ArrayList<>(counts.size());
+        counts.forEach((key, hits) -> result.add(new ViewStats(key.getApp(), key.getUri(), hits)));
+        result.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        return result;
+    }
+
+    /**
+     * Visits the hits of the archived {@code range} that reached the table after their day had been archived. They
+     * stay in the table until the next archive run.
+     */
+    private void forEachLateHit(TimeRange range, List<String> uris, HitVisitor visitor) {
+        forEachLiveHit(range.getFrom(), range.getTo().minusSeconds(1), uris, visitor);
+    }
+
+    private void forEachDistinctLiveIp(TimeRange range, List<String> uris, HitVisitor visitor) {
+        UriFilter uriFilter = findUriFilter(uris);
+        if (uriFilter == null || !uriFilter.isEmpty()) {
+            statsRepository.forEachDistinctRawIp(range, uriFilter, visitor);
+        }
+    }
+
+    private void forEachLiveHit(LocalDateTime start, LocalDateTime end, List<String> uris, HitVisitor visitor) {
+        UriFilter uriFilter = findUriFilter(uris);
+        if (uriFilter == null || !uriFilter.isEmpty()) {
+            statsRepository.forEachRawHit(start, end, uriFilter, visitor);
+        }
+    }
+
+    private void mergeLiveSketches(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                   Map<NamedStatsKey, HyperLogLog> sketches) {
+        if (!sketchEnabled) {
+            forEachLiveHit(start, end, uris,
+                    (key, ip) -> sketches.computeIfAbsent(key, k -> new HyperLogLog()).add(ip));
+            return;
+        }
+        UriFilter uriFilter = findUriFilter(uris);
+        if (uriFilter != null && uriFilter.isEmpty()) {
+            return;
+        }
+        Map<StatsKey, HyperLogLog> live = sketchRepository.getSketches(RollupPlan.ofHours(start, end), uriFilter);
+        Map<Integer, String> appNames = dictionaryRepository.findAppNames(live.keySet().stream()
+                .map(StatsKey::getAppId).toList());
+        Map<Integer, String> uriValues = dictionaryRepository.findUriValues(live.keySet().stream()
+                .map(StatsKey::getUriId).toList());
+        live.forEach((key, sketch) -> sketches.merge(
+                new NamedStatsKey(appNames.get(key.getAppId()), uriValues.get(key.getUriId())), sketch,
+                (archived, recent) -> {
+                    archived.merge(recent);
+                    return archived;
+                }));
+    }
+}
@@ -0,0 +1,98 @@
+package ru.practicum.statsserver.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statsserver.ingest.HitWriter;
+import ru.practicum.statsserver.mapper.IpAddressMapper;
+import ru.practicum.statsserver.model.Stats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves rows of the string-based {@code stats} table, renamed to {@code stats.migration.legacy-table} before the
+ * upgrade, into the dictionary-encoded schema. Every chunk is written and deleted from the legacy table in one
+ * transaction, so an interrupted migration resumes where it stopped on the next start. The dictionary ids of a
+ * chunk are resolved before its transaction opens.
+ */
+@Component
+@ConditionalOnJdbcStorage
+@ConditionalOnExpression("'${stats.migration.legacy-table:}' != ''")
+@Slf4j
+public class LegacyStatsMigrator {
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final HitWriter hitWriter;
+    private final DictionaryRepository dictionaryRepository;
+    private final String legacyTable;
+    private final int chunkSize;
+
+    public LegacyStatsMigrator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                               HitWriter hitWriter, DictionaryRepository dictionaryRepository,
+                               @Value("${stats.migration.legacy-table}") String legacyTable,
+                               @Value("${stats.migration.chunk-size:10000}") int chunkSize) {
+        if (!legacyTable.matches("[A-Za-z_][A-Za-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid legacy table name " + legacyTable);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.hitWriter = hitWriter;
+        this.dictionaryRepository = dictionaryRepository;
+        this.legacyTable = legacyTable;
+        this.chunkSize = chunkSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        long total = 0;
+        int read;
+        do {
+            read = migrateChunk();
+            total += read;
+            if (read > 0) {
+                log.info("Processed {} rows of {}", total, legacyTable);
+            }
+        } while (read > 0);
+        log.info("Migration from {} finished, {} rows processed", legacyTable, total);
+    }
+
+    private int migrateChunk() {
+        List<Stats> hits = new ArrayList<>();
+        long[] lastId = {-1};
+        int[] read = {0};
+        jdbcTemplate.query("SELECT id, app_name, uri, user_ip, created FROM " + legacyTable +
+                " ORDER BY id LIMIT ?", rs -> {
+                    lastId[0] = rs.getLong("id");
+                    read[0]++;
+                    try {
+                        hits.add(Stats.builder()
+                                .app(rs.getString("app_name"))
+                                .uri(rs.getString("uri"))
+                                .ip(IpAddressMapper.toBytes(rs.getString("user_ip")))
+                                .timestamp(rs.getTimestamp("created").toLocalDateTime())
+                                .build());
+                    } catch (IllegalArgumentException e) {
+                        log.warn("Skipping legacy hit {} with invalid ip {}", lastId[0], rs.getString("user_ip"));
+                    }
+                }, chunkSize);
+
+        if (read[0] == 0) {
+            return 0;
+        }
+        dictionaryRepository.resolve(hits);
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!hits.isEmpty()) {
+                hitWriter.write(hits);
+            }
+            jdbcTemplate.update("DELETE FROM " + legacyTable + " WHERE id <= ?", lastId[0]);
+        });
+        return read[0];
+    }
+}
@@ -0,0 +1,14 @@
+package ru.practicum.statsserver.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+public class NamedStatsKey {
+    private final String app;
+
+    private final String uri;
+}
@@ -0,0 +1,37 @@
+package ru.practicum.statsserver.storage;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+
+public enum PartitionGranularity {
+    DAILY(DateTimeFormatter.ofPattern("yyyyMMdd")),
+    MONTHLY(DateTimeFormatter.ofPattern("yyyyMM"));
+
+    private final DateTimeFormatter suffixFormatter;
+
+    PartitionGranularity(DateTimeFormatter suffixFormatter) {
+        this.suffixFormatter = suffixFormatter;
+    }
+
+    public LocalDate floor(LocalDate date) {
+        return this == DAILY ? date : date.with(TemporalAdjusters.firstDayOfMonth());
+    }
+
+    public LocalDate next(LocalDate start) {
+        return this == DAILY ? start.plusDays(1) : start.plusMonths(1);
+    }
+
+    public String suffix(LocalDate start) {
+        return start.format(suffixFormatter);
+    }
+
+    public LocalDate parseSuffix(String suffix) {
+        return this == DAILY ? LocalDate.parse(suffix, suffixFormatter)
+                : LocalDate.parse(suffix + "01", DAILY.suffixFormatter);
+    }
+
+    public static PartitionGranularity ofSuffix(String suffix) {
+        return suffix.length() == 6 ? MONTHLY : DAILY;
+    }
+}
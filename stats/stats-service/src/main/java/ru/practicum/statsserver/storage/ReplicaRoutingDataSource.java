@@ -0,0 +1,217 @@
+package ru.practicum.statsserver.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions to a healthy replica, round-robin, and everything else to the primary. A replica is
+ * healthy while its health check succeeds and, on PostgreSQL, it is streaming WAL from the primary and has replayed
+ * the primary's writes within {@code maxLag}. With no healthy replica reads go to the primary. The read-only flag is
+ * only known once the transaction has started, so the data source has to be wrapped in a lazy connection proxy.
+ * <p>
+ * The lag is measured against the primary rather than from the replica's own view of the WAL it received: every
+ * check writes the current time of this instance into its row of {@code stats_heartbeat} on the primary, and a
+ * replica lags by the time since the first heartbeat it has not replayed yet. A replica whose WAL receiver is gone,
+ * not streaming or silent for longer than {@code maxLag} is unhealthy, whatever heartbeat it shows.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    private static final String PRIMARY = "primary";
+    private static final String POSTGRESQL_HEARTBEAT = "INSERT INTO stats_heartbeat (instance, beat) VALUES (?, ?) " +
+            "ON CONFLICT (instance) DO UPDATE SET beat = EXCLUDED.beat";
+    private static final String POSTGRESQL_REPLICA_STATE = "SELECT pg_is_in_recovery() AS recovery, " +
+            "(SELECT status FROM pg_stat_wal_receiver) AS receiver, " +
+            "(SELECT EXTRACT(EPOCH FROM now() - last_msg_receipt_time) FROM pg_stat_wal_receiver) AS silence, " +
+            "(SELECT beat FROM stats_heartbeat WHERE instance = ?) AS beat";
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMillis;
+    private final String instance = UUID.randomUUID().toString();
+    private final NavigableSet<Long> beats = new TreeSet<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile List<Replica> healthy = List.of();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicaDataSources, Duration maxLag) {
+        this.primary = primary;
+        this.maxLagMillis = maxLag.toMillis();
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicaDataSources.size(); i++) {
+            Replica replica = new Replica("replica-" + i, replicaDataSources.get(i));
+            replicas.add(replica);
+            targets.put(replica.name, replica.dataSource);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        checkReplicas();
+    }
+
+    @Scheduled(fixedDelayString = "${stats.replica.health-check-interval-ms:5000}",
+            initialDelayString = "${stats.replica.health-check-interval-ms:5000}")
+    public synchronized void checkReplicas() {
+        writeHeartbeat();
+        List<Replica> available = new ArrayList<>();
+        for (Replica replica : replicas) {
+            boolean wasHealthy = replica.healthy;
+            try {
+                String problem = check(replica);
+                replica.healthy = problem == null;
+                if (!replica.healthy && wasHealthy) {
+                    log.warn("Replica {} {}, routing its reads to the primary", replica.name, problem);
+                }
+            } catch (SQLException e) {
+                replica.healthy = false;
+                if (wasHealthy) {
+                    log.warn("Replica {} is unavailable, routing its reads to the primary", replica.name, e);
+                }
+            }
+            if (replica.healthy) {
+                available.add(replica);
+                if (!wasHealthy) {
+                    log.info("Replica {} is serving reads", replica.name);
+                }
+            }
+        }
+        healthy = List.copyOf(available);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Connection connection = primary.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "DELETE FROM stats_heartbeat WHERE instance = ?")) {
+            statement.setString(1, instance);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            log.warn("Failed to remove the replication heartbeat of this instance", e);
+        }
+        for (DataSource dataSource : resolveAll()) {
+            if (dataSource instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        List<Replica> available = healthy;
+        if (available.isEmpty()) {
+            return PRIMARY;
+        }
+        return available.get(Math.floorMod(next.getAndIncrement(), available.size())).name;
+    }
+
+    /**
+     * Writes the next heartbeat to the primary and forgets the ones older than twice {@code maxLag}, which only
+     * tell that a replica missing them is too far behind.
+     */
+    private void writeHeartbeat() {
+        long beat = System.currentTimeMillis();
+        try (Connection connection = primary.getConnection()) {
+            if (platform(connection) != DatabasePlatform.POSTGRESQL) {
+                return;
+            }
+            try (PreparedStatement statement = connection.prepareStatement(POSTGRESQL_HEARTBEAT)) {
+                statement.setString(1, instance);
+                statement.setLong(2, beat);
+                statement.executeUpdate();
+            }
+            beats.add(beat);
+        } catch (SQLException e) {
+            log.warn("Failed to write the replication heartbeat to the primary", e);
+        }
+        beats.headSet(beat - 2 * maxLagMillis).clear();
+    }
+
+    /**
+     * Returns why {@code replica} cannot serve reads, or {@code null} if it can.
+     */
+    private String check(Replica replica) throws SQLException {
+        try (Connection connection = replica.dataSource.getConnection()) {
+            if (platform(connection) != DatabasePlatform.POSTGRESQL) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SELECT 1");
+                }
+                return null;
+            }
+            try (PreparedStatement statement = connection.prepareStatement(POSTGRESQL_REPLICA_STATE)) {
+                statement.setString(1, instance);
+                try (ResultSet rs = statement.executeQuery()) {
+                    rs.next();
+                    if (!rs.getBoolean("recovery")) {
+                        return null;
+                    }
+                    String receiver = rs.getString("receiver");
+                    if (!"streaming".equals(receiver)) {
+                        return receiver == null ? "has no WAL receiver" : "has a " + receiver + " WAL receiver";
+                    }
+                    double silence = rs.getDouble("silence");
+                    if (rs.wasNull() || silence * 1000 > maxLagMillis) {
+                        return "has not heard from the primary for " + silence + "s";
+                    }
+                    long beat = rs.getLong("beat");
+                    if (rs.wasNull()) {
+                        return "has not replayed a heartbeat of this instance yet";
+                    }
+                    long lag = lagMillis(beat);
+                    return lag > maxLagMillis ? "is " + lag + " ms behind" : null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the time since the first heartbeat written after {@code replayed}, the last one the replica has.
+     */
+    private long lagMillis(long replayed) {
+        Long missing = beats.higher(replayed);
+        return missing == null ? 0 : System.currentTimeMillis() - missing;
+    }
+
+    private static DatabasePlatform platform(Connection connection) throws SQLException {
+        return DatabasePlatform.fromProductName(connection.getMetaData().getDatabaseProductName());
+    }
+
+    private List<DataSource> resolveAll() {
+        List<DataSource> all = new ArrayList<>();
+        all.add(primary);
+        replicas.forEach(replica -> all.add(replica.dataSource));
+        return all;
+    }
+
+    private static final class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean healthy;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
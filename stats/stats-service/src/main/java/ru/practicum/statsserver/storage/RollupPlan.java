@@ -0,0 +1,106 @@
+package ru.practicum.statsserver.storage;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits an inclusive {@code [start, end]} interval into whole hours, whole minutes and the ragged edges
+ * that have to be read from raw hits. Hit timestamps have second precision, so the interval is treated
+ * as the half-open {@code [start, end + 1s)}. A plan can also cover several disjoint half-open ranges.
+ */
+@Getter
+public class RollupPlan {
+    private final List<TimeRange> raw = new ArrayList<>();
+    private final List<TimeRange> minutes = new ArrayList<>();
+    private final List<TimeRange> hours = new ArrayList<>();
+
+    public static RollupPlan of(LocalDateTime start, LocalDateTime end) {
+        return of(List.of(new TimeRange(start, end.plusSeconds(1))));
+    }
+
+    public static RollupPlan of(List<TimeRange> ranges) {
+        RollupPlan plan = new RollupPlan();
+        ranges.forEach(range -> plan.split(range.getFrom(), range.getTo(), ChronoUnit.HOURS));
+        return plan;
+    }
+
+    /**
+     * Builds a plan that reads no rollup coarser than {@code coarsest}: {@link ChronoUnit#HOURS},
+     * {@link ChronoUnit#MINUTES} or {@link ChronoUnit#SECONDS} for raw hits only.
+     */
+    public static RollupPlan of(LocalDateTime start, LocalDateTime end, ChronoUnit coarsest) {
+        RollupPlan plan = new RollupPlan();
+        plan.split(start, end.plusSeconds(1), coarsest);
+        return plan;
+    }
+
+    public static RollupPlan ofHours(LocalDateTime start, LocalDateTime end) {
+        RollupPlan plan = new RollupPlan();
+        LocalDateTime to = end.plusSeconds(1);
+        LocalDateTime hourFrom = ceil(start, ChronoUnit.HOURS);
+        LocalDateTime hourTo = to.truncatedTo(ChronoUnit.HOURS);
+
+        if (!hourFrom.isBefore(hourTo)) {
+            plan.add(plan.raw, start, to);
+            return plan;
+        }
+
+        plan.add(plan.raw, start, hourFrom);
+        plan.add(plan.hours, hourFrom, hourTo);
+        plan.add(plan.raw, hourTo, to);
+        return plan;
+    }
+
+    public boolean isEmpty() {
+        return raw.isEmpty() && minutes.isEmpty() && hours.isEmpty();
+    }
+
+    private void split(LocalDateTime from, LocalDateTime to, ChronoUnit coarsest) {
+        if (coarsest == ChronoUnit.SECONDS) {
+            add(raw, from, to);
+            return;
+        }
+        LocalDateTime minuteFrom = ceil(from, ChronoUnit.MINUTES);
+        LocalDateTime minuteTo = to.truncatedTo(ChronoUnit.MINUTES);
+
+        if (!minuteFrom.isBefore(minuteTo)) {
+            add(raw, from, to);
+            return;
+        }
+
+        add(raw, from, minuteFrom);
+        add(raw, minuteTo, to);
+
+        LocalDateTime hourFrom = ceil(minuteFrom, ChronoUnit.HOURS);
+        LocalDateTime hourTo = minuteTo.truncatedTo(ChronoUnit.HOURS);
+
+        if (coarsest == ChronoUnit.HOURS && hourFrom.isBefore(hourTo)) {
+            add(minutes, minuteFrom, hourFrom);
+            add(hours, hourFrom, hourTo);
+            add(minutes, hourTo, minuteTo);
+        } else {
+            add(minutes, minuteFrom, minuteTo);
+        }
+    }
+
+    private void add(List<TimeRange> ranges, LocalDateTime from, LocalDateTime to) {
+        TimeRange range = new TimeRange(from, to);
+        if (!range.isEmpty()) {
+            ranges.add(range);
+        }
+    }
+
+    private static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime truncated = time.truncatedTo(unit);
+        return truncated.equals(time) ? time : truncated.plus(1, unit);
+    }
+
+    @Override
+    public String toString() {
+        return "RollupPlan{raw=" + raw + ", minutes=" + minutes + ", hours=" + hours + '}';
+    }
+}
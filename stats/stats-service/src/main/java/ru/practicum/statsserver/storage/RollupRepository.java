@@ -0,0 +1,121 @@
+package ru.practicum.statsserver.storage;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.statscommon.model.ViewStats;
+import ru.practicum.statsserver.model.Stats;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Repository
+@ConditionalOnJdbcStorage
+public class RollupRepository {
+    private static final String MINUTE_TABLE = "stats_minute";
+    private static final String HOUR_TABLE = "stats_hour";
+
+    private static final String MERGE_ROLLUP = "MERGE INTO %s AS r " +
+            "USING (VALUES (CAST(? AS TIMESTAMP), CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS BIGINT))) " +
+            "AS v (bucket, app_id, uri_id, hits) " +
+            "ON r.bucket = v.bucket AND r.app_id = v.app_id AND r.uri_id = v.uri_id " +
+            "WHEN MATCHED THEN UPDATE SET hits = r.hits + v.hits " +
+            "WHEN NOT MATCHED THEN INSERT (bucket, app_id, uri_id, hits) VALUES (v.bucket, v.app_id, v.uri_id, v.hits)";
+
+    private static final String UPSERT_ROLLUP = "INSERT INTO %s AS r (bucket, app_id, uri_id, hits) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (bucket, app_id, uri_id) DO UPDATE SET hits = r.hits + EXCLUDED.hits";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final String incrementSql;
+
+    public RollupRepository(NamedParameterJdbcTemplate jdbcTemplate, DatabasePlatform databasePlatform) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.incrementSql = databasePlatform == DatabasePlatform.POSTGRESQL ? UPSERT_ROLLUP : MERGE_ROLLUP;
+    }
+
+    public void increment(List<Stats> hits) {
+        increment(MINUTE_TABLE, countByBucket(hits, hit -> hit.getTimestamp().truncatedTo(ChronoUnit.MINUTES)));
+        increment(HOUR_TABLE, countByBucket(hits, hit -> hit.getTimestamp().truncatedTo(ChronoUnit.HOURS)));
+    }
+
+    public List<ViewStats> getStats(RollupPlan plan, UriFilter uris) {
+        if (plan.isEmpty()) {
+            return List.of();
+        }
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        String sql = aggregateSql(plan, StatsSql.uriCondition(uris, parameters), parameters);
+        return jdbcTemplate.query(StatsSql.withNames(sql), parameters, StatsSql.VIEW_STATS_MAPPER);
+    }
+
+    public void streamStats(RollupPlan plan, UriFilter uris, Consumer<ViewStats> consumer) {
+        if (plan.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        String sql = aggregateSql(plan, StatsSql.uriCondition(uris, parameters), parameters);
+        jdbcTemplate.query(StatsSql.withNames(sql), parameters, StatsSql.streamTo(consumer));
+    }
+
+    public List<ViewStats> getTop(RollupPlan plan, String uriPrefix, int limit) {
+        if (plan.isEmpty()) {
+            return List.of();
+        }
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        String sql = aggregateSql(plan, StatsSql.uriPrefixCondition(uriPrefix, parameters), parameters);
+        return jdbcTemplate.query(StatsSql.withNames(StatsSql.top(sql, limit, parameters)), parameters,
+                StatsSql.VIEW_STATS_MAPPER);
+    }
+
+    public Map<StatsKey, Long> getCounts(RollupPlan plan, UriFilter uris) {
+        Map<StatsKey, Long> counts = new HashMap<>();
+        if (plan.isEmpty()) {
+            return counts;
+        }
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        String sql = aggregateSql(plan, StatsSql.uriCondition(uris, parameters), parameters);
+        jdbcTemplate.query(sql, parameters, rs -> {
+            counts.put(new StatsKey(rs.getInt("app_id"), rs.getInt("uri_id")), rs.getLong("hits"));
+        });
+        return counts;
+    }
+
+    private String aggregateSql(RollupPlan plan, String uriFilter, MapSqlParameterSource parameters) {
+        List<String> sources = new ArrayList<>();
+
+        if (!plan.getHours().isEmpty()) {
+            sources.add("SELECT app_id, uri_id, hits FROM " + HOUR_TABLE +
+                    " WHERE " + StatsSql.rangeCondition("bucket", "h", plan.getHours(), parameters) + uriFilter);
+        }
+        if (!plan.getMinutes().isEmpty()) {
+            sources.add("SELECT app_id, uri_id, hits FROM " + MINUTE_TABLE +
+                    " WHERE " + StatsSql.rangeCondition("bucket", "m", plan.getMinutes(), parameters) + uriFilter);
+        }
+        if (!plan.getRaw().isEmpty()) {
+            sources.add("SELECT app_id, uri_id, COUNT(*) AS hits FROM stats" +
+                    " WHERE " + StatsSql.rangeCondition("created", "r", plan.getRaw(), parameters) + uriFilter +
+                    " GROUP BY app_id, uri_id");
+        }
+
+        return "SELECT app_id, uri_id, SUM(hits) AS hits FROM (" + String.join(" UNION ALL ", sources) + ") AS s " +
+                "GROUP BY app_id, uri_id";
+    }
+
+    private void increment(String table, Map<RollupKey, Long> counts) {
+        List<Object[]> batch = counts.entrySet().stream()
+                .map(entry -> new Object[]{Timestamp.valueOf(entry.getKey().getBucket()),
+                        entry.getKey().getAppId(), entry.getKey().getUriId(), entry.getValue()})
+                .toList();
+        jdbcTemplate.getJdbcTemplate().batchUpdate(String.format(incrementSql, table), batch);
+    }
+
+    private Map<RollupKey, Long> countByBucket(List<Stats> hits, Function<Stats, LocalDateTime> bucket) {
+        return hits.stream()
+                .collect(Collectors.groupingBy(hit -> new RollupKey(bucket.apply(hit), hit.getAppId(), hit.getUriId()),
+                        TreeMap::new, Collectors.counting()));
+    }
+}
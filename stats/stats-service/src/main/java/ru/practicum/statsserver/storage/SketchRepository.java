@@ -0,0 +1,183 @@
+package ru.practicum.statsserver.storage;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.statscommon.model.ViewStats;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.sketch.HyperLogLog;
+
+import java.sql.Timestamp;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+@Repository
+@ConditionalOnJdbcStorage
+public class SketchRepository {
+    private static final int LOCK_CHUNK_SIZE = 500;
+    private static final int STREAM_BATCH_SIZE = 1000;
+
+    private static final String MERGE_ABSENT = "MERGE INTO stats_hll_hour AS s " +
+            "USING (VALUES (CAST(? AS TIMESTAMP), CAST(? AS INTEGER), CAST(? AS INTEGER))) " +
+            "AS v (bucket, app_id, uri_id) " +
+            "ON s.bucket = v.bucket AND s.app_id = v.app_id AND s.uri_id = v.uri_id " +
+            "WHEN NOT MATCHED THEN INSERT (bucket, app_id, uri_id, sketch) VALUES (v.bucket, v.app_id, v.uri_id, ?)";
+
+    private static final String INSERT_ABSENT = "INSERT INTO stats_hll_hour (bucket, app_id, uri_id, sketch) " +
+            "VALUES (?, ?, ?, ?) ON CONFLICT (bucket, app_id, uri_id) DO NOTHING";
+
+    private static final String UPDATE_SKETCH = "UPDATE stats_hll_hour SET sketch = ? " +
+            "WHERE bucket = ? AND app_id = ? AND uri_id = ?";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final DictionaryRepository dictionaryRepository;
+    private final String insertAbsentSql;
+
+    public SketchRepository(NamedParameterJdbcTemplate jdbcTemplate, DictionaryRepository dictionaryRepository,
+                            DatabasePlatform databasePlatform) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dictionaryRepository = dictionaryRepository;
+        this.insertAbsentSql = databasePlatform == DatabasePlatform.POSTGRESQL ? INSERT_ABSENT : MERGE_ABSENT;
+    }
+
+    public void add(List<Stats> hits) {
+        Map<RollupKey, HyperLogLog> sketches = new TreeMap<>();
+        for (Stats hit : hits) {
+            sketches.computeIfAbsent(new RollupKey(hit.getTimestamp().truncatedTo(ChronoUnit.HOURS),
+                    hit.getAppId(), hit.getUriId()), key -> new HyperLogLog()).add(hit.getIp());
+        }
+
+        jdbcTemplate.getJdbcTemplate().batchUpdate(insertAbsentSql, sketches.entrySet().stream()
+                .map(entry -> new Object[]{Timestamp.valueOf(entry.getKey().getBucket()),
+                        entry.getKey().getAppId(), entry.getKey().getUriId(), entry.getValue().toBytes()})
+                .toList());
+
+        List<Object[]> updates = new ArrayList<>();
+        List<RollupKey> keys = new ArrayList<>(sketches.keySet());
+        for (int from = 0; from < keys.size(); from += LOCK_CHUNK_SIZE) {
+            List<RollupKey> chunk = keys.subList(from, Math.min(from + LOCK_CHUNK_SIZE, keys.size()));
+            lockSketches(chunk).forEach((key, stored) -> {
+                byte[] before = stored.toBytes();
+                stored.merge(sketches.get(key));
+                byte[] after = stored.toBytes();
+                if (!Arrays.equals(before, after)) {
+                    updates.add(new Object[]{after, Timestamp.valueOf(key.getBucket()), key.getAppId(), key.getUriId()});
+                }
+            });
+        }
+        jdbcTemplate.getJdbcTemplate().batchUpdate(UPDATE_SKETCH, updates);
+    }
+
+    public List<ViewStats> getApproxStats(RollupPlan plan, UriFilter uris) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        Map<StatsKey, Long> estimates = new HashMap<>();
+        estimate(plan, StatsSql.uriCondition(uris, parameters), parameters, estimates::put);
+        return dictionaryRepository.toViewStats(estimates);
+    }
+
+    public void streamApproxStats(RollupPlan plan, UriFilter uris, Consumer<ViewStats> consumer) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        Map<StatsKey, Long> batch = new HashMap<>();
+        estimate(plan, StatsSql.uriCondition(uris, parameters), parameters, (key, estimate) -> {
+            batch.put(key, estimate);
+            if (batch.size() == STREAM_BATCH_SIZE) {
+                dictionaryRepository.toViewStats(batch).forEach(consumer);
+                batch.clear();
+            }
+        });
+        dictionaryRepository.toViewStats(batch).forEach(consumer);
+    }
+
+    public List<ViewStats> getApproxTop(RollupPlan plan, String uriPrefix, int limit) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        PriorityQueue<Map.Entry<StatsKey, Long>> top = new PriorityQueue<>(limit + 1, Map.Entry.comparingByValue());
+        estimate(plan, StatsSql.uriPrefixCondition(uriPrefix, parameters), parameters, (key, estimate) -> {
+            if (top.size() < limit || estimate > top.peek().getValue()) {
+                top.add(Map.entry(key, estimate));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+        });
+
+        Map<StatsKey, Long> estimates = new HashMap<>();
+        top.forEach(entry -> estimates.put(entry.getKey(), entry.getValue()));
+        return dictionaryRepository.toViewStats(estimates);
+    }
+
+    public Map<StatsKey, HyperLogLog> getSketches(RollupPlan plan, UriFilter uris) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        Map<StatsKey, HyperLogLog> sketches = new HashMap<>();
+        merge(plan, StatsSql.uriCondition(uris, parameters), parameters, sketches::put);
+        return sketches;
+    }
+
+    private void estimate(RollupPlan plan, String uriFilter, MapSqlParameterSource parameters,
+                          BiConsumer<StatsKey, Long> sink) {
+        merge(plan, uriFilter, parameters, (key, sketch) -> sink.accept(key, sketch.estimate()));
+    }
+
+    private void merge(RollupPlan plan, String uriFilter, MapSqlParameterSource parameters,
+                       BiConsumer<StatsKey, HyperLogLog> sink) {
+        Map<StatsKey, HyperLogLog> edges = new HashMap<>();
+        if (!plan.getRaw().isEmpty()) {
+            jdbcTemplate.query("SELECT app_id, uri_id, user_ip FROM stats WHERE " +
+                    StatsSql.rangeCondition("created", "r", plan.getRaw(), parameters) + uriFilter, parameters, rs -> {
+                        edges.computeIfAbsent(new StatsKey(rs.getInt("app_id"), rs.getInt("uri_id")),
+                                key -> new HyperLogLog()).add(rs.getBytes("user_ip"));
+                    });
+        }
+
+        if (!plan.getHours().isEmpty()) {
+            HyperLogLog[] current = new HyperLogLog[1];
+            StatsKey[] currentKey = new StatsKey[1];
+            jdbcTemplate.query("SELECT app_id, uri_id, sketch FROM stats_hll_hour WHERE " +
+                    StatsSql.rangeCondition("bucket", "h", plan.getHours(), parameters) + uriFilter +
+                    " ORDER BY app_id, uri_id", parameters, rs -> {
+                        StatsKey key = new StatsKey(rs.getInt("app_id"), rs.getInt("uri_id"));
+                        if (!key.equals(currentKey[0])) {
+                            addSketch(sink, currentKey[0], current[0], edges);
+                            currentKey[0] = key;
+                            current[0] = new HyperLogLog();
+                        }
+                        current[0].merge(HyperLogLog.fromBytes(rs.getBytes("sketch")));
+                    });
+            addSketch(sink, currentKey[0], current[0], edges);
+        }
+        edges.forEach(sink);
+    }
+
+    private Map<RollupKey, HyperLogLog> lockSketches(List<RollupKey> keys) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        List<String> tuples = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            parameters.addValue("b" + i, Timestamp.valueOf(keys.get(i).getBucket()));
+            parameters.addValue("a" + i, keys.get(i).getAppId());
+            parameters.addValue("u" + i, keys.get(i).getUriId());
+            tuples.add("(:b" + i + ", :a" + i + ", :u" + i + ")");
+        }
+
+        Map<RollupKey, HyperLogLog> stored = new TreeMap<>();
+        jdbcTemplate.query("SELECT bucket, app_id, uri_id, sketch FROM stats_hll_hour " +
+                "WHERE (bucket, app_id, uri_id) IN (" + String.join(", ", tuples) + ") FOR UPDATE", parameters, rs -> {
+                    stored.put(new RollupKey(rs.getTimestamp("bucket").toLocalDateTime(),
+                                    rs.getInt("app_id"), rs.getInt("uri_id")),
+                            HyperLogLog.fromBytes(rs.getBytes("sketch")));
+                });
+        return stored;
+    }
+
+    private void addSketch(BiConsumer<StatsKey, HyperLogLog> sink, StatsKey key, HyperLogLog sketch,
+                           Map<StatsKey, HyperLogLog> edges) {
+        if (key == null) {
+            return;
+        }
+        HyperLogLog edge = edges.remove(key);
+        if (edge != null) {
+            sketch.merge(edge);
+        }
+        sink.accept(key, sketch);
+    }
+}
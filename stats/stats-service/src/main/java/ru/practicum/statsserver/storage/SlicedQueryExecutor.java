@@ -0,0 +1,157 @@
+package ru.practicum.statsserver.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs raw-hit aggregations over long ranges as concurrent slices of {@code stats.query.slice-size}, each in its
+ * own read-only transaction on a pool of {@code stats.query.parallelism} threads. Hit counts of the slices are
+ * added up; distinct counts merge the per-slice address sets, so they stay exact.
+ * <p>
+ * The caller keeps its own connection while it waits, so at most {@code stats.query.max-concurrent} queries are
+ * sliced at a time and the rest run as a single query. The connection pool needs more than
+ * {@code max-concurrent + parallelism} connections.
+ */
+@Component
+@ConditionalOnJdbcStorage
+public class SlicedQueryExecutor {
+    private final StatsRepository statsRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Duration sliceSize;
+    private final ExecutorService executor;
+    private final Semaphore queries;
+    private final Timer sliceTimer;
+    private final Counter slicedCounter;
+    private final Counter fallbackCounter;
+
+    public SlicedQueryExecutor(StatsRepository statsRepository, PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${stats.query.slice-size:7d}") String sliceSize,
+                               @Value("${stats.query.parallelism:4}") int parallelism,
+                               @Value("${stats.query.max-concurrent:2}") int maxConcurrent) {
+        this.statsRepository = statsRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.sliceSize = DurationStyle.detectAndParse(sliceSize);
+        this.queries = new Semaphore(maxConcurrent);
+        this.executor = parallelism > 1
+                ? ExecutorServiceMetrics.monitor(meterRegistry, Executors.newFixedThreadPool(parallelism),
+                "stats.query.slices")
+                : null;
+
+        Gauge.builder("stats.query.slice.parallelism", () -> parallelism).register(meterRegistry);
+        Gauge.builder("stats.query.slice.size", this.sliceSize, Duration::toSeconds)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.sliceTimer = meterRegistry.timer("stats.query.slice.latency");
+        this.slicedCounter = meterRegistry.counter("stats.query.sliced");
+        this.fallbackCounter = meterRegistry.counter("stats.query.slice.fallback");
+    }
+
+    /**
+     * Aggregates the inclusive {@code [start, end]} in slices. Returns an empty result if the range fits in one
+     * slice or all slicing slots are busy; the caller then runs the query itself.
+     */
+    public Optional<Map<StatsKey, Long>> count(LocalDateTime start, LocalDateTime end, UriFilter uris,
+                                               boolean distinctIp) {
+        LocalDateTime to = end.plusSeconds(1);
+        if (executor == null || !start.plus(sliceSize).isBefore(to)) {
+            return Optional.empty();
+        }
+        if (!queries.tryAcquire()) {
+            fallbackCounter.increment();
+            return Optional.empty();
+        }
+        try {
+            slicedCounter.increment();
+            List<TimeRange> slices = new ArrayList<>();
+            for (LocalDateTime from = start; from.isBefore(to); from = from.plus(sliceSize)) {
+                LocalDateTime sliceEnd = from.plus(sliceSize);
+                slices.add(new TimeRange(from, sliceEnd.isBefore(to) ? sliceEnd : to));
+            }
+            return Optional.of(distinctIp ? countDistinct(slices, uris) : countHits(slices, uris));
+        } finally {
+            queries.release();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<StatsKey, Long> countHits(List<TimeRange> slices, UriFilter uris) {
+        Map<StatsKey, Long> counts = new HashMap<>();
+        forEachSlice(slices, slice -> statsRepository.getRawCounts(slice, uris),
+                partial -> partial.forEach((key, hits) -> counts.merge(key, hits, Long::sum)));
+        return counts;
+    }
+
+    private Map<StatsKey, Long> countDistinct(List<TimeRange> slices, UriFilter uris) {
+        Map<StatsKey, Set<ByteBuffer>> ips = new HashMap<>();
+        forEachSlice(slices, slice -> {
+            Map<StatsKey, Set<ByteBuffer>> partial = new HashMap<>();
+            statsRepository.forEachDistinctIp(slice, uris, (key, ip) ->
+                    partial.computeIfAbsent(key, k -> new HashSet<>()).add(ByteBuffer.wrap(ip)));
+            return partial;
+        }, partial -> partial.forEach((key, set) -> ips.merge(key, set, (merged, other) -> {
+            if (merged.size() < other.size()) {
+                other.addAll(merged);
+                return other;
+            }
+            merged.addAll(other);
+            return merged;
+        })));
+
+        Map<StatsKey, Long> counts = new HashMap<>(ips.size() * 2);
+        ips.forEach((key, set) -> counts.put(key, (long) set.size()));
+        return counts;
+    }
+
+    /**
+     * Runs {@code query} for every slice on the pool and hands the partial results to {@code merge} on the
+     * calling thread as they complete.
+     */
+    private <T> void forEachSlice(List<TimeRange> slices, Function<TimeRange, T> query, Consumer<T> merge) {
+        CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        List<Future<T>> futures = new ArrayList<>(slices.size());
+        try {
+            for (TimeRange slice : slices) {
+                futures.add(completion.submit(() -> sliceTimer.recordCallable(
+                        () -> readOnlyTransaction.execute(status -> query.apply(slice)))));
+            }
+            for (int i = 0; i < slices.size(); i++) {
+                merge.accept(completion.take().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Sliced query was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Sliced query failed", e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package ru.practicum.statsserver.storage;
+
+import ru.practicum.statscommon.model.ViewStats;
+import ru.practicum.statsserver.model.Stats;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+public interface StatsCustomRepository {
+    void saveBatch(List<Stats> stats);
+
+    List<ViewStats> getRawStats(LocalDateTime start, LocalDateTime end, UriFilter uris, boolean distinctIp);
+
+    void streamRawStats(LocalDateTime start, LocalDateTime end, UriFilter uris, boolean distinctIp,
+                        Consumer<ViewStats> consumer);
+
+    Map<StatsKey, Long> getRawCounts(TimeRange range, UriFilter uris);
+
+    void forEachDistinctIp(TimeRange range, UriFilter uris, BiConsumer<StatsKey, byte[]> consumer);
+
+    /**
+     * Visits the distinct addresses of the hits in {@code range} key by key.
+     */
+    void forEachDistinctRawIp(TimeRange range, UriFilter uris, HitVisitor visitor);
+
+    void forEachRawHit(LocalDateTime start, LocalDateTime end, UriFilter uris, HitVisitor visitor);
+
+    void exportRawHits(UriFilter uris, Consumer<Stats> consumer);
+
+    List<ViewStats> getRawTop(LocalDateTime start, LocalDateTime end, String uriPrefix, int limit, boolean distinctIp);
+
+    /**
+     * Removes all raw hits together with their rollups, sketches and bitmaps. The dictionaries are kept.
+     */
+    void deleteAllHits();
+}
@@ -0,0 +1,207 @@
+package ru.practicum.statsserver.storage;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.practicum.statscommon.StatsCommonUtils;
+import ru.practicum.statscommon.model.ViewStats;
+import ru.practicum.statsserver.model.Stats;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+public class StatsCustomRepositoryImpl implements StatsCustomRepository {
+    private static final String INSERT_STATS = "INSERT INTO stats (app_id, uri_id, user_ip, created) VALUES (?, ?, ?, ?)";
+    private static final String COPY_STATS = "COPY stats (app_id, uri_id, user_ip, created) FROM STDIN";
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final List<String> HIT_TABLES = List.of("stats", "stats_minute", "stats_hour", "stats_hll_hour",
+            "stats_ip_hour", "stats_ip6_hour", "stats_ip_pending");
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final int copyThreshold;
+    private final boolean postgresql;
+
+    public StatsCustomRepositoryImpl(NamedParameterJdbcTemplate jdbcTemplate, DatabasePlatform databasePlatform,
+                                     @Value("${stats.jdbc.batch-size:500}") int batchSize,
+                                     @Value("${stats.jdbc.copy-threshold:1000}") int copyThreshold) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        this.copyThreshold = copyThreshold;
+        this.postgresql = databasePlatform == DatabasePlatform.POSTGRESQL;
+    }
+
+    @Override
+    public void saveBatch(List<Stats> stats) {
+        if (postgresql && stats.size() >= copyThreshold) {
+            copy(stats);
+            return;
+        }
+        jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT_STATS, stats, batchSize, (ps, hit) -> {
+            ps.setInt(1, hit.getAppId());
+            ps.setInt(2, hit.getUriId());
+            ps.setBytes(3, hit.getIp());
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+        });
+    }
+
+    @Override
+    public List<ViewStats> getRawStats(LocalDateTime start, LocalDateTime end, UriFilter uris,
+                                       boolean distinctIp) {
+        MapSqlParameterSource parameters = rangeParameters(start, end);
+        String sql = rawAggregateSql(StatsSql.uriCondition(uris, parameters), distinctIp);
+        return jdbcTemplate.query(StatsSql.withNames(sql), parameters, StatsSql.VIEW_STATS_MAPPER);
+    }
+
+    @Override
+    public void streamRawStats(LocalDateTime start, LocalDateTime end, UriFilter uris, boolean distinctIp,
+                               Consumer<ViewStats> consumer) {
+        MapSqlParameterSource parameters = rangeParameters(start, end);
+        String sql = rawAggregateSql(StatsSql.uriCondition(uris, parameters), distinctIp);
+        jdbcTemplate.query(StatsSql.withNames(sql), parameters, StatsSql.streamTo(consumer));
+    }
+
+    @Override
+    public Map<StatsKey, Long> getRawCounts(TimeRange range, UriFilter uris) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        String sql = "SELECT app_id, uri_id, COUNT(*) AS hits FROM stats WHERE " +
+                StatsSql.rangeCondition("created", "r", List.of(range), parameters) +
+                StatsSql.uriCondition(uris, parameters) + " GROUP BY app_id, uri_id";
+        Map<StatsKey, Long> counts = new HashMap<>();
+        jdbcTemplate.query(sql, parameters, rs -> {
+            counts.put(new StatsKey(rs.getInt("app_id"), rs.getInt("uri_id")), rs.getLong("hits"));
+        });
+        return counts;
+    }
+
+    @Override
+    public void forEachDistinctIp(TimeRange range, UriFilter uris,
+                                  BiConsumer<StatsKey, byte[]> consumer) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        String sql = "SELECT DISTINCT app_id, uri_id, user_ip FROM stats WHERE " +
+                StatsSql.rangeCondition("created", "r", List.of(range), parameters) +
+                StatsSql.uriCondition(uris, parameters);
+        jdbcTemplate.query(sql, parameters, rs -> {
+            consumer.accept(new StatsKey(rs.getInt("app_id"), rs.getInt("uri_id")), rs.getBytes("user_ip"));
+        });
+    }
+
+    @Override
+    public void forEachDistinctRawIp(TimeRange range, UriFilter uris, HitVisitor visitor) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        String sql = "SELECT a.name AS app_name, u.uri AS uri, d.user_ip AS user_ip FROM (" +
+                "SELECT DISTINCT app_id, uri_id, user_ip FROM stats WHERE " +
+                StatsSql.rangeCondition("created", "r", List.of(range), parameters) +
+                StatsSql.uriCondition(uris, parameters) + ") AS d " +
+                "JOIN stats_app a ON a.id = d.app_id " +
+                "JOIN stats_uri u ON u.id = d.uri_id " +
+                "ORDER BY d.app_id, d.uri_id";
+        jdbcTemplate.query(sql, parameters, rs -> {
+            visitor.accept(new NamedStatsKey(rs.getString("app_name"), rs.getString("uri")), rs.getBytes("user_ip"));
+        });
+    }
+
+    @Override
+    public void forEachRawHit(LocalDateTime start, LocalDateTime end, UriFilter uris, HitVisitor visitor) {
+        MapSqlParameterSource parameters = rangeParameters(start, end);
+        String sql = "SELECT a.name AS app_name, u.uri AS uri, s.user_ip AS user_ip FROM stats s " +
+                "JOIN stats_app a ON a.id = s.app_id " +
+                "JOIN stats_uri u ON u.id = s.uri_id " +
+                "WHERE s.created BETWEEN :start AND :end" + StatsSql.uriCondition(uris, parameters);
+        jdbcTemplate.query(sql, parameters, rs -> {
+            visitor.accept(new NamedStatsKey(rs.getString("app_name"), rs.getString("uri")), rs.getBytes("user_ip"));
+        });
+    }
+
+    @Override
+    public void exportRawHits(UriFilter uris, Consumer<Stats> consumer) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        String sql = "SELECT a.name AS app_name, u.uri AS uri, s.user_ip AS user_ip, s.created AS created " +
+                "FROM stats s " +
+                "JOIN stats_app a ON a.id = s.app_id " +
+                "JOIN stats_uri u ON u.id = s.uri_id " +
+                "WHERE 1 = 1" + StatsSql.uriCondition(uris, parameters);
+        jdbcTemplate.query(sql, parameters, rs -> {
+            consumer.accept(Stats.builder()
+                    .app(rs.getString("app_name"))
+                    .uri(rs.getString("uri"))
+                    .ip(rs.getBytes("user_ip"))
+                    .timestamp(rs.getTimestamp("created").toLocalDateTime())
+                    .build());
+        });
+    }
+
+    @Override
+    public List<ViewStats> getRawTop(LocalDateTime start, LocalDateTime end, String uriPrefix, int limit,
+                                     boolean distinctIp) {
+        MapSqlParameterSource parameters = rangeParameters(start, end);
+        String sql = rawAggregateSql(StatsSql.uriPrefixCondition(uriPrefix, parameters), distinctIp);
+        return jdbcTemplate.query(StatsSql.withNames(StatsSql.top(sql, limit, parameters)), parameters,
+                StatsSql.VIEW_STATS_MAPPER);
+    }
+
+    @Override
+    public void deleteAllHits() {
+        HIT_TABLES.forEach(table -> jdbcTemplate.getJdbcTemplate().execute("TRUNCATE TABLE " + table));
+    }
+
+    /**
+     * Streams the hits through {@code COPY ... FROM STDIN} in text format on the connection of the current
+     * transaction. Addresses are sent as hex-encoded {@code bytea}.
+     */
+    private void copy(List<Stats> stats) {
+        jdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<Long>) connection -> {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_STATS);
+            try {
+                StringBuilder rows = new StringBuilder(COPY_BUFFER_SIZE + 128);
+                for (Stats hit : stats) {
+                    rows.append(hit.getAppId()).append('\t')
+                            .append(hit.getUriId()).append("\t\\\\x");
+                    for (byte b : hit.getIp()) {
+                        rows.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+                    }
+                    rows.append('\t').append(StatsCommonUtils.DT_FORMATTER.format(hit.getTimestamp())).append('\n');
+                    if (rows.length() >= COPY_BUFFER_SIZE) {
+                        writeToCopy(copyIn, rows);
+                    }
+                }
+                writeToCopy(copyIn, rows);
+                return copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        });
+    }
+
+    private void writeToCopy(CopyIn copyIn, StringBuilder rows) throws SQLException {
+        byte[] bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        rows.setLength(0);
+    }
+
+    private MapSqlParameterSource rangeParameters(LocalDateTime start, LocalDateTime end) {
+        return new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+    }
+
+    private String rawAggregateSql(String uriFilter, boolean distinctIp) {
+        String hits = distinctIp ? "COUNT(DISTINCT user_ip)" : "COUNT(*)";
+        return "SELECT app_id, uri_id, " + hits + " AS hits FROM stats " +
+                "WHERE created BETWEEN :start AND :end" + uriFilter + " " +
+                "GROUP BY app_id, uri_id";
+    }
+}
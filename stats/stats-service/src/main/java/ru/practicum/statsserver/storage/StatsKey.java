@@ -0,0 +1,14 @@
+package ru.practicum.statsserver.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+public class StatsKey {
+    private final int appId;
+
+    private final int uriId;
+}
@@ -0,0 +1,186 @@
+package ru.practicum.statsserver.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a partition of {@code stats} for the current period and {@code stats.partitioning.premake} periods ahead.
+ * Hits that still land in {@code stats_default}, e.g. backfilled or far in the future, are moved to partitions of
+ * their own on the next run, so retention can drop them with the partition. Failures to create a partition are
+ * counted in {@code stats.partitions.failures} and the hits left in the default partition are reported by
+ * {@code stats.partitions.default.hits}, both meant to be alerted on.
+ */
+@Component
+@ConditionalOnJdbcStorage
+@Slf4j
+public class StatsPartitionManager {
+    private static final String PARTITION_PREFIX = "stats_p";
+    private static final List<String> ROLLUP_TABLES = List.of("stats_minute", "stats_hour", "stats_hll_hour",
+            "stats_ip_hour", "stats_ip6_hour", "stats_ip_pending");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabasePlatform databasePlatform;
+    private final PartitionGranularity granularity;
+    private final int premake;
+    private final Duration retention;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter failures;
+    private final AtomicLong defaultHits = new AtomicLong();
+
+    public StatsPartitionManager(JdbcTemplate jdbcTemplate, DatabasePlatform databasePlatform,
+                                 PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                                 @Value("${stats.partitioning.granularity:daily}") PartitionGranularity granularity,
+                                 @Value("${stats.partitioning.premake:3}") int premake,
+                                 @Value("${stats.retention.period:}") String retention) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.databasePlatform = databasePlatform;
+        this.granularity = granularity;
+        this.premake = premake;
+        this.retention = retention.isBlank() ? null : DurationStyle.detectAndParse(retention);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.failures = meterRegistry.counter("stats.partitions.failures");
+        Gauge.builder("stats.partitions.default.hits", defaultHits, AtomicLong::get).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${stats.partitioning.maintenance-interval-ms:3600000}",
+            initialDelayString = "${stats.partitioning.maintenance-interval-ms:3600000}")
+    public void maintain() {
+        if (databasePlatform == DatabasePlatform.POSTGRESQL) {
+            createPartitions(LocalDate.now());
+        }
+        if (retention != null) {
+            applyRetention(LocalDateTime.now().minus(retention));
+        }
+    }
+
+    /**
+     * Returns the name of the partition that holds exactly the hits of {@code day} under daily granularity.
+     */
+    public static String dailyPartition(LocalDate day) {
+        return PARTITION_PREFIX + PartitionGranularity.DAILY.suffix(day);
+    }
+
+    private void createPartitions(LocalDate today) {
+        Timestamp stray = jdbcTemplate.queryForObject("SELECT MIN(created) FROM stats_default", Timestamp.class);
+        while (stray != null) {
+            LocalDate start = granularity.floor(stray.toLocalDateTime().toLocalDate());
+            LocalDate end = granularity.next(start);
+            createPartition(start, end);
+            stray = jdbcTemplate.queryForObject("SELECT MIN(created) FROM stats_default WHERE created >= ?",
+                    Timestamp.class, Timestamp.valueOf(end.atStartOfDay()));
+        }
+
+        LocalDate start = granularity.floor(today);
+        for (int i = 0; i <= premake; i++) {
+            LocalDate end = granularity.next(start);
+            createPartition(start, end);
+            start = end;
+        }
+        defaultHits.set(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stats_default", Long.class));
+    }
+
+    /**
+     * Creates the partition detached, moves the hits of its range out of the default partition and attaches it.
+     * The default partition is locked meanwhile, so no hit of the range can land there before the attach.
+     */
+    private void createPartition(LocalDate start, LocalDate end) {
+        String name = PARTITION_PREFIX + granularity.suffix(start);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, name)) {
+                    return;
+                }
+                jdbcTemplate.execute("LOCK TABLE stats_default IN ACCESS EXCLUSIVE MODE");
+                jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE stats INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+                int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM stats_default " +
+                                "WHERE created >= ? AND created < ? RETURNING *) " +
+                                "INSERT INTO " + name + " SELECT * FROM moved",
+                        Timestamp.valueOf(start.atStartOfDay()), Timestamp.valueOf(end.atStartOfDay()));
+                jdbcTemplate.execute("ALTER TABLE stats ATTACH PARTITION " + name + " " +
+                        "FOR VALUES FROM ('" + start + "') TO ('" + end + "')");
+                if (moved > 0) {
+                    log.warn("Moved {} hits of [{}, {}) from the default partition to {}", moved, start, end, name);
+                }
+            });
+        } catch (RuntimeException e) {
+            failures.increment();
+            log.error("Failed to create partition {} for [{}, {})", name, start, end, e);
+        }
+    }
+
+    private void applyRetention(LocalDateTime cutoff) {
+        if (databasePlatform == DatabasePlatform.POSTGRESQL) {
+            dropPartitions(cutoff);
+        } else {
+            int deleted = jdbcTemplate.update("DELETE FROM stats WHERE created < ?", Timestamp.valueOf(cutoff));
+            log.info("Retention removed {} hits older than {}", deleted, cutoff);
+        }
+        expireRollups(cutoff);
+    }
+
+    private void dropPartitions(LocalDateTime cutoff) {
+        List<String> partitions = jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid " +
+                "JOIN pg_class p ON p.oid = i.inhparent " +
+                "WHERE p.relname = 'stats' AND c.relname LIKE '" + PARTITION_PREFIX + "%'", String.class);
+
+        for (String partition : partitions) {
+            String suffix = partition.substring(PARTITION_PREFIX.length());
+            try {
+                PartitionGranularity partitionGranularity = PartitionGranularity.ofSuffix(suffix);
+                LocalDate end = partitionGranularity.next(partitionGranularity.parseSuffix(suffix));
+                if (!end.atStartOfDay().isAfter(cutoff)) {
+                    jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                    log.info("Retention dropped partition {}", partition);
+                }
+            } catch (DateTimeParseException e) {
+                log.warn("Skipping partition {} with an unexpected name", partition);
+            }
+        }
+
+        int deleted = jdbcTemplate.update("DELETE FROM stats_default WHERE created < ?", Timestamp.valueOf(cutoff));
+        if (deleted > 0) {
+            log.info("Retention removed {} hits older than {} from the default partition", deleted, cutoff);
+        }
+    }
+
+    /**
+     * Removes the rollups, sketches and address sets of the hours before both the cutoff and the oldest hit left in
+     * {@code stats}, so they expire together with the raw hits they were built from. Hours of a partition that is
+     * kept because it reaches past the cutoff stay until the partition is dropped.
+     */
+    private void expireRollups(LocalDateTime cutoff) {
+        LocalDateTime horizon = cutoff.truncatedTo(ChronoUnit.HOURS);
+        Timestamp oldest = jdbcTemplate.queryForObject("SELECT MIN(created) FROM stats", Timestamp.class);
+        if (oldest != null && oldest.toLocalDateTime().isBefore(horizon)) {
+            horizon = oldest.toLocalDateTime().truncatedTo(ChronoUnit.HOURS);
+        }
+        for (String table : ROLLUP_TABLES) {
+            int deleted = jdbcTemplate.update("DELETE FROM " + table + " WHERE bucket < ?", Timestamp.valueOf(horizon));
+            if (deleted > 0) {
+                log.info("Retention removed {} rows of {} before {}", deleted, table, horizon);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ru.practicum.statsserver.storage;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import ru.practicum.statscommon.model.ViewStats;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+public final class StatsSql {
+    public static final RowMapper<ViewStats> VIEW_STATS_MAPPER = (rs, rowNum) ->
+            new ViewStats(rs.getString("app_name"), rs.getString("uri"), rs.getLong("hits"));
+
+    private StatsSql() {
+    }
+
+    public static RowCallbackHandler streamTo(Consumer<ViewStats> consumer) {
+        return rs -> consumer.accept(VIEW_STATS_MAPPER.mapRow(rs, rs.getRow()));
+    }
+
+    public static String rangeCondition(String column, String prefix, List<TimeRange> ranges,
+                                        MapSqlParameterSource parameters) {
+        List<String> conditions = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            String from = prefix + "From" + i;
+            String to = prefix + "To" + i;
+            parameters.addValue(from, Timestamp.valueOf(ranges.get(i).getFrom()));
+            parameters.addValue(to, Timestamp.valueOf(ranges.get(i).getTo()));
+            conditions.add(column + " >= :" + from + " AND " + column + " < :" + to);
+        }
+        return "(" + String.join(" OR ", conditions) + ")";
+    }
+
+    /**
+     * Returns the condition selecting the URIs of {@code uris}, or an empty string for {@code null}. Patterns become
+     * {@code LIKE} subqueries on the URI dictionary.
+     */
+    public static String uriCondition(UriFilter uris, MapSqlParameterSource parameters) {
+        if (uris == null) {
+            return "";
+        }
+        List<String> conditions = new ArrayList<>();
+        if (!uris.getIds().isEmpty()) {
+            parameters.addValue("uriIds", uris.getIds());
+            conditions.add("uri_id IN (:uriIds)");
+        }
+        for (int i = 0; i < uris.getPatterns().size(); i++) {
+            parameters.addValue("uriPattern" + i, uris.getPatterns().get(i));
+            conditions.add("uri_id IN (SELECT id FROM stats_uri WHERE uri LIKE :uriPattern" + i + " ESCAPE '\\')");
+        }
+        return " AND (" + String.join(" OR ", conditions) + ")";
+    }
+
+    public static String uriPrefixCondition(String prefix, MapSqlParameterSource parameters) {
+        if (prefix == null || prefix.isEmpty()) {
+            return "";
+        }
+        parameters.addValue("uriPrefix", UriPattern.escapeLike(prefix) + "%");
+        return " AND uri_id IN (SELECT id FROM stats_uri WHERE uri LIKE :uriPrefix ESCAPE '\\')";
+    }
+
+    public static String top(String aggregateSql, int limit, MapSqlParameterSource parameters) {
+        parameters.addValue("limit", limit);
+        return aggregateSql + " ORDER BY hits DESC, app_id, uri_id LIMIT :limit";
+    }
+
+    public static String withNames(String aggregateSql) {
+        return "SELECT a.name AS app_name, u.uri AS uri, t.hits AS hits FROM (" + aggregateSql + ") AS t " +
+                "JOIN stats_app a ON a.id = t.app_id " +
+                "JOIN stats_uri u ON u.id = t.uri_id " +
+                "ORDER BY t.hits DESC";
+    }
+}
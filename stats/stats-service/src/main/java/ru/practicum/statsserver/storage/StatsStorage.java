@@ -0,0 +1,45 @@
+package ru.practicum.statsserver.storage;
+
+import ru.practicum.statscommon.model.UniqueMode;
+import ru.practicum.statscommon.model.ViewStats;
+import ru.practicum.statscommon.model.ViewStatsSeries;
+import ru.practicum.statsserver.model.Stats;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Storage engine behind {@code StatsService}, selected by {@code stats.storage.type}. All time bounds are
+ * inclusive, as in the public API.
+ */
+public interface StatsStorage {
+    void write(List<Stats> hits);
+
+    List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique);
+
+    /**
+     * Hands the rows of {@link #getStats} to {@code consumer} as they are produced, in no particular order, without
+     * collecting them into a list first.
+     */
+    void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, UniqueMode unique,
+                     Consumer<ViewStats> consumer);
+
+    List<ViewStats> getTop(LocalDateTime start, LocalDateTime end, int limit, UniqueMode unique, String prefix);
+
+    List<ViewStatsSeries> getTimeSeries(LocalDateTime start, LocalDateTime end, Duration step, List<String> uris,
+                                        UniqueMode unique);
+
+    /**
+     * Visits every stored hit of {@code uris}, or of all URIs if there are none, with the app, URI, address and
+     * time set. Used to move URIs to another shard.
+     */
+    void exportHits(List<String> uris, Consumer<Stats> consumer);
+
+    /**
+     * Removes every stored hit and everything derived from them. Used to start an interrupted snapshot restore
+     * over.
+     */
+    void clear();
+}
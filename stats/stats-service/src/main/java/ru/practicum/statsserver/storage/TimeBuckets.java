@@ -0,0 +1,36 @@
+package ru.practicum.statsserver.storage;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Consecutive buckets of {@code step} seconds starting at {@code start}; the last one is cut at the
+ * exclusive {@code end}.
+ */
+@Getter
+public class TimeBuckets {
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+    private final long stepSeconds;
+
+    public TimeBuckets(LocalDateTime start, LocalDateTime end, Duration step) {
+        this.start = start;
+        this.end = end;
+        this.stepSeconds = step.getSeconds();
+    }
+
+    public int index(LocalDateTime time) {
+        return (int) (Duration.between(start, time).getSeconds() / stepSeconds);
+    }
+
+    public LocalDateTime bucketStart(int index) {
+        return start.plusSeconds(index * stepSeconds);
+    }
+
+    public boolean isAlignedTo(ChronoUnit unit) {
+        return start.truncatedTo(unit).equals(start) && stepSeconds % unit.getDuration().getSeconds() == 0;
+    }
+}
@@ -0,0 +1,23 @@
+package ru.practicum.statsserver.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@AllArgsConstructor
+public class TimeRange {
+    private final LocalDateTime from;
+
+    private final LocalDateTime to;
+
+    public boolean isEmpty() {
+        return !from.isBefore(to);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + from + ", " + to + ")";
+    }
+}
@@ -0,0 +1,164 @@
+package ru.practicum.statsserver.storage;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.statscommon.StatsCommonUtils;
+import ru.practicum.statscommon.model.ViewStatsPoint;
+import ru.practicum.statscommon.model.ViewStatsSeries;
+import ru.practicum.statsserver.sketch.HyperLogLog;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.util.*;
+
+@Repository
+@ConditionalOnJdbcStorage
+public class TimeSeriesRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final DictionaryRepository dictionaryRepository;
+
+    public TimeSeriesRepository(NamedParameterJdbcTemplate jdbcTemplate, DictionaryRepository dictionaryRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dictionaryRepository = dictionaryRepository;
+    }
+
+    public List<ViewStatsSeries> getCounts(TimeBuckets buckets, RollupPlan plan, UriFilter uris) {
+        if (plan.isEmpty()) {
+            return List.of();
+        }
+        Map<StatsKey, SortedMap<Integer, Long>> series = new HashMap<>();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        String uriFilter = StatsSql.uriCondition(uris, parameters);
+        List<String> sources = new ArrayList<>();
+
+        if (!plan.getHours().isEmpty()) {
+            sources.add("SELECT bucket AS ts, app_id, uri_id, hits FROM stats_hour WHERE " +
+                    StatsSql.rangeCondition("bucket", "h", plan.getHours(), parameters) + uriFilter);
+        }
+        if (!plan.getMinutes().isEmpty()) {
+            sources.add("SELECT bucket AS ts, app_id, uri_id, hits FROM stats_minute WHERE " +
+                    StatsSql.rangeCondition("bucket", "m", plan.getMinutes(), parameters) + uriFilter);
+        }
+        if (!plan.getRaw().isEmpty()) {
+            sources.add("SELECT created AS ts, app_id, uri_id, COUNT(*) AS hits FROM stats WHERE " +
+                    StatsSql.rangeCondition("created", "r", plan.getRaw(), parameters) + uriFilter +
+                    " GROUP BY created, app_id, uri_id");
+        }
+
+        jdbcTemplate.query(String.join(" UNION ALL ", sources), parameters, rs -> {
+            series.computeIfAbsent(new StatsKey(rs.getInt("app_id"), rs.getInt("uri_id")), key -> new TreeMap<>())
+                    .merge(buckets.index(rs.getTimestamp("ts").toLocalDateTime()), rs.getLong("hits"), Long::sum);
+        });
+        return toSeries(buckets, series);
+    }
+
+    public List<ViewStatsSeries> getDistinctCounts(TimeBuckets buckets, UriFilter uris) {
+        Map<StatsKey, SortedMap<Integer, Long>> series = new HashMap<>();
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(buckets.getStart()))
+                .addValue("to", Timestamp.valueOf(buckets.getEnd()));
+        Set<ByteBuffer> ips = new HashSet<>();
+        StatsKey[] currentKey = new StatsKey[1];
+        int[] currentIndex = {-1};
+
+        jdbcTemplate.query("SELECT app_id, uri_id, created, user_ip FROM stats " +
+                "WHERE created >= :from AND created < :to" + StatsSql.uriCondition(uris, parameters) +
+                " ORDER BY app_id, uri_id, created", parameters, rs -> {
+                    StatsKey key = new StatsKey(rs.getInt("app_id"), rs.getInt("uri_id"));
+                    int index = buckets.index(rs.getTimestamp("created").toLocalDateTime());
+                    if (!key.equals(currentKey[0]) || index != currentIndex[0]) {
+                        addPoint(series, currentKey[0], currentIndex[0], ips.size());
+                        currentKey[0] = key;
+                        currentIndex[0] = index;
+                        ips.clear();
+                    }
+                    ips.add(ByteBuffer.wrap(rs.getBytes("user_ip")));
+                });
+        addPoint(series, currentKey[0], currentIndex[0], ips.size());
+        return toSeries(buckets, series);
+    }
+
+    public List<ViewStatsSeries> getApproxCounts(TimeBuckets buckets, RollupPlan plan, UriFilter uris) {
+        Map<StatsKey, SortedMap<Integer, Long>> series = new HashMap<>();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        String uriFilter = StatsSql.uriCondition(uris, parameters);
+
+        Map<StatsKey, Map<Integer, HyperLogLog>> edges = new HashMap<>();
+        if (!plan.getRaw().isEmpty()) {
+            jdbcTemplate.query("SELECT app_id, uri_id, created, user_ip FROM stats WHERE " +
+                    StatsSql.rangeCondition("created", "r", plan.getRaw(), parameters) + uriFilter, parameters, rs -> {
+                        edges.computeIfAbsent(new StatsKey(rs.getInt("app_id"), rs.getInt("uri_id")),
+                                        key -> new HashMap<>())
+                                .computeIfAbsent(buckets.index(rs.getTimestamp("created").toLocalDateTime()),
+                                        index -> new HyperLogLog())
+                                .add(rs.getBytes("user_ip"));
+                    });
+        }
+
+        if (!plan.getHours().isEmpty()) {
+            HyperLogLog[] current = new HyperLogLog[1];
+            StatsKey[] currentKey = new StatsKey[1];
+            int[] currentIndex = {-1};
+            jdbcTemplate.query("SELECT app_id, uri_id, bucket, sketch FROM stats_hll_hour WHERE " +
+                    StatsSql.rangeCondition("bucket", "h", plan.getHours(), parameters) + uriFilter +
+                    " ORDER BY app_id, uri_id, bucket", parameters, rs -> {
+                        StatsKey key = new StatsKey(rs.getInt("app_id"), rs.getInt("uri_id"));
+                        int index = buckets.index(rs.getTimestamp("bucket").toLocalDateTime());
+                        if (!key.equals(currentKey[0]) || index != currentIndex[0]) {
+                            addEstimate(series, currentKey[0], currentIndex[0], current[0], edges);
+                            currentKey[0] = key;
+                            currentIndex[0] = index;
+                            current[0] = new HyperLogLog();
+                        }
+                        current[0].merge(HyperLogLog.fromBytes(rs.getBytes("sketch")));
+                    });
+            addEstimate(series, currentKey[0], currentIndex[0], current[0], edges);
+        }
+        edges.forEach((key, sketches) -> sketches.forEach((index, sketch) ->
+                addPoint(series, key, index, sketch.estimate())));
+        return toSeries(buckets, series);
+    }
+
+    private void addEstimate(Map<StatsKey, SortedMap<Integer, Long>> series, StatsKey key, int index,
+                             HyperLogLog sketch, Map<StatsKey, Map<Integer, HyperLogLog>> edges) {
+        if (key == null) {
+            return;
+        }
+        Map<Integer, HyperLogLog> keyEdges = edges.get(key);
+        if (keyEdges != null) {
+            HyperLogLog edge = keyEdges.remove(index);
+            if (edge != null) {
+                sketch.merge(edge);
+            }
+        }
+        addPoint(series, key, index, sketch.estimate());
+    }
+
+    private void addPoint(Map<StatsKey, SortedMap<Integer, Long>> series, StatsKey key, int index, long hits) {
+        if (key != null && hits > 0) {
+            series.computeIfAbsent(key, k -> new TreeMap<>()).merge(index, hits, Long::sum);
+        }
+    }
+
+    private List<ViewStatsSeries> toSeries(TimeBuckets buckets, Map<StatsKey, SortedMap<Integer, Long>> series) {
+        Map<Integer, String> appNames = dictionaryRepository.findAppNames(
+                series.keySet().stream().map(StatsKey::getAppId).toList());
+        Map<Integer, String> uriValues = dictionaryRepository.findUriValues(
+                series.keySet().stream().map(StatsKey::getUriId).toList());
+
+        Map<StatsKey, Long> totals = new HashMap<>();
+        series.forEach((key, points) -> totals.put(key, points.values().stream().mapToLong(Long::longValue).sum()));
+        List<StatsKey> keys = new ArrayList<>(series.keySet());
+        keys.sort(Comparator.comparing(totals::get).reversed());
+
+        List<ViewStatsSeries> result = new ArrayList<>(keys.size());
+        for (StatsKey key : keys) {
+            List<ViewStatsPoint> points = new ArrayList<>();
+            series.get(key).forEach((index, hits) -> points.add(new ViewStatsPoint(
+                    buckets.bucketStart(index).format(StatsCommonUtils.DT_FORMATTER), hits)));
+            result.add(new ViewStatsSeries(appNames.get(key.getAppId()), uriValues.get(key.getUriId()), points));
+        }
+        return result;
+    }
+}
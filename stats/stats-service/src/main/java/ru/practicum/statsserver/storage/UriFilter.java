@@ -0,0 +1,28 @@
+package ru.practicum.statsserver.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Resolved URI filter of a query: the ids of the exact URIs and the {@code LIKE} patterns of the wildcard ones.
+ * Patterns are matched by the database, so they neither grow the query by one parameter per matching URI nor
+ * fill the dictionary cache.
+ */
+@Getter
+@AllArgsConstructor
+public class UriFilter {
+    private final Collection<Integer> ids;
+
+    private final List<String> patterns;
+
+    public boolean isEmpty() {
+        return ids.isEmpty() && patterns.isEmpty();
+    }
+
+    public boolean hasPatterns() {
+        return !patterns.isEmpty();
+    }
+}
@@ -0,0 +1,57 @@
+package ru.practicum.statsserver.storage;
+
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * URI filter with {@code *} standing for any sequence of characters, e.g. {@code /events/*}. The results of a
+ * pattern are still reported per concrete URI. A pattern with a literal prefix is answered by a range scan of the
+ * URI dictionary index.
+ */
+public final class UriPattern {
+    public static final char WILDCARD = '*';
+
+    private UriPattern() {
+    }
+
+    public static boolean isPattern(String uri) {
+        return uri.indexOf(WILDCARD) >= 0;
+    }
+
+    public static String escapeLike(String value) {
+        return value.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+
+    /**
+     * Returns the pattern as a {@code LIKE} pattern with {@code \} as the escape character.
+     */
+    public static String toLike(String pattern) {
+        return escapeLike(pattern).replace(WILDCARD, '%');
+    }
+
+    public static Predicate<String> matcher(String pattern) {
+        int wildcard = pattern.indexOf(WILDCARD);
+        if (wildcard < 0) {
+            return pattern::equals;
+        }
+        if (wildcard == pattern.length() - 1) {
+            String prefix = pattern.substring(0, wildcard);
+            return uri -> uri.startsWith(prefix);
+        }
+        StringBuilder regex = new StringBuilder();
+        int from = 0;
+        for (int i = wildcard; i >= 0; i = pattern.indexOf(WILDCARD, from)) {
+            if (i > from) {
+                regex.append(Pattern.quote(pattern.substring(from, i)));
+            }
+            regex.append(".*");
+            from = i + 1;
+        }
+        if (from < pattern.length()) {
+            regex.append(Pattern.quote(pattern.substring(from)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL).asMatchPredicate();
+    }
+}
@@ -0,0 +1,572 @@
+package ru.practicum.statsserver.storage.archive;
+
+import lombok.Getter;
+import ru.practicum.statsserver.storage.HitVisitor;
+import ru.practicum.statsserver.storage.NamedStatsKey;
+import ru.practicum.statsserver.storage.UriPattern;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable columnar file with the hits of one closed time range, sorted by URI and time. URIs are stored once
+ * in a directory of row runs together with the per-app hit count of every run, so a query whose range covers
+ * the whole segment is answered from the footer alone. Rows are split into chunks of {@value #CHUNK_ROWS}; every
+ * chunk keeps three separately deflated columns: the segment-local app index, the zigzag-encoded delta of the
+ * timestamp to the previous row and the binary address. Addresses are only read for distinct counts.
+ * <p>
+ * Layout: magic and version, the chunks, the footer with the dictionaries and the chunk directory, and a
+ * trailer with the footer offset.
+ */
+class ArchiveSegment implements Closeable {
+    static final int CHUNK_ROWS = 16384;
+
+    private static final int MAGIC = 0x53544152;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+    @Getter
+    private final Path file;
+    private final FileChannel channel;
+    @Getter
+    private final long from;
+    @Getter
+    private final long to;
+    @Getter
+    private final int rows;
+    private final String[] apps;
+    private final UriRun[] uris;
+    private final Map<String, Integer> uriIndexes;
+    private final Chunk[] chunks;
+    private final NamedStatsKey[][] keys;
+
+    private ArchiveSegment(Path file, FileChannel channel, long from, long to, int rows, String[] apps,
+                           UriRun[] uris, Chunk[] chunks) {
+        this.file = file;
+        this.channel = channel;
+        this.from = from;
+        this.to = to;
+        this.rows = rows;
+        this.apps = apps;
+        this.uris = uris;
+        this.chunks = chunks;
+        this.uriIndexes = new HashMap<>(uris.length * 2);
+        for (int i = 0; i < uris.length; i++) {
+            uriIndexes.put(uris[i].uri(), i);
+        }
+        this.keys = new NamedStatsKey[uris.length][];
+    }
+
+    static ArchiveSegment open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException("Truncated archive segment " + file);
+            }
+            ByteBuffer header = read(channel, 0, HEADER_SIZE);
+            ByteBuffer trailer = read(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+            long footerOffset = trailer.getLong();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION || trailer.getInt() != MAGIC) {
+                throw new IOException("Unsupported archive segment format in " + file);
+            }
+            if (footerOffset < HEADER_SIZE || footerOffset > size - TRAILER_SIZE) {
+                throw new IOException("Corrupted archive segment trailer in " + file);
+            }
+
+            ByteBuffer footer = read(channel, footerOffset, (int) (size - TRAILER_SIZE - footerOffset));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer.array()));
+            long from = in.readLong();
+            long to = in.readLong();
+            int rows = in.readInt();
+
+            String[] apps = new String[in.readInt()];
+            for (int i = 0; i < apps.length; i++) {
+                apps[i] = in.readUTF();
+            }
+
+            UriRun[] uris = new UriRun[in.readInt()];
+            for (int i = 0; i < uris.length; i++) {
+                String uri = in.readUTF();
+                int firstRow = in.readInt();
+                int runRows = in.readInt();
+                int[] appIndexes = new int[in.readInt()];
+                long[] hits = new long[appIndexes.length];
+                for (int j = 0; j < appIndexes.length; j++) {
+                    appIndexes[j] = in.readInt();
+                    hits[j] = in.readLong();
+                }
+                uris[i] = new UriRun(uri, firstRow, runRows, appIndexes, hits);
+            }
+
+            Chunk[] chunks = new Chunk[in.readInt()];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = new Chunk(in.readInt(), in.readInt(), in.readLong(), in.readLong(), in.readLong(),
+                        new Column(in.readInt(), in.readInt()), new Column(in.readInt(), in.readInt()),
+                        new Column(in.readInt(), in.readInt()));
+            }
+            return new ArchiveSegment(file, channel, from, to, rows, apps, uris, chunks);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    boolean overlaps(long from, long to) {
+        return this.from < to && from < this.to;
+    }
+
+    /**
+     * Adds the hits with {@code from <= timestamp < to} to {@code counts}. URIs not matched by
+     * {@code uriFilter}, which may contain {@link UriPattern} patterns, are skipped; {@code null} selects all
+     * of them.
+     */
+    void count(long from, long to, Collection<String> uriFilter, Map<NamedStatsKey, Long> counts) throws IOException {
+        if (!overlaps(from, to)) {
+            return;
+        }
+        int[] selected = select(uriFilter);
+        if (from <= this.from && this.to <= to) {
+            for (int uriIndex : selected) {
+                UriRun run = uris[uriIndex];
+                for (int i = 0; i < run.appIndexes().length; i++) {
+                    counts.merge(key(uriIndex, run.appIndexes()[i]), run.hits()[i], Long::sum);
+                }
+            }
+            return;
+        }
+        scan(from, to, selected, false, (key, timestamp, ip) -> counts.merge(key, 1L, Long::sum));
+    }
+
+    /**
+     * Visits the hits with {@code from <= timestamp < to} together with their addresses.
+     */
+    void forEach(long from, long to, Collection<String> uriFilter, HitVisitor visitor) throws IOException {
+        if (!overlaps(from, to)) {
+            return;
+        }
+        scan(from, to, select(uriFilter), true, (key, timestamp, ip) -> visitor.accept(key, ip));
+    }
+
+    /**
+     * Visits every hit of the URIs in {@code uriFilter} with its timestamp in epoch seconds.
+     */
+    void export(Collection<String> uriFilter, TimedHitVisitor visitor) throws IOException {
+        scan(from, to, select(uriFilter), true, visitor);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void scan(long from, long to, int[] selected, boolean withIps, TimedHitVisitor visitor)
+            throws IOException {
+        int next = 0;
+        for (Chunk chunk : chunks) {
+            int chunkEnd = chunk.firstRow() + chunk.rows();
+            while (next < selected.length && uris[selected[next]].end() <= chunk.firstRow()) {
+                next++;
+            }
+            if (next == selected.length) {
+                return;
+            }
+            if (uris[selected[next]].firstRow() >= chunkEnd
+                    || chunk.maxTimestamp() < from || chunk.minTimestamp() >= to) {
+                continue;
+            }
+
+            ByteBuffer data = read(channel, chunk.offset(), chunk.app().length() + chunk.time().length());
+            Cursor appColumn = new Cursor(inflate(data.array(), 0, chunk.app()));
+            Cursor timeColumn = new Cursor(inflate(data.array(), chunk.app().length(), chunk.time()));
+            int[] appIndexes = new int[chunk.rows()];
+            long[] timestamps = new long[chunk.rows()];
+            long previous = this.from;
+            for (int i = 0; i < chunk.rows(); i++) {
+                appIndexes[i] = (int) appColumn.nextVarLong();
+                previous += unzigzag(timeColumn.nextVarLong());
+                timestamps[i] = previous;
+            }
+
+            byte[] ipColumn = null;
+            int[] ipOffsets = null;
+            if (withIps) {
+                long ipOffset = chunk.offset() + chunk.app().length() + chunk.time().length();
+                ipColumn = inflate(read(channel, ipOffset, chunk.ip().length()).array(), 0, chunk.ip());
+                ipOffsets = new int[chunk.rows()];
+                for (int i = 0, position = 0; i < chunk.rows(); i++) {
+                    ipOffsets[i] = position;
+                    position += 1 + ipColumn[position];
+                }
+            }
+
+            for (int s = next; s < selected.length; s++) {
+                UriRun run = uris[selected[s]];
+                if (run.firstRow() >= chunkEnd) {
+                    break;
+                }
+                int first = Math.max(run.firstRow(), chunk.firstRow()) - chunk.firstRow();
+                int last = Math.min(run.end(), chunkEnd) - chunk.firstRow();
+                for (int i = first; i < last; i++) {
+                    if (timestamps[i] >= from && timestamps[i] < to) {
+                        byte[] ip = null;
+                        if (withIps) {
+                            ip = Arrays.copyOfRange(ipColumn, ipOffsets[i] + 1,
+                                    ipOffsets[i] + 1 + ipColumn[ipOffsets[i]]);
+                        }
+                        visitor.accept(key(selected[s], appIndexes[i]), timestamps[i], ip);
+                    }
+                }
+            }
+        }
+    }
+
+    private int[] select(Collection<String> uriFilter) {
+        if (uriFilter == null) {
+            int[] all = new int[uris.length];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        Set<Integer> selected = new HashSet<>();
+        for (String uri : new HashSet<>(uriFilter)) {
+            if (!UriPattern.isPattern(uri)) {
+                Integer index = uriIndexes.get(uri);
+                if (index != null) {
+                    selected.add(index);
+                }
+                continue;
+            }
+            Predicate<String> matcher = UriPattern.matcher(uri);
+            for (int i = 0; i < uris.length; i++) {
+                if (matcher.test(uris[i].uri())) {
+                    selected.add(i);
+                }
+            }
+        }
+        return selected.stream()
+                .mapToInt(Integer::intValue)
+                .sorted()
+                .toArray();
+    }
+
+    private NamedStatsKey key(int uriIndex, int appIndex) {
+        NamedStatsKey[] row = keys[uriIndex];
+        if (row == null) {
+            row = new NamedStatsKey[apps.length];
+            keys[uriIndex] = row;
+        }
+        NamedStatsKey key = row[appIndex];
+        if (key == null) {
+            key = new NamedStatsKey(apps[appIndex], uris[uriIndex].uri());
+            row[appIndex] = key;
+        }
+        return key;
+    }
+
+    private byte[] inflate(byte[] source, int offset, Column column) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(source, offset, column.length());
+            byte[] raw = new byte[column.rawLength()];
+            int size = 0;
+            while (size < raw.length) {
+                int inflated = inflater.inflate(raw, size, raw.length - size);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Truncated column in " + file);
+                }
+                size += inflated;
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted column in " + file, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of archive segment");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @FunctionalInterface
+    interface TimedHitVisitor {
+        void accept(NamedStatsKey key, long timestamp, byte[] ip);
+    }
+
+    private record UriRun(String uri, int firstRow, int rows, int[] appIndexes, long[] hits) {
+        int end() {
+            return firstRow + rows;
+        }
+    }
+
+    private record Column(int length, int rawLength) {
+    }
+
+    private record Chunk(int firstRow, int rows, long minTimestamp, long maxTimestamp, long offset,
+                         Column app, Column time, Column ip) {
+    }
+
+    private static final class Cursor {
+        private final byte[] bytes;
+        private int position;
+
+        private Cursor(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long nextVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    private static final class ColumnBuffer {
+        private byte[] bytes = new byte[4096];
+        private int size;
+
+        void put(int value) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void put(byte[] values) {
+            ensureCapacity(values.length);
+            System.arraycopy(values, 0, bytes, size, values.length);
+            size += values.length;
+        }
+
+        void putVarLong(long value) {
+            while ((value & ~0x7fL) != 0) {
+                put((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            put((int) value);
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * Streams rows into a new segment file. Rows must arrive grouped by URI; within a URI they are expected in
+     * time order, which keeps the timestamp deltas small.
+     */
+    static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final DataOutputStream out;
+        private final long from;
+        private final long to;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final byte[] scratch = new byte[8192];
+        private final Map<String, Integer> appIndexes = new HashMap<>();
+        private final List<String> apps = new ArrayList<>();
+        private final Set<String> seenUris = new HashSet<>();
+        private final List<UriRun> uris = new ArrayList<>();
+        private final List<Chunk> chunks = new ArrayList<>();
+        private final ColumnBuffer appColumn = new ColumnBuffer();
+        private final ColumnBuffer timeColumn = new ColumnBuffer();
+        private final ColumnBuffer ipColumn = new ColumnBuffer();
+        private long position;
+        private int rows;
+        private String uri;
+        private int uriFirstRow;
+        private SortedMap<Integer, Long> uriHits;
+        private int chunkFirstRow;
+        private long chunkMin = Long.MAX_VALUE;
+        private long chunkMax = Long.MIN_VALUE;
+        private long previous;
+
+        private Writer(FileChannel channel, long from, long to) {
+            this.channel = channel;
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            this.from = from;
+            this.to = to;
+            this.previous = from;
+        }
+
+        static Writer create(Path file, long from, long to) throws IOException {
+            Writer writer = new Writer(FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE), from, to);
+            writer.out.writeInt(MAGIC);
+            writer.out.writeInt(VERSION);
+            writer.position = HEADER_SIZE;
+            return writer;
+        }
+
+        void add(String app, String uri, long timestamp, byte[] ip) throws IOException {
+            if (timestamp < from || timestamp >= to) {
+                throw new IllegalArgumentException("Hit at " + timestamp + " is outside [" + from + ", " + to + ")");
+            }
+            if (ip.length > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Address of " + ip.length + " bytes is too long");
+            }
+            if (!uri.equals(this.uri)) {
+                finishRun();
+                if (!seenUris.add(uri)) {
+                    throw new IllegalStateException("Hits of " + uri + " are not contiguous");
+                }
+                this.uri = uri;
+                this.uriFirstRow = rows;
+                this.uriHits = new TreeMap<>();
+            }
+            int appIndex = appIndexes.computeIfAbsent(app, name -> {
+                apps.add(name);
+                return apps.size() - 1;
+            });
+            uriHits.merge(appIndex, 1L, Long::sum);
+
+            appColumn.putVarLong(appIndex);
+            timeColumn.putVarLong(zigzag(timestamp - previous));
+            ipColumn.put(ip.length);
+            ipColumn.put(ip);
+            previous = timestamp;
+            chunkMin = Math.min(chunkMin, timestamp);
+            chunkMax = Math.max(chunkMax, timestamp);
+            rows++;
+            if (rows - chunkFirstRow == CHUNK_ROWS) {
+                flushChunk();
+            }
+        }
+
+        /**
+         * Writes the footer and forces the file to disk. Returns the number of rows written.
+         */
+        int finish() throws IOException {
+            finishRun();
+            flushChunk();
+
+            ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+            DataOutputStream footer = new DataOutputStream(footerBytes);
+            footer.writeLong(from);
+            footer.writeLong(to);
+            footer.writeInt(rows);
+            footer.writeInt(apps.size());
+            for (String app : apps) {
+                footer.writeUTF(app);
+            }
+            footer.writeInt(uris.size());
+            for (UriRun run : uris) {
+                footer.writeUTF(run.uri());
+                footer.writeInt(run.firstRow());
+                footer.writeInt(run.rows());
+                footer.writeInt(run.appIndexes().length);
+                for (int i = 0; i < run.appIndexes().length; i++) {
+                    footer.writeInt(run.appIndexes()[i]);
+                    footer.writeLong(run.hits()[i]);
+                }
+            }
+            footer.writeInt(chunks.size());
+            for (Chunk chunk : chunks) {
+                footer.writeInt(chunk.firstRow());
+                footer.writeInt(chunk.rows());
+                footer.writeLong(chunk.minTimestamp());
+                footer.writeLong(chunk.maxTimestamp());
+                footer.writeLong(chunk.offset());
+                for (Column column : List.of(chunk.app(), chunk.time(), chunk.ip())) {
+                    footer.writeInt(column.length());
+                    footer.writeInt(column.rawLength());
+                }
+            }
+
+            out.write(footerBytes.toByteArray());
+            out.writeLong(position);
+            out.writeInt(MAGIC);
+            out.flush();
+            channel.force(true);
+            return rows;
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            out.close();
+        }
+
+        private void finishRun() {
+            if (uri == null) {
+                return;
+            }
+            int[] runApps = new int[uriHits.size()];
+            long[] runHits = new long[uriHits.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Long> entry : uriHits.entrySet()) {
+                runApps[i] = entry.getKey();
+                runHits[i++] = entry.getValue();
+            }
+            uris.add(new UriRun(uri, uriFirstRow, rows - uriFirstRow, runApps, runHits));
+            uri = null;
+        }
+
+        private void flushChunk() throws IOException {
+            int chunkRows = rows - chunkFirstRow;
+            if (chunkRows == 0) {
+                return;
+            }
+            long offset = position;
+            Column app = writeColumn(appColumn);
+            Column time = writeColumn(timeColumn);
+            Column ip = writeColumn(ipColumn);
+            chunks.add(new Chunk(chunkFirstRow, chunkRows, chunkMin, chunkMax, offset, app, time, ip));
+
+            chunkFirstRow = rows;
+            chunkMin = Long.MAX_VALUE;
+            chunkMax = Long.MIN_VALUE;
+            previous = from;
+        }
+
+        private Column writeColumn(ColumnBuffer column) throws IOException {
+            deflater.reset();
+            deflater.setInput(column.bytes, 0, column.size);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                int compressed = deflater.deflate(scratch);
+                out.write(scratch, 0, compressed);
+                length += compressed;
+            }
+            position += length;
+            Column written = new Column(length, column.size);
+            column.clear();
+            return written;
+        }
+    }
+}
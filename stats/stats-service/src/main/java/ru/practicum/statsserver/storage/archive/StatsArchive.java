@@ -0,0 +1,384 @@
+package ru.practicum.statsserver.storage.archive;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.storage.ConditionalOnJdbcStorage;
+import ru.practicum.statsserver.storage.DatabasePlatform;
+import ru.practicum.statsserver.storage.HitVisitor;
+import ru.practicum.statsserver.storage.NamedStatsKey;
+import ru.practicum.statsserver.storage.StatsPartitionManager;
+import ru.practicum.statsserver.storage.TimeRange;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Cold tier below the {@code stats} table. Whole days older than {@code stats.archive.after} are written to
+ * {@link ArchiveSegment}s in {@code stats.archive.directory} and deleted from the table in the same repeatable-read
+ * transaction, so hits inserted meanwhile stay in the table for the next run. Segments store app and URI names
+ * rather than dictionary ids and do not depend on the database dictionaries.
+ * <p>
+ * A segment is written under a temporary name and recorded in {@code stats_archive_segment} by the transaction that
+ * deletes its hits; it only gets its final name after the commit. On startup a temporary segment is promoted if it
+ * is recorded, its hits being gone, and removed otherwise, its hits still being in the table, so a crash between the
+ * commit and the rename neither loses nor doubles a day.
+ * <p>
+ * A day with a daily partition of its own is removed by detaching and dropping the partition, which is locked against
+ * writes while the segment is written; other days are deleted row by row.
+ * <p>
+ * Ranges before {@link #getArchivedUntil()} are read from the segments plus the hits that arrived after their day
+ * was archived. Rollups and sketches of archived days are kept in the database, so the top and time-series
+ * endpoints keep using them; a top that needs raw hits of archived days is counted from the segments, a time
+ * series that does is refused.
+ */
+@Component
+@ConditionalOnJdbcStorage
+@Slf4j
+public class StatsArchive {
+    private static final String SEGMENT_PREFIX = "archive-";
+    private static final String SEGMENT_SUFFIX = ".col";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String SELECT_DAY = "SELECT a.name AS app_name, u.uri AS uri, s.created AS created, " +
+            "s.user_ip AS user_ip FROM stats s " +
+            "JOIN stats_app a ON a.id = s.app_id " +
+            "JOIN stats_uri u ON u.id = s.uri_id " +
+            "WHERE s.created >= ? AND s.created < ? " +
+            "ORDER BY s.uri_id, s.created";
+
+    private static final String RECORD_SEGMENT = "INSERT INTO stats_archive_segment (name) VALUES (?)";
+    private static final String FORGET_SEGMENT = "DELETE FROM stats_archive_segment WHERE name = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabasePlatform databasePlatform;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Path directory;
+    private final Duration after;
+    private final Duration retention;
+    private final List<ArchiveSegment> segments = new CopyOnWriteArrayList<>();
+    private volatile LocalDateTime archivedUntil;
+
+    public StatsArchive(JdbcTemplate jdbcTemplate, DatabasePlatform databasePlatform,
+                        PlatformTransactionManager transactionManager,
+                        @Value("${stats.archive.enabled:false}") boolean enabled,
+                        @Value("${stats.archive.directory:stats-archive}") Path directory,
+                        @Value("${stats.archive.after:21d}") String after,
+                        @Value("${stats.retention.period:}") String retention) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.databasePlatform = databasePlatform;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.enabled = enabled;
+        this.directory = directory;
+        this.after = DurationStyle.detectAndParse(after);
+        this.retention = retention.isBlank() ? null : DurationStyle.detectAndParse(retention);
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        Set<String> recorded = new HashSet<>(jdbcTemplate.queryForList("SELECT name FROM stats_archive_segment",
+                String.class));
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.sorted().toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Path segment = file.resolveSibling(name.substring(0, name.length() - TEMP_SUFFIX.length()));
+                    if (recorded.contains(segment.getFileName().toString())) {
+                        log.warn("Promoting archive segment {} of a committed transaction", segment);
+                        Files.move(file, segment, StandardCopyOption.ATOMIC_MOVE);
+                        add(ArchiveSegment.open(segment));
+                    } else {
+                        log.warn("Removing unfinished archive segment {}", file);
+                        Files.delete(file);
+                    }
+                } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    // A segment gets its final name only after its transaction committed.
+                    if (!recorded.contains(name)) {
+                        jdbcTemplate.update(RECORD_SEGMENT, name);
+                    }
+                    add(ArchiveSegment.open(file));
+                }
+            }
+        }
+        log.info("Archive opened in {}: {} segments, {} hits, archived until {}", directory, segments.size(),
+                segments.stream().mapToLong(ArchiveSegment::getRows).sum(), archivedUntil);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public LocalDateTime getArchivedUntil() {
+        return archivedUntil;
+    }
+
+    /**
+     * Returns whether a range starting at {@code start} has to read its beginning from the archive.
+     */
+    public boolean covers(LocalDateTime start) {
+        LocalDateTime until = archivedUntil;
+        return enabled && until != null && start.isBefore(until);
+    }
+
+    public Map<NamedStatsKey, Long> countHits(TimeRange range, Collection<String> uris) {
+        Map<NamedStatsKey, Long> counts = new HashMap<>();
+        try {
+            for (ArchiveSegment segment : segments) {
+                segment.count(toEpochSecond(range.getFrom()), toEpochSecond(range.getTo()), uris, counts);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return counts;
+    }
+
+    public void forEachHit(TimeRange range, Collection<String> uris, HitVisitor visitor) {
+        try {
+            for (ArchiveSegment segment : segments) {
+                segment.forEach(toEpochSecond(range.getFrom()), toEpochSecond(range.getTo()), uris, visitor);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Visits every archived hit of {@code uris} as a {@link Stats} with the app, URI, address and time set.
+     */
+    public void exportHits(Collection<String> uris, Consumer<Stats> consumer) {
+        try {
+            for (ArchiveSegment segment : segments) {
+                segment.export(uris, (key, timestamp, ip) -> consumer.accept(Stats.builder()
+                        .app(key.getApp())
+                        .uri(key.getUri())
+                        .ip(ip)
+                        .timestamp(LocalDateTime.ofEpochSecond(timestamp, 0, ZoneOffset.UTC))
+                        .build()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${stats.archive.interval-ms:3600000}",
+            initialDelayString = "${stats.archive.interval-ms:3600000}")
+    public synchronized void archive() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minus(after).truncatedTo(ChronoUnit.DAYS);
+        try {
+            Timestamp oldest = jdbcTemplate.queryForObject("SELECT MIN(created) FROM stats WHERE created < ?",
+                    Timestamp.class, Timestamp.valueOf(cutoff));
+            while (oldest != null) {
+                LocalDateTime from = oldest.toLocalDateTime().truncatedTo(ChronoUnit.DAYS);
+                LocalDateTime to = from.plusDays(1);
+                archiveDay(from, to);
+                oldest = jdbcTemplate.queryForObject(
+                        "SELECT MIN(created) FROM stats WHERE created >= ? AND created < ?",
+                        Timestamp.class, Timestamp.valueOf(to), Timestamp.valueOf(cutoff));
+            }
+            if (archivedUntil == null || archivedUntil.isBefore(cutoff)) {
+                archivedUntil = cutoff;
+            }
+            if (retention != null) {
+                applyRetention(LocalDateTime.now().minus(retention));
+            }
+        } catch (RuntimeException | IOException e) {
+            log.error("Failed to archive hits before {}", cutoff, e);
+        }
+    }
+
+    /**
+     * Deletes every archive segment.
+     */
+    public synchronized void clear() {
+        try {
+            for (ArchiveSegment segment : segments) {
+                segments.remove(segment);
+                segment.close();
+                Files.deleteIfExists(segment.getFile());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        jdbcTemplate.update("DELETE FROM stats_archive_segment");
+        archivedUntil = null;
+        log.info("Archive in {} cleared", directory);
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        for (ArchiveSegment segment : segments) {
+            segment.close();
+        }
+    }
+
+    private void archiveDay(LocalDateTime from, LocalDateTime to) {
+        Path file = directory.resolve(SEGMENT_PREFIX + from.format(DateTimeFormatter.BASIC_ISO_DATE) + "-" +
+                System.currentTimeMillis() + SEGMENT_SUFFIX);
+        Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        String partition = findDailyPartition(from.toLocalDate());
+
+        int rows = transactionTemplate.execute(status -> {
+            if (partition != null) {
+                // Taken before the first query, so the snapshot of the day includes every hit the partition holds.
+                jdbcTemplate.execute("LOCK TABLE " + partition + " IN EXCLUSIVE MODE");
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int completion) {
+                    if (completion == STATUS_COMMITTED) {
+                        promote(temp, file);
+                    } else {
+                        discard(temp);
+                    }
+                }
+            });
+
+            try {
+                int written = writeSegment(temp, from, to);
+                if (written == 0) {
+                    Files.delete(temp);
+                    return 0;
+                }
+                long deleted = partition != null ? dropPartition(partition)
+                        : jdbcTemplate.update("DELETE FROM stats WHERE created >= ? AND created < ?",
+                        Timestamp.valueOf(from), Timestamp.valueOf(to));
+                if (deleted != written) {
+                    throw new IllegalStateException("Archived " + written + " hits of " + from.toLocalDate() +
+                            " but deleted " + deleted);
+                }
+                jdbcTemplate.update(RECORD_SEGMENT, file.getFileName().toString());
+                return written;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        if (rows > 0) {
+            log.info("Archived {} hits of {} to {}", rows, from.toLocalDate(), file);
+        }
+    }
+
+    /**
+     * Returns the daily partition of {@code day}, or {@code null} if its hits are kept elsewhere and have to be
+     * deleted row by row.
+     */
+    private String findDailyPartition(LocalDate day) {
+        if (databasePlatform != DatabasePlatform.POSTGRESQL) {
+            return null;
+        }
+        String partition = StatsPartitionManager.dailyPartition(day);
+        return jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition)
+                ? partition : null;
+    }
+
+    private long dropPartition(String partition) {
+        long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + partition, Long.class);
+        jdbcTemplate.execute("ALTER TABLE stats DETACH PARTITION " + partition);
+        jdbcTemplate.execute("DROP TABLE " + partition);
+        return rows;
+    }
+
+    private int writeSegment(Path file, LocalDateTime from, LocalDateTime to) throws IOException {
+        try (ArchiveSegment.Writer writer = ArchiveSegment.Writer.create(file, toEpochSecond(from),
+                toEpochSecond(to))) {
+            jdbcTemplate.query(SELECT_DAY, rs -> {
+                try {
+                    writer.add(rs.getString("app_name"), rs.getString("uri"),
+                            toEpochSecond(rs.getTimestamp("created").toLocalDateTime()), rs.getBytes("user_ip"));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, Timestamp.valueOf(from), Timestamp.valueOf(to));
+            return writer.finish();
+        }
+    }
+
+    private void applyRetention(LocalDateTime cutoff) throws IOException {
+        for (ArchiveSegment segment : segments) {
+            if (segment.getTo() <= toEpochSecond(cutoff)) {
+                segments.remove(segment);
+                segment.close();
+                Files.deleteIfExists(segment.getFile());
+                jdbcTemplate.update(FORGET_SEGMENT, segment.getFile().getFileName().toString());
+                log.info("Retention removed archive segment {}", segment.getFile());
+            }
+        }
+    }
+
+    private void add(ArchiveSegment segment) {
+        segments.add(segment);
+        LocalDateTime to = LocalDateTime.ofEpochSecond(segment.getTo(), 0, ZoneOffset.UTC);
+        if (archivedUntil == null || archivedUntil.isBefore(to)) {
+            archivedUntil = to;
+        }
+    }
+
+    /**
+     * Gives the segment of a committed transaction its final name. If that fails, the temporary file is left for
+     * {@link #load()} to promote on the next start.
+     */
+    private void promote(Path temp, Path file) {
+        try {
+            if (!Files.exists(temp)) {
+                return;
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            add(ArchiveSegment.open(file));
+        } catch (IOException e) {
+            log.error("Failed to promote archive segment {}, it is promoted on the next start", temp, e);
+        }
+    }
+
+    private void discard(Path temp) {
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            log.error("Failed to remove archive segment {} of a rolled back transaction", temp, e);
+        }
+    }
+
+    private static long toEpochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,97 @@
+package ru.practicum.statsserver.storage.log;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Append-only file of length-prefixed UTF-8 values; the id of a value is its 1-based position in the file.
+ * A record cut short by a crash is truncated away when the file is opened.
+ */
+@Slf4j
+class LogDictionary implements Closeable {
+    private final FileChannel channel;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    LogDictionary(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        load();
+    }
+
+    synchronized int resolve(String value) throws IOException {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes).flip();
+        while (record.hasRemaining()) {
+            channel.write(record, channel.size());
+        }
+        values.add(value);
+        ids.put(value, values.size());
+        return values.size();
+    }
+
+    synchronized Integer find(String value) {
+        return ids.get(value);
+    }
+
+    synchronized String value(int id) {
+        return id >= 1 && id <= values.size() ? values.get(id - 1) : null;
+    }
+
+    Set<Integer> findByPrefix(String prefix) {
+        return findMatching(value -> value.startsWith(prefix));
+    }
+
+    synchronized Set<Integer> findMatching(Predicate<String> filter) {
+        Set<Integer> result = new HashSet<>();
+        for (int i = 0; i < values.size(); i++) {
+            if (filter.test(values.get(i))) {
+                result.add(i + 1);
+            }
+        }
+        return result;
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void load() throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        while (buffer.remaining() >= Integer.BYTES) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            values.add(value);
+            ids.put(value, values.size());
+        }
+        if (buffer.position() < size) {
+            log.warn("Truncating {} bytes of an incomplete dictionary record", size - buffer.position());
+            channel.truncate(buffer.position());
+        }
+    }
+}
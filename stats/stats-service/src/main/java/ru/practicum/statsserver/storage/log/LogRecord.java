@@ -0,0 +1,63 @@
+package ru.practicum.statsserver.storage.log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cursor over one fixed-width hit record of a {@link LogSegment}, reused between records to avoid
+ * allocation while scanning. The address is copied only when {@link #ip()} is called.
+ */
+class LogRecord {
+    static final int SIZE = 40;
+
+    private static final int TIMESTAMP_OFFSET = 0;
+    private static final int APP_OFFSET = 8;
+    private static final int URI_OFFSET = 12;
+    private static final int IP_LENGTH_OFFSET = 16;
+    private static final int IP_OFFSET = 17;
+    private static final int MAX_IP_LENGTH = 16;
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    static void write(ByteBuffer buffer, int offset, long timestamp, int appId, int uriId, byte[] ip) {
+        if (ip.length > MAX_IP_LENGTH) {
+            throw new IllegalArgumentException("Address of " + ip.length + " bytes does not fit a record");
+        }
+        buffer.putLong(offset + TIMESTAMP_OFFSET, timestamp);
+        buffer.putInt(offset + APP_OFFSET, appId);
+        buffer.putInt(offset + URI_OFFSET, uriId);
+        buffer.put(offset + IP_LENGTH_OFFSET, (byte) ip.length);
+        buffer.put(offset + IP_OFFSET, ip);
+    }
+
+    static long timestamp(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + TIMESTAMP_OFFSET);
+    }
+
+    void moveTo(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    long timestamp() {
+        return buffer.getLong(offset + TIMESTAMP_OFFSET);
+    }
+
+    int appId() {
+        return buffer.getInt(offset + APP_OFFSET);
+    }
+
+    int uriId() {
+        return buffer.getInt(offset + URI_OFFSET);
+    }
+
+    long key() {
+        return ((long) appId() << 32) | (uriId() & 0xffffffffL);
+    }
+
+    byte[] ip() {
+        byte[] ip = new byte[buffer.get(offset + IP_LENGTH_OFFSET)];
+        buffer.get(offset + IP_OFFSET, ip);
+        return ip;
+    }
+}
@@ -0,0 +1,170 @@
+package ru.practicum.statsserver.storage.log;
+
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Memory-mapped file of fixed-width {@link LogRecord}s behind a small header. Hits are appended in arrival
+ * order, so their timestamps are not sorted; the time index keeps the minimum and maximum timestamp of every
+ * block of {@value #BLOCK_RECORDS} records, letting scans skip blocks and whole segments outside the range.
+ * The index is rebuilt from the records when the segment is opened.
+ * <p>
+ * There is a single writer. Readers see every record below the published count.
+ */
+class LogSegment implements Closeable {
+    static final int BLOCK_RECORDS = 1024;
+    static final int HEADER_SIZE = 64;
+
+    private static final int MAGIC = 0x53544c47;
+    private static final int VERSION = 1;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int RECORD_SIZE_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+    private static final int COUNT_OFFSET = 16;
+
+    @Getter
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long[] blockMin;
+    private final long[] blockMax;
+    private volatile int count;
+    private volatile long minTimestamp = Long.MAX_VALUE;
+    private volatile long maxTimestamp = Long.MIN_VALUE;
+
+    private LogSegment(Path file, FileChannel channel, int capacity) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.capacity = capacity;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * LogRecord.SIZE);
+        int blocks = (capacity + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+        this.blockMin = new long[blocks];
+        this.blockMax = new long[blocks];
+        Arrays.fill(blockMin, Long.MAX_VALUE);
+        Arrays.fill(blockMax, Long.MIN_VALUE);
+    }
+
+    static LogSegment create(Path file, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        LogSegment segment = new LogSegment(file, channel, capacity);
+        segment.buffer.putInt(MAGIC_OFFSET, MAGIC);
+        segment.buffer.putInt(VERSION_OFFSET, VERSION);
+        segment.buffer.putInt(RECORD_SIZE_OFFSET, LogRecord.SIZE);
+        segment.buffer.putInt(CAPACITY_OFFSET, capacity);
+        segment.buffer.putInt(COUNT_OFFSET, 0);
+        return segment;
+    }
+
+    static LogSegment open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION
+                || header.getInt(RECORD_SIZE_OFFSET) != LogRecord.SIZE) {
+            channel.close();
+            throw new IOException("Unsupported segment format in " + file);
+        }
+        int capacity = header.getInt(CAPACITY_OFFSET);
+        int count = header.getInt(COUNT_OFFSET);
+        if (count < 0 || count > capacity || Files.size(file) < HEADER_SIZE + (long) capacity * LogRecord.SIZE) {
+            channel.close();
+            throw new IOException("Corrupted segment header in " + file);
+        }
+
+        LogSegment segment = new LogSegment(file, channel, capacity);
+        for (int i = 0; i < count; i++) {
+            segment.index(i, LogRecord.timestamp(segment.buffer, offset(i)));
+        }
+        segment.count = count;
+        return segment;
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean isFull() {
+        return count == capacity;
+    }
+
+    /**
+     * Appends as many of {@code hits[from..]} as fit and returns how many were written.
+     */
+    int append(HitEntry[] hits, int from) {
+        int written = Math.min(hits.length - from, capacity - count);
+        int position = count;
+        for (int i = 0; i < written; i++) {
+            HitEntry hit = hits[from + i];
+            LogRecord.write(buffer, offset(position), hit.timestamp(), hit.appId(), hit.uriId(), hit.ip());
+            index(position, hit.timestamp());
+            position++;
+        }
+        buffer.putInt(COUNT_OFFSET, position);
+        count = position;
+        return written;
+    }
+
+    /**
+     * Visits every record with {@code from <= timestamp < to}, in storage order.
+     */
+    void scan(long from, long to, Consumer<LogRecord> visitor) {
+        int size = count;
+        if (size == 0 || maxTimestamp < from || minTimestamp >= to) {
+            return;
+        }
+        LogRecord record = new LogRecord();
+        for (int block = 0; block * BLOCK_RECORDS < size; block++) {
+            if (blockMax[block] < from || blockMin[block] >= to) {
+                continue;
+            }
+            int end = Math.min(size, (block + 1) * BLOCK_RECORDS);
+            for (int i = block * BLOCK_RECORDS; i < end; i++) {
+                record.moveTo(buffer, offset(i));
+                long timestamp = record.timestamp();
+                if (timestamp >= from && timestamp < to) {
+                    visitor.accept(record);
+                }
+            }
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private void index(int position, long timestamp) {
+        int block = position / BLOCK_RECORDS;
+        blockMin[block] = Math.min(blockMin[block], timestamp);
+        blockMax[block] = Math.max(blockMax[block], timestamp);
+        if (timestamp < minTimestamp) {
+            minTimestamp = timestamp;
+        }
+        if (timestamp > maxTimestamp) {
+            maxTimestamp = timestamp;
+        }
+    }
+
+    private static int offset(int position) {
+        return HEADER_SIZE + position * LogRecord.SIZE;
+    }
+
+    record HitEntry(long timestamp, int appId, int uriId, byte[] ip) {
+    }
+}
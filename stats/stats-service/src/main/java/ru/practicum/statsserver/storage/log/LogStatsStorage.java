@@ -0,0 +1,363 @@
+package ru.practicum.statsserver.storage.log;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.statscommon.StatsCommonUtils;
+import ru.practicum.statscommon.model.UniqueMode;
+import ru.practicum.statscommon.model.ViewStats;
+import ru.practicum.statscommon.model.ViewStatsPoint;
+import ru.practicum.statscommon.model.ViewStatsSeries;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.sketch.HyperLogLog;
+import ru.practicum.statsserver.storage.StatsStorage;
+import ru.practicum.statsserver.storage.TimeBuckets;
+import ru.practicum.statsserver.storage.UriPattern;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Self-contained storage engine that appends hits to memory-mapped {@link LogSegment}s in
+ * {@code stats.storage.log.directory} and answers queries by scanning the segments that overlap the range.
+ * Apps and URIs are interned into {@link LogDictionary} files; with {@code stats.storage.log.fsync} enabled
+ * the dictionaries are forced before the records that reference them.
+ */
+@Component
+@ConditionalOnProperty(name = "stats.storage.type", havingValue = "log")
+@Slf4j
+public class LogStatsStorage implements StatsStorage {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentCapacity;
+    private final boolean fsync;
+    private final LogDictionary apps;
+    private final LogDictionary uris;
+    private final List<LogSegment> segments = new CopyOnWriteArrayList<>();
+    private long nextSequence;
+
+    public LogStatsStorage(@Value("${stats.storage.log.directory:stats-log}") Path directory,
+                           @Value("${stats.storage.log.segment-size:64MB}") DataSize segmentSize,
+                           @Value("${stats.storage.log.fsync:true}") boolean fsync) throws IOException {
+        if (segmentSize.toBytes() >= Integer.MAX_VALUE || segmentSize.toBytes() < 1024L * LogRecord.SIZE) {
+            throw new IllegalArgumentException("stats.storage.log.segment-size must be between 40KB and 2GB");
+        }
+        this.directory = directory;
+        this.segmentCapacity = (int) ((segmentSize.toBytes() - LogSegment.HEADER_SIZE) / LogRecord.SIZE);
+        this.fsync = fsync;
+
+        Files.createDirectories(directory);
+        this.apps = new LogDictionary(directory.resolve("apps.dict"));
+        this.uris = new LogDictionary(directory.resolve("uris.dict"));
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(this::isSegment).sorted().toList()) {
+                segments.add(LogSegment.open(file));
+                nextSequence = Math.max(nextSequence, sequence(file) + 1);
+            }
+        }
+        log.info("Hit log opened in {}: {} segments, {} hits", directory, segments.size(),
+                segments.stream().mapToLong(LogSegment::size).sum());
+    }
+
+    @Override
+    public synchronized void write(List<Stats> hits) {
+        try {
+            LogSegment.HitEntry[] entries = new LogSegment.HitEntry[hits.size()];
+            for (int i = 0; i < hits.size(); i++) {
+                Stats hit = hits.get(i);
+                entries[i] = new LogSegment.HitEntry(toEpochSecond(hit.getTimestamp()), apps.resolve(hit.getApp()),
+                        uris.resolve(hit.getUri()), hit.getIp());
+            }
+            if (fsync) {
+                apps.force();
+                uris.force();
+            }
+
+            Set<LogSegment> touched = new HashSet<>();
+            int written = 0;
+            while (written < entries.length) {
+                LogSegment segment = activeSegment();
+                written += segment.append(entries, written);
+                touched.add(segment);
+            }
+            if (fsync) {
+                touched.forEach(LogSegment::force);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uriValues, UniqueMode unique) {
+        Set<Integer> uriIds = findUriIds(uriValues);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Long> counts = aggregate(start, end, uriIds, unique);
+        List<ViewStats> result = new ArrayList<>(counts.size());
+        counts.forEach((key, hits) -> result.add(toViewStats(key, hits)));
+        result.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        return result;
+    }
+
+    @Override
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uriValues, UniqueMode unique,
+                            Consumer<ViewStats> consumer) {
+        Set<Integer> uriIds = findUriIds(uriValues);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return;
+        }
+        aggregate(start, end, uriIds, unique).forEach((key, hits) -> consumer.accept(toViewStats(key, hits)));
+    }
+
+    @Override
+    public List<ViewStats> getTop(LocalDateTime start, LocalDateTime end, int limit, UniqueMode unique, String prefix) {
+        Set<Integer> uriIds = prefix == null || prefix.isEmpty() ? null : uris.findByPrefix(prefix);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+        PriorityQueue<Map.Entry<Long, Long>> top = new PriorityQueue<>(limit + 1, Map.Entry.comparingByValue());
+        aggregate(start, end, uriIds, unique).entrySet().forEach(entry -> {
+            if (top.size() < limit || entry.getValue() > top.peek().getValue()) {
+                top.add(entry);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+        });
+
+        List<ViewStats> result = new ArrayList<>(top.size());
+        top.forEach(entry -> result.add(toViewStats(entry.getKey(), entry.getValue())));
+        result.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        return result;
+    }
+
+    @Override
+    public List<ViewStatsSeries> getTimeSeries(LocalDateTime start, LocalDateTime end, Duration step,
+                                               List<String> uriValues, UniqueMode unique) {
+        Set<Integer> uriIds = findUriIds(uriValues);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+        TimeBuckets buckets = new TimeBuckets(start, end.plusSeconds(1), step);
+        long origin = toEpochSecond(start);
+        Map<Long, SortedMap<Integer, Counter>> series = new HashMap<>();
+        scan(start, end, uriIds, record -> series.computeIfAbsent(record.key(), key -> new TreeMap<>())
+                .computeIfAbsent((int) ((record.timestamp() - origin) / buckets.getStepSeconds()),
+                        index -> Counter.of(unique))
+                .add(record));
+
+        Map<Long, Long> totals = new HashMap<>();
+        series.forEach((key, points) -> totals.put(key,
+                points.values().stream().mapToLong(Counter::value).sum()));
+        List<Long> keys = new ArrayList<>(series.keySet());
+        keys.sort(Comparator.comparing(totals::get).reversed());
+
+        List<ViewStatsSeries> result = new ArrayList<>(keys.size());
+        for (Long key : keys) {
+            List<ViewStatsPoint> points = new ArrayList<>();
+            series.get(key).forEach((index, counter) -> points.add(new ViewStatsPoint(
+                    buckets.bucketStart(index).format(StatsCommonUtils.DT_FORMATTER), counter.value())));
+            result.add(new ViewStatsSeries(apps.value(appId(key)), uris.value(uriId(key)), points));
+        }
+        return result;
+    }
+
+    @Override
+    public void exportHits(List<String> uriValues, Consumer<Stats> consumer) {
+        Set<Integer> uriIds = findUriIds(uriValues);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return;
+        }
+        for (LogSegment segment : segments) {
+            segment.scan(Long.MIN_VALUE, Long.MAX_VALUE, record -> {
+                if (uriIds == null || uriIds.contains(record.uriId())) {
+                    consumer.accept(Stats.builder()
+                            .app(apps.value(record.appId()))
+                            .uri(uris.value(record.uriId()))
+                            .ip(record.ip())
+                            .timestamp(LocalDateTime.ofEpochSecond(record.timestamp(), 0, ZoneOffset.UTC))
+                            .build());
+                }
+            });
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        try {
+            for (LogSegment segment : segments) {
+                segments.remove(segment);
+                segment.close();
+                Files.deleteIfExists(segment.getFile());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        nextSequence = 0;
+        log.info("Hit log in {} cleared", directory);
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        for (LogSegment segment : segments) {
+            segment.close();
+        }
+        apps.close();
+        uris.close();
+    }
+
+    private Map<Long, Long> aggregate(LocalDateTime start, LocalDateTime end, Set<Integer> uriIds,
+                                      UniqueMode unique) {
+        Map<Long, Counter> counters = new HashMap<>();
+        scan(start, end, uriIds, record -> counters.computeIfAbsent(record.key(), key -> Counter.of(unique))
+                .add(record));
+
+        Map<Long, Long> counts = new HashMap<>(counters.size() * 2);
+        counters.forEach((key, counter) -> counts.put(key, counter.value()));
+        return counts;
+    }
+
+    private void scan(LocalDateTime start, LocalDateTime end, Set<Integer> uriIds, Consumer<LogRecord> visitor) {
+        long from = toEpochSecond(start);
+        long to = toEpochSecond(end) + 1;
+        for (LogSegment segment : segments) {
+            segment.scan(from, to, record -> {
+                if (uriIds == null || uriIds.contains(record.uriId())) {
+                    visitor.accept(record);
+                }
+            });
+        }
+    }
+
+    private LogSegment activeSegment() throws IOException {
+        LogSegment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last != null && !last.isFull()) {
+            return last;
+        }
+        if (last != null && fsync) {
+            last.force();
+        }
+        LogSegment segment = LogSegment.create(directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX,
+                nextSequence++, SEGMENT_SUFFIX)), segmentCapacity);
+        segments.add(segment);
+        log.info("Started hit log segment {}", segment.getFile());
+        return segment;
+    }
+
+    private Set<Integer> findUriIds(List<String> uriValues) {
+        if (uriValues == null || uriValues.isEmpty()) {
+            return null;
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (String uri : uriValues) {
+            if (UriPattern.isPattern(uri)) {
+                ids.addAll(uris.findMatching(UriPattern.matcher(uri)));
+                continue;
+            }
+            Integer id = uris.find(uri);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private ViewStats toViewStats(long key, long hits) {
+        return new ViewStats(apps.value(appId(key)), uris.value(uriId(key)), hits);
+    }
+
+    private boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long sequence(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static int appId(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int uriId(long key) {
+        return (int) key;
+    }
+
+    private static long toEpochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private interface Counter {
+        void add(LogRecord record);
+
+        long value();
+
+        static Counter of(UniqueMode unique) {
+            return switch (unique) {
+                case NONE -> new HitCounter();
+                case EXACT -> new DistinctCounter();
+                case APPROX -> new SketchCounter();
+            };
+        }
+    }
+
+    private static final class HitCounter implements Counter {
+        private long hits;
+
+        @Override
+        public void add(LogRecord record) {
+            hits++;
+        }
+
+        @Override
+        public long value() {
+            return hits;
+        }
+    }
+
+    private static final class DistinctCounter implements Counter {
+        private final Set<ByteBuffer> ips = new HashSet<>();
+
+        @Override
+        public void add(LogRecord record) {
+            ips.add(ByteBuffer.wrap(record.ip()));
+        }
+
+        @Override
+        public long value() {
+            return ips.size();
+        }
+    }
+
+    private static final class SketchCounter implements Counter {
+        private final HyperLogLog sketch = new HyperLogLog();
+
+        @Override
+        public void add(LogRecord record) {
+            sketch.add(record.ip());
+        }
+
+        @Override
+        public long value() {
+            return sketch.estimate();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package ru.practicum.statsserver.window;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.storage.ConditionalOnJdbcStorage;
+import ru.practicum.statsserver.storage.StatsKey;
+import ru.practicum.statsserver.storage.TimeRange;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Per-minute hit counters for the most recent {@code stats.hot-window.period}, kept in a ring of buckets
+ * indexed by epoch minute. A bucket is reused once its minute falls out of the window. The window is
+ * loaded from {@code stats_minute} on startup and then updated after every committed write, so it
+ * assumes this instance is the only writer.
+ */
+@Component
+@ConditionalOnJdbcStorage
+@Slf4j
+public class HotWindow {
+    private static final long FUTURE_MINUTES = 5;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long windowMinutes;
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final boolean enabled;
+
+    public HotWindow(JdbcTemplate jdbcTemplate,
+                     @Value("${stats.hot-window.enabled:true}") boolean enabled,
+                     @Value("${stats.rollup.enabled:true}") boolean rollupEnabled,
+                     @Value("${stats.hot-window.period:48h}") String period) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled && rollupEnabled;
+        this.windowMinutes = DurationStyle.detectAndParse(period).toMinutes();
+        this.buckets = new AtomicReferenceArray<>((int) (windowMinutes + FUTURE_MINUTES));
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime from = toTime(currentMinute() - windowMinutes + 1);
+        long[] rows = {0};
+        jdbcTemplate.query("SELECT bucket, app_id, uri_id, hits FROM stats_minute WHERE bucket >= ?", rs -> {
+            add(toMinute(rs.getTimestamp("bucket").toLocalDateTime()),
+                    key(rs.getInt("app_id"), rs.getInt("uri_id")), rs.getLong("hits"));
+            rows[0]++;
+        }, Timestamp.valueOf(from));
+        log.info("Hot window loaded {} minute counters since {}", rows[0], from);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void record(List<Stats> hits) {
+        if (!enabled) {
+            return;
+        }
+        Map<Long, LongLongHashMap> byMinute = new HashMap<>();
+        for (Stats hit : hits) {
+            byMinute.computeIfAbsent(toMinute(hit.getTimestamp()), minute -> new LongLongHashMap())
+                    .addTo(key(hit.getAppId(), hit.getUriId()), 1);
+        }
+        byMinute.forEach((minute, counts) -> counts.forEach((key, count) -> add(minute, key, count)));
+    }
+
+    public void clear() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, null);
+        }
+    }
+
+    /**
+     * Returns the whole-minute part of the half-open {@code [from, to)} that can be answered from memory,
+     * or {@code null} if there is none.
+     */
+    public TimeRange coverage(LocalDateTime from, LocalDateTime to) {
+        if (!enabled) {
+            return null;
+        }
+        long now = currentMinute();
+        long first = Math.max(ceilMinute(from), now - windowMinutes + 1);
+        long last = Math.min(toMinute(to), now + FUTURE_MINUTES);
+        return first < last ? new TimeRange(toTime(first), toTime(last)) : null;
+    }
+
+    public Map<StatsKey, Long> count(TimeRange range, Set<Integer> uriIds) {
+        LongLongHashMap totals = new LongLongHashMap();
+        for (long minute = toMinute(range.getFrom()); minute < toMinute(range.getTo()); minute++) {
+            Bucket bucket = buckets.get(index(minute));
+            if (bucket == null || bucket.minute != minute) {
+                continue;
+            }
+            bucket.counts.forEach((key, count) -> {
+                if (uriIds == null || uriIds.contains((int) key)) {
+                    totals.addTo(key, count);
+                }
+            });
+        }
+
+        Map<StatsKey, Long> result = new HashMap<>(totals.size() * 2);
+        totals.forEach((key, count) -> result.put(new StatsKey((int) (key >>> 32), (int) key), count));
+        return result;
+    }
+
+    private void add(long minute, long key, long count) {
+        int index = index(minute);
+        while (true) {
+            Bucket bucket = buckets.get(index);
+            if (bucket != null && bucket.minute == minute) {
+                bucket.counts.addTo(key, count);
+                return;
+            }
+            if (bucket != null && bucket.minute > minute) {
+                return;
+            }
+            if (minute <= currentMinute() - windowMinutes || minute > currentMinute() + FUTURE_MINUTES) {
+                return;
+            }
+            buckets.compareAndSet(index, bucket, new Bucket(minute));
+        }
+    }
+
+    private int index(long minute) {
+        return (int) Math.floorMod(minute, (long) buckets.length());
+    }
+
+    private static long key(int appId, int uriId) {
+        return ((long) appId << 32) | (uriId & 0xffffffffL);
+    }
+
+    private static long currentMinute() {
+        return toMinute(LocalDateTime.now());
+    }
+
+    private static long toMinute(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    private static long ceilMinute(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC) + 59, 60);
+    }
+
+    private static LocalDateTime toTime(long minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+    }
+
+    private static final class Bucket {
+        private final long minute;
+        private final StripedCounterMap counts = new StripedCounterMap();
+
+        private Bucket(long minute) {
+            this.minute = minute;
+        }
+    }
+}
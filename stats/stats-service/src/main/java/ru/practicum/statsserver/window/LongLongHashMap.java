@@ -0,0 +1,90 @@
+package ru.practicum.statsserver.window;
+
+/**
+ * Open-addressing map from {@code long} to {@code long} without boxing. Key {@code 0} marks a free slot,
+ * which is safe for {@link HotWindow} keys because dictionary ids start at 1. Not thread-safe.
+ */
+public class LongLongHashMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+
+    public LongLongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 2) - 1) << 1;
+        keys = new long[capacity];
+        values = new long[capacity];
+    }
+
+    public void addTo(long key, long delta) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != 0) {
+            if (keys[index] == key) {
+                values[index] += delta;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = delta;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    public long get(long key) {
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != 0) {
+            if (keys[index] == key) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(Entry action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new long[oldValues.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                addTo(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    static int mix(long key) {
+        long hash = key * 0x9e3779b97f4a7c15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @FunctionalInterface
+    public interface Entry {
+        void accept(long key, long value);
+    }
+}
@@ -0,0 +1,32 @@
+package ru.practicum.statsserver.window;
+
+/**
+ * Thread-safe {@code long -> long} counters split into independently locked stripes, so concurrent
+ * writers touching different keys rarely contend.
+ */
+public class StripedCounterMap {
+    private static final int STRIPES = 16;
+
+    private final LongLongHashMap[] stripes = new LongLongHashMap[STRIPES];
+
+    public StripedCounterMap() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new LongLongHashMap();
+        }
+    }
+
+    public void addTo(long key, long delta) {
+        LongLongHashMap stripe = stripes[(LongLongHashMap.mix(key) >>> 28) & (STRIPES - 1)];
+        synchronized (stripe) {
+            stripe.addTo(key, delta);
+        }
+    }
+
+    public void forEach(LongLongHashMap.Entry action) {
+        for (LongLongHashMap stripe : stripes) {
+            synchronized (stripe) {
+                stripe.forEach(action);
+            }
+        }
+    }
+}
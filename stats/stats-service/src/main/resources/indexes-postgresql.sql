@@ -0,0 +1 @@
+CREATE INDEX IF NOT EXISTS stats_uri_pattern_idx ON stats_uri (uri text_pattern_ops);
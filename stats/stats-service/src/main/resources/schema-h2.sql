@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS stats (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    user_ip BYTEA NOT NULL,
+    created TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS stats_created_idx ON stats (created);
@@ -0,0 +1,12 @@
+CREATE TABLE IF NOT EXISTS stats (
+    id BIGSERIAL,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    user_ip BYTEA NOT NULL,
+    created TIMESTAMP NOT NULL,
+    PRIMARY KEY (id, created)
+) PARTITION BY RANGE (created);
+
+CREATE TABLE IF NOT EXISTS stats_default PARTITION OF stats DEFAULT;
+
+CREATE INDEX IF NOT EXISTS stats_created_idx ON stats (created);
@@ -1,9 +1,68 @@
-DROP TABLE IF EXISTS stats;
+CREATE TABLE IF NOT EXISTS stats_app (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS stats_uri (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    uri VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS stats_minute (
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS stats_hour (
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS stats_hll_hour (
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
 
-CREATE TABLE IF NOT EXISTS stats (
+CREATE TABLE IF NOT EXISTS stats_ip_hour (
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bitmap BYTEA NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS stats_ip6_hour (
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    user_ip BYTEA NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id, user_ip)
+);
+
+CREATE TABLE IF NOT EXISTS stats_ip_pending (
     id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
-    app_name VARCHAR(255) NOT NULL,
-    user_ip VARCHAR(15) NOT NULL,
-    created TIMESTAMP NOT NULL,
-    uri VARCHAR(255) NOT NULL
+    bucket TIMESTAMP NOT NULL,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    user_ip BYTEA NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS stats_ip_pending_bucket_idx ON stats_ip_pending (bucket);
+
+CREATE TABLE IF NOT EXISTS stats_heartbeat (
+    instance VARCHAR(36) PRIMARY KEY,
+    beat BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS stats_archive_segment (
+    name VARCHAR(255) PRIMARY KEY
 );
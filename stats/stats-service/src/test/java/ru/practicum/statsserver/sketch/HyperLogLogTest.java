@@ -0,0 +1,55 @@
+package ru.practicum.statsserver.sketch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+    // Three standard errors of 1.04 / sqrt(4096), the bound documented by HyperLogLog.
+    private static final double MAX_RELATIVE_ERROR = 0.049;
+
+    @ParameterizedTest
+    @ValueSource(ints = {100, 1_000, 10_000, 12_000, 100_000, 1_000_000})
+    void estimateIsWithinDocumentedErrorOfExactCount(int values) {
+        Random random = new Random(values);
+        Set<Integer> exact = new HashSet<>();
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < values; i++) {
+            int ip = random.nextInt();
+            exact.add(ip);
+            sketch.add(ip(ip));
+        }
+
+        double error = Math.abs(sketch.estimate() - exact.size()) / (double) exact.size();
+        assertTrue(error <= MAX_RELATIVE_ERROR, () -> "Estimate " + sketch.estimate() + " of " + exact.size() +
+                " distinct values is off by " + error);
+    }
+
+    @Test
+    void mergeOfPartsEstimatesLikeWholeSketch() {
+        HyperLogLog whole = new HyperLogLog();
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for (int i = 0; i < 50_000; i++) {
+            whole.add(ip(i));
+            (i % 2 == 0 ? first : second).add(ip(i));
+        }
+
+        first.merge(second);
+
+        assertEquals(whole.estimate(), first.estimate());
+        assertEquals(whole.estimate(), HyperLogLog.fromBytes(first.toBytes()).estimate());
+    }
+
+    private static byte[] ip(int address) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(address).array();
+    }
+}
@@ -0,0 +1,67 @@
+package ru.practicum.statsserver.snapshot;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SnapshotRestoreRunnerTest {
+    @TempDir
+    Path directory;
+
+    private SnapshotService snapshotService;
+    private Path marker;
+    private SnapshotRestoreRunner runner;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        snapshotService = mock(SnapshotService.class);
+        Path file = Files.createFile(directory.resolve("stats.snapshot"));
+        marker = directory.resolve("stats-restore.marker");
+        runner = new SnapshotRestoreRunner(snapshotService, file, marker);
+    }
+
+    @Test
+    void restoresIntoEmptyStoreAndRemovesMarker() throws IOException {
+        when(snapshotService.isStoreEmpty()).thenReturn(true);
+
+        runner.run(null);
+
+        verify(snapshotService).restore(any(ReadableByteChannel.class));
+        verify(snapshotService, never()).clear();
+        assertFalse(Files.exists(marker));
+    }
+
+    @Test
+    void skipsStoreThatAlreadyHasHits() throws IOException {
+        when(snapshotService.isStoreEmpty()).thenReturn(false);
+
+        runner.run(null);
+
+        verify(snapshotService, never()).restore(any(ReadableByteChannel.class));
+        verify(snapshotService, never()).clear();
+    }
+
+    @Test
+    void clearsStoreAndStartsOverAfterInterruptedRestore() throws IOException {
+        Files.createFile(marker);
+        when(snapshotService.isStoreEmpty()).thenReturn(false);
+
+        runner.run(null);
+
+        verify(snapshotService).clear();
+        verify(snapshotService).restore(any(ReadableByteChannel.class));
+        assertFalse(Files.exists(marker));
+    }
+}
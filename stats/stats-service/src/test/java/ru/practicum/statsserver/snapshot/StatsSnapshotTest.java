@@ -0,0 +1,112 @@
+package ru.practicum.statsserver.snapshot;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.statsserver.model.Stats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatsSnapshotTest {
+    private static final int BLOCK_ROWS = 100;
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+    @Test
+    void roundTripsHitsInBlocks() throws IOException {
+        List<Stats> hits = hits(250);
+
+        List<List<Stats>> blocks = new ArrayList<>();
+        long read = StatsSnapshot.read(Channels.newChannel(new ByteArrayInputStream(write(hits))), blocks::add);
+
+        assertEquals(hits.size(), read);
+        assertEquals(List.of(100, 100, 50), blocks.stream().map(List::size).toList());
+        List<Stats> restored = blocks.stream().flatMap(List::stream).toList();
+        for (int i = 0; i < hits.size(); i++) {
+            assertEquals(hits.get(i).getApp(), restored.get(i).getApp());
+            assertEquals(hits.get(i).getUri(), restored.get(i).getUri());
+            assertEquals(hits.get(i).getTimestamp(), restored.get(i).getTimestamp());
+            assertArrayEquals(hits.get(i).getIp(), restored.get(i).getIp());
+        }
+    }
+
+    @Test
+    void roundTripsEmptySnapshot() throws IOException {
+        List<List<Stats>> blocks = new ArrayList<>();
+
+        assertEquals(0, StatsSnapshot.read(Channels.newChannel(new ByteArrayInputStream(write(List.of()))),
+                blocks::add));
+        assertTrue(blocks.isEmpty());
+    }
+
+    @Test
+    void rejectsTruncatedSnapshot() throws IOException {
+        byte[] snapshot = write(hits(250));
+
+        for (int length : new int[]{snapshot.length - 1, snapshot.length / 2, 3}) {
+            byte[] truncated = Arrays.copyOf(snapshot, length);
+            assertThrows(EOFException.class, () -> StatsSnapshot.read(
+                    Channels.newChannel(new ByteArrayInputStream(truncated)), block -> {
+                    }));
+        }
+    }
+
+    @Test
+    void rejectsTrailerWithWrongRowCount() throws IOException {
+        byte[] snapshot = write(hits(10));
+        int rowCount = snapshot.length - Long.BYTES - Integer.BYTES;
+        ByteBuffer.wrap(snapshot).putLong(rowCount, 11);
+
+        assertThrows(IllegalArgumentException.class, () -> StatsSnapshot.read(
+                Channels.newChannel(new ByteArrayInputStream(snapshot)), block -> {
+                }));
+    }
+
+    @Test
+    void rejectsOtherFormat() {
+        byte[] other = ByteBuffer.allocate(2 * Integer.BYTES).putInt(0x504b0304).putInt(1).array();
+
+        assertThrows(IllegalArgumentException.class, () -> StatsSnapshot.read(
+                Channels.newChannel(new ByteArrayInputStream(other)), block -> {
+                }));
+    }
+
+    private static byte[] write(List<Stats> hits) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (StatsSnapshot.Writer writer = new StatsSnapshot.Writer(Channels.newChannel(out), BLOCK_ROWS)) {
+            for (Stats hit : hits) {
+                writer.add(hit);
+            }
+            assertEquals(hits.size(), writer.finish());
+        }
+        return out.toByteArray();
+    }
+
+    private static List<Stats> hits(int count) {
+        List<Stats> hits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] ip = i % 5 == 0
+                    ? new byte[]{0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) i}
+                    : new byte[]{10, 0, (byte) (i >> 8), (byte) i};
+            hits.add(Stats.builder()
+                    .app(i % 4 == 0 ? "other-service" : "main-service")
+                    .uri("/events/" + i % 37)
+                    .ip(ip)
+                    // Out of order on purpose, so that negative deltas are covered as well.
+                    .timestamp(START.plusSeconds((i * 7919L) % 3600))
+                    .build());
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,140 @@
+package ru.practicum.statsserver.storage.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.statsserver.storage.NamedStatsKey;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ArchiveSegmentTest {
+    // 2023-11-15T00:00Z, the day StatsArchiveTest names its segments after.
+    private static final long FROM = 1_700_006_400L;
+    private static final long TO = FROM + 86_400L;
+    private static final String FIRST_URI = "/events/1";
+    private static final String SECOND_URI = "/events/2";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsHitsAcrossChunks() throws IOException {
+        List<Hit> hits = hits();
+        Path file = write(hits);
+
+        try (ArchiveSegment segment = ArchiveSegment.open(file)) {
+            assertEquals(FROM, segment.getFrom());
+            assertEquals(TO, segment.getTo());
+            assertEquals(hits.size(), segment.getRows());
+
+            Map<NamedStatsKey, Long> whole = new HashMap<>();
+            segment.count(FROM, TO, null, whole);
+            assertEquals(count(hits, FROM, TO, null), whole);
+
+            long middle = FROM + 40_000;
+            Map<NamedStatsKey, Long> part = new HashMap<>();
+            segment.count(middle, TO, List.of("/events/*"), part);
+            assertEquals(count(hits, middle, TO, null), part);
+
+            Map<NamedStatsKey, Long> second = new HashMap<>();
+            segment.count(FROM, middle, List.of(SECOND_URI), second);
+            assertEquals(count(hits, FROM, middle, SECOND_URI), second);
+
+            List<Hit> exported = new ArrayList<>();
+            segment.export(null, (key, timestamp, ip) -> exported.add(new Hit(key.getApp(), key.getUri(),
+                    timestamp, ip)));
+            assertEquals(hits.size(), exported.size());
+            for (int i = 0; i < hits.size(); i++) {
+                assertEquals(hits.get(i).app(), exported.get(i).app());
+                assertEquals(hits.get(i).uri(), exported.get(i).uri());
+                assertEquals(hits.get(i).timestamp(), exported.get(i).timestamp());
+                assertArrayEquals(hits.get(i).ip(), exported.get(i).ip());
+            }
+        }
+    }
+
+    @Test
+    void rejectsTruncatedSegment() throws IOException {
+        Path file = write(hits());
+        long size = Files.size(file);
+
+        truncate(file, size - 1);
+        assertThrows(IOException.class, () -> ArchiveSegment.open(file).close());
+
+        truncate(file, Integer.BYTES);
+        assertThrows(IOException.class, () -> ArchiveSegment.open(file).close());
+    }
+
+    @Test
+    void rejectsHitsOfOneUriThatAreNotContiguous() throws IOException {
+        try (ArchiveSegment.Writer writer = ArchiveSegment.Writer.create(directory.resolve("segment.col"), FROM, TO)) {
+            writer.add("ewm", FIRST_URI, FROM, ip(1));
+            writer.add("ewm", SECOND_URI, FROM, ip(2));
+
+            assertThrows(IllegalStateException.class, () -> writer.add("ewm", FIRST_URI, FROM + 1, ip(3)));
+        }
+    }
+
+    static List<Hit> hits() {
+        List<Hit> hits = new ArrayList<>();
+        int firstRows = ArchiveSegment.CHUNK_ROWS + 1000;
+        for (int i = 0; i < firstRows; i++) {
+            hits.add(new Hit(i % 3 == 0 ? "other" : "ewm", FIRST_URI, FROM + (long) i * 86_399 / firstRows, ip(i)));
+        }
+        for (int i = 0; i < 100; i++) {
+            hits.add(new Hit("ewm", SECOND_URI, FROM + i * 800L, new byte[]{0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0,
+                    0, 0, 0, 0, 0, 0, 0, (byte) i}));
+        }
+        return hits;
+    }
+
+    static void write(Path file, List<Hit> hits) throws IOException {
+        try (ArchiveSegment.Writer writer = ArchiveSegment.Writer.create(file, FROM, TO)) {
+            for (Hit hit : hits) {
+                writer.add(hit.app(), hit.uri(), hit.timestamp(), hit.ip());
+            }
+            writer.finish();
+        }
+    }
+
+    private Path write(List<Hit> hits) throws IOException {
+        Path file = directory.resolve("segment.col");
+        write(file, hits);
+        return file;
+    }
+
+    private static Map<NamedStatsKey, Long> count(List<Hit> hits, long from, long to, String uri) {
+        Map<NamedStatsKey, Long> counts = new HashMap<>();
+        for (Hit hit : hits) {
+            if (hit.timestamp() >= from && hit.timestamp() < to && (uri == null || uri.equals(hit.uri()))) {
+                counts.merge(new NamedStatsKey(hit.app(), hit.uri()), 1L, Long::sum);
+            }
+        }
+        return counts;
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private static byte[] ip(int address) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(address).array();
+    }
+
+    record Hit(String app, String uri, long timestamp, byte[] ip) {
+    }
+}
@@ -0,0 +1,90 @@
+package ru.practicum.statsserver.storage.archive;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ru.practicum.statsserver.storage.DatabasePlatform;
+import ru.practicum.statsserver.storage.TimeRange;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatsArchiveTest {
+    private static final String SEGMENT = "archive-20231115-1.col";
+    private static final TimeRange DAY = new TimeRange(LocalDateTime.of(2023, 11, 15, 0, 0),
+            LocalDateTime.of(2023, 11, 16, 0, 0));
+
+    @TempDir
+    Path directory;
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private StatsArchive archive;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE stats_archive_segment (name VARCHAR(255) PRIMARY KEY)");
+        archive = new StatsArchive(jdbcTemplate, DatabasePlatform.H2, new DataSourceTransactionManager(dataSource),
+                true, directory, "21d", "");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        archive.close();
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    @Test
+    void loadRemovesSegmentOfUncommittedTransaction() throws IOException {
+        Path temp = directory.resolve(SEGMENT + ".tmp");
+        ArchiveSegmentTest.write(temp, ArchiveSegmentTest.hits());
+
+        archive.load();
+
+        assertFalse(Files.exists(temp));
+        assertFalse(Files.exists(directory.resolve(SEGMENT)));
+        assertNull(archive.getArchivedUntil());
+        assertTrue(archive.countHits(DAY, null).isEmpty());
+    }
+
+    @Test
+    void loadPromotesSegmentOfCommittedTransaction() throws IOException {
+        List<ArchiveSegmentTest.Hit> hits = ArchiveSegmentTest.hits();
+        Path temp = directory.resolve(SEGMENT + ".tmp");
+        ArchiveSegmentTest.write(temp, hits);
+        jdbcTemplate.update("INSERT INTO stats_archive_segment (name) VALUES (?)", SEGMENT);
+
+        archive.load();
+
+        assertFalse(Files.exists(temp));
+        assertTrue(Files.exists(directory.resolve(SEGMENT)));
+        assertEquals(DAY.getTo(), archive.getArchivedUntil());
+        assertEquals(hits.size(), archive.countHits(DAY, null).values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    void loadRecordsSegmentMissingFromManifest() throws IOException {
+        ArchiveSegmentTest.write(directory.resolve(SEGMENT), ArchiveSegmentTest.hits());
+
+        archive.load();
+
+        assertEquals(List.of(SEGMENT), jdbcTemplate.queryForList("SELECT name FROM stats_archive_segment",
+                String.class));
+        assertEquals(DAY.getTo(), archive.getArchivedUntil());
+    }
+}